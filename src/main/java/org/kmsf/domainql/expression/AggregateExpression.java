@@ -5,6 +5,8 @@ import org.kmsf.domainql.expression.type.ExpressionType;
 import org.kmsf.domainql.expression.type.ScalarType;
 import org.kmsf.domainql.expression.type.SourceType;
 
+import java.util.Objects;
+
 public class AggregateExpression implements Expression {
     public enum AggregateFunction {
         SUM(ScalarType.DECIMAL),
@@ -53,4 +55,17 @@ public class AggregateExpression implements Expression {
             return new AggregateType((ScalarType) operand.getType());
         }
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AggregateExpression)) return false;
+        AggregateExpression that = (AggregateExpression) o;
+        return function == that.function && Objects.equals(operand, that.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(operand, function);
+    }
 } 
\ No newline at end of file
@@ -7,6 +7,7 @@ public class Attribute {
     private final String name;
     private final Domain domain;
     private final ExpressionType type;
+    private long fingerprint;
 
     public Attribute(String name, Domain domain, ExpressionType type) {
         this.name = name;
@@ -26,6 +27,17 @@ public class Attribute {
         return type;
     }
 
+    /*
+     * The hash of the domain and attribute names, computed once for all the
+     * fingerprints reading the attribute.
+     */
+    long fingerprint() {
+        if (fingerprint == 0) {
+            fingerprint = Fingerprint.hash(domain.getName()) * 31 + Fingerprint.hash(name);
+        }
+        return fingerprint;
+    }
+
     public JsonObject toJson() {
         JsonObject json = new JsonObject();
         json.addProperty("name", getName());
@@ -3,6 +3,8 @@ package org.kmsf.domainql.expression;
 import org.kmsf.domainql.expression.type.ExpressionType;
 import org.kmsf.domainql.expression.type.SourceType;
 
+import java.util.Objects;
+
 public class AttributeExpression implements Expression {
 
     public enum ContextResolution {
@@ -44,4 +46,17 @@ public class AttributeExpression implements Expression {
     public SourceType getSource() {
         return attribute.getDomain().asDomainType();
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AttributeExpression)) return false;
+        AttributeExpression that = (AttributeExpression) o;
+        return attribute.equals(that.attribute) && contextResolution == that.contextResolution;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(attribute, contextResolution);
+    }
 } 
\ No newline at end of file
@@ -2,6 +2,8 @@ package org.kmsf.domainql.expression;
 
 import org.kmsf.domainql.expression.type.*;
 
+import java.util.Objects;
+
 public class BinaryExpression implements Expression {
 
     private final Expression left;
@@ -30,7 +32,7 @@ public class BinaryExpression implements Expression {
         return operator;
     }   
 
-    private SourceType determineSourceType(SourceType leftSource, SourceType rightSource) {
+    static SourceType determineSourceType(SourceType leftSource, SourceType rightSource) {
         if (leftSource == null && rightSource == null) {
             return null;
         }
@@ -62,21 +64,41 @@ public class BinaryExpression implements Expression {
         if (operator.getReturnType() != null) {
             return operator.getReturnType();
         }
+        if (operator == Operator.COALESCE) {
+            return left.getType();
+        }
         
         // For arithmetic operators, determine type based on operands
         ExpressionType leftType = left.getType();
         ExpressionType rightType = right.getType();
-        
+
+        // Arithmetic on aggregates, such as SUM(a) / COUNT(a), is an aggregate itself
+        boolean aggregate = leftType instanceof AggregateType || rightType instanceof AggregateType;
+        if (leftType instanceof AggregateType) leftType = ((AggregateType) leftType).getResultType();
+        if (rightType instanceof AggregateType) rightType = ((AggregateType) rightType).getResultType();
+
         if (!(leftType instanceof ScalarType) || !(rightType instanceof ScalarType)) {
             throw new IllegalArgumentException("Arithmetic operations require scalar types");
         }
         
         // If either operand is DECIMAL, result is DECIMAL
-        if (leftType == ScalarType.DECIMAL || rightType == ScalarType.DECIMAL) {
-            return ScalarType.DECIMAL;
-        }
-        
-        // Otherwise, result is INTEGER
-        return ScalarType.INTEGER;
+        ScalarType resultType = leftType.equals(ScalarType.DECIMAL) || rightType.equals(ScalarType.DECIMAL)
+            ? ScalarType.DECIMAL
+            // Otherwise, result is INTEGER
+            : ScalarType.INTEGER;
+        return aggregate ? new AggregateType(resultType) : resultType;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BinaryExpression)) return false;
+        BinaryExpression that = (BinaryExpression) o;
+        return operator == that.operator && left.equals(that.left) && right.equals(that.right);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(left, operator, right);
     }
 } 
\ No newline at end of file
@@ -4,6 +4,8 @@ import org.kmsf.domainql.expression.type.DomainType;
 import org.kmsf.domainql.expression.type.ExpressionType;
 import org.kmsf.domainql.expression.type.SourceType;
 
+import java.util.Objects;
+
 public class ComposeExpression implements Expression {
     private final Expression reference;
     private final Expression composition;
@@ -41,4 +43,17 @@ public class ComposeExpression implements Expression {
     public Expression getComposition() {
         return composition;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ComposeExpression)) return false;
+        ComposeExpression that = (ComposeExpression) o;
+        return reference.equals(that.reference) && composition.equals(that.composition);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(reference, composition);
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,132 @@
+package org.kmsf.domainql.expression;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Opaque keyset pagination cursor: holds the sort key values of the last row
+ * of a page, in the order of the query's ORDER BY keys.
+ */
+public class ContinuationToken {
+    private final List<Object> values;
+
+    private ContinuationToken(List<Object> values) {
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    public static ContinuationToken of(Object... lastKeyValues) {
+        return new ContinuationToken(new ArrayList<>(Arrays.asList(lastKeyValues)));
+    }
+
+    public static ContinuationToken of(List<?> lastKeyValues) {
+        return new ContinuationToken(new ArrayList<>(lastKeyValues));
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public String encode() {
+        JsonArray json = new JsonArray();
+        for (Object value : values) {
+            json.add(encodeValue(value));
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ContinuationToken decode(String token) {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            List<Object> values = new ArrayList<>();
+            for (JsonElement element : JsonParser.parseString(json).getAsJsonArray()) {
+                values.add(decodeValue(element.getAsJsonObject()));
+            }
+            return new ContinuationToken(values);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+        }
+    }
+
+    private static JsonObject encodeValue(Object value) {
+        JsonObject json = new JsonObject();
+        if (value == null) {
+            json.addProperty("t", "NULL");
+        } else if (value instanceof String) {
+            json.addProperty("t", "STRING");
+            json.addProperty("v", (String) value);
+        } else if (value instanceof Integer) {
+            json.addProperty("t", "INTEGER");
+            json.addProperty("v", (Integer) value);
+        } else if (value instanceof Long) {
+            json.addProperty("t", "LONG");
+            json.addProperty("v", (Long) value);
+        } else if (value instanceof Double) {
+            json.addProperty("t", "DOUBLE");
+            json.addProperty("v", (Double) value);
+        } else if (value instanceof BigDecimal) {
+            json.addProperty("t", "DECIMAL");
+            json.addProperty("v", value.toString());
+        } else if (value instanceof Boolean) {
+            json.addProperty("t", "BOOLEAN");
+            json.addProperty("v", (Boolean) value);
+        } else if (value instanceof LocalDate) {
+            json.addProperty("t", "DATE");
+            json.addProperty("v", value.toString());
+        } else if (value instanceof LocalDateTime) {
+            json.addProperty("t", "TIMESTAMP");
+            json.addProperty("v", value.toString());
+        } else {
+            throw new IllegalArgumentException("Unsupported sort key type: " + value.getClass().getName());
+        }
+        return json;
+    }
+
+    private static Object decodeValue(JsonObject json) {
+        String type = json.get("t").getAsString();
+        switch (type) {
+            case "NULL": return null;
+            case "STRING": return json.get("v").getAsString();
+            case "INTEGER": return json.get("v").getAsInt();
+            case "LONG": return json.get("v").getAsLong();
+            case "DOUBLE": return json.get("v").getAsDouble();
+            case "DECIMAL": return new BigDecimal(json.get("v").getAsString());
+            case "BOOLEAN": return json.get("v").getAsBoolean();
+            case "DATE": return LocalDate.parse(json.get("v").getAsString());
+            case "TIMESTAMP": return LocalDateTime.parse(json.get("v").getAsString());
+            default:
+                throw new IllegalArgumentException("Unknown sort key type: " + type);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ContinuationToken && values.equals(((ContinuationToken) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuationToken" + values;
+    }
+}
@@ -1,7 +1,13 @@
 package org.kmsf.domainql.expression;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.kmsf.domainql.expression.type.DomainType;
 import org.kmsf.domainql.expression.type.Operator;
@@ -13,7 +19,9 @@ import com.google.gson.JsonObject;
 public class Domain {
     private String name;
     private Map<String, Attribute> attributes;
+    private final List<Set<Attribute>> keys = new ArrayList<>();
     private final DomainType domainType = new DomainType(this);
+    private int version;
 
     public Domain(String name) {
         this.name = name;
@@ -21,16 +29,17 @@ public class Domain {
     }
 
     public void addAttribute(Attribute attribute) {
-        attributes.put(attribute.getName(), attribute);
+        addAttribute(attribute.getName(), attribute);
     }
 
     public void addAttribute(String name, Attribute attribute) {
         attributes.put(name, attribute);
+        version++;
     }
 
     public Attribute addAttribute(String name, ScalarType type) {
         Attribute attribute = new Attribute(name, this, type);
-        attributes.put(name, attribute);
+        addAttribute(name, attribute);
         return attribute;
     }
 
@@ -58,7 +67,7 @@ public class Domain {
         }
         
         ReferenceAttribute referenceAttribute = new ReferenceAttribute(name, this, targetDomain, joinCondition);
-        attributes.put(name, referenceAttribute);
+        addAttribute(name, referenceAttribute);
         return referenceAttribute;
     }
 
@@ -70,9 +79,62 @@ public class Domain {
         return attribute;
     }
 
+    public boolean hasAttribute(String name) {
+        return attributes.containsKey(name);
+    }
+
+    /**
+     * Declares a primary or unique key: no two rows share the values of these attributes.
+     */
+    public void addKey(String... attributeNames) {
+        if (attributeNames.length == 0) {
+            throw new IllegalArgumentException("A key requires at least one attribute");
+        }
+        Set<Attribute> key = new LinkedHashSet<>();
+        for (String attributeName : attributeNames) {
+            key.add(getAttribute(attributeName));
+        }
+        keys.add(Collections.unmodifiableSet(key));
+        version++;
+    }
+
+    public Domain withKey(String... attributeNames) {
+        addKey(attributeNames);
+        return this;
+    }
+
+    public List<Set<Attribute>> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    /**
+     * Whether the given attributes include a declared key, so that they
+     * determine every other attribute.
+     */
+    public boolean isKey(Collection<Attribute> attributes) {
+        for (Set<Attribute> key : keys) {
+            if (attributes.containsAll(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Collection<Attribute> getAttributes() {
+        return Collections.unmodifiableCollection(attributes.values());
+    }
+
     public String getName() {
         return name;
     }
+
+    /**
+     * Counts the changes made to the domain's attributes and keys, so that
+     * what is derived from them can tell when it is out of date.
+     */
+    public int getVersion() {
+        return version;
+    }
     
     public DomainType asDomainType() {
         return domainType;
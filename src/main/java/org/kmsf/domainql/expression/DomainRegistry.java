@@ -5,10 +5,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+
 import com.google.gson.JsonObject;
 
 public class DomainRegistry {
     private final Map<String, Domain> domains = new HashMap<>();
+    private StatisticsCatalog statistics = new StatisticsCatalog();
     
     public void register(Domain domain) {
         domains.put(domain.getName(), domain);
@@ -30,6 +33,25 @@ public class DomainRegistry {
         return Collections.unmodifiableCollection(domains.values());
     }
 
+    /**
+     * Statistics of the registered domains' tables, persisted with
+     * {@link StatisticsCatalog#toJson()} next to the catalog's own JSON.
+     */
+    public StatisticsCatalog getStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(StatisticsCatalog statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * The fingerprint of the registered domains (see {@link Fingerprint#of(DomainRegistry)}).
+     */
+    public Fingerprint fingerprint() {
+        return Fingerprint.of(this);
+    }
+
     public JsonObject toJson() {
         JsonObject json = new JsonObject();
         domains.forEach((name, domain) -> json.add(name, domain.toJson()));
@@ -6,4 +6,11 @@ import org.kmsf.domainql.expression.type.SourceType;
 public interface Expression {
     SourceType getSource();
     ExpressionType getType();
+
+    /**
+     * The shape of the expression without its literal values (see {@link Fingerprint}).
+     */
+    default Fingerprint fingerprint() {
+        return Fingerprint.of(this);
+    }
 } 
\ No newline at end of file
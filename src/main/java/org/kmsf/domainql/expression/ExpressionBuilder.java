@@ -1,5 +1,10 @@
 package org.kmsf.domainql.expression;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
 import org.kmsf.domainql.expression.AggregateExpression.AggregateFunction;
 import org.kmsf.domainql.expression.type.*;
 
@@ -17,6 +22,10 @@ public class ExpressionBuilder {
         return new LiteralBuilder(value);
     }
 
+    public static ExpressionBuilder param(String name, ScalarType type) {
+        return new ParameterBuilder(name, type);
+    }
+
     // Comparison operators
     public static ExpressionBuilder EQUALS(ExpressionBuilder left, ExpressionBuilder right) {
         return new BinaryExpressionBuilder(left, Operator.EQUALS, right);
@@ -50,13 +59,21 @@ public class ExpressionBuilder {
         return new BinaryExpressionBuilder(left, Operator.IN, right);
     }
 
-    // Logical operators
+    // Logical operators, built as flat n-ary expressions however they are nested
     public static ExpressionBuilder AND(ExpressionBuilder left, ExpressionBuilder right) {
-        return new BinaryExpressionBuilder(left, Operator.AND, right);
+        return new LogicalExpressionBuilder(Operator.AND, List.of(left, right));
+    }
+
+    public static ExpressionBuilder AND(List<ExpressionBuilder> operands) {
+        return LogicalExpressionBuilder.of(Operator.AND, operands);
     }
 
     public static ExpressionBuilder OR(ExpressionBuilder left, ExpressionBuilder right) {
-        return new BinaryExpressionBuilder(left, Operator.OR, right);
+        return new LogicalExpressionBuilder(Operator.OR, List.of(left, right));
+    }
+
+    public static ExpressionBuilder OR(List<ExpressionBuilder> operands) {
+        return LogicalExpressionBuilder.of(Operator.OR, operands);
     }
 
     // Arithmetic operators
@@ -186,6 +203,22 @@ class LiteralBuilder extends ExpressionBuilder {
     }
 }
 
+class ParameterBuilder extends ExpressionBuilder {
+
+    private final String name;
+    private final ScalarType type;
+
+    protected ParameterBuilder(String name, ScalarType type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    @Override
+    public Expression build(Domain rootDomain) {
+        return new ParameterExpression(name, type);
+    }
+}
+
 class BinaryExpressionBuilder extends ExpressionBuilder {
     private final ExpressionBuilder left;
     private final Operator operator;
@@ -207,6 +240,47 @@ class BinaryExpressionBuilder extends ExpressionBuilder {
     }
 } 
 
+class LogicalExpressionBuilder extends ExpressionBuilder {
+    private final Operator operator;
+    private final List<ExpressionBuilder> operands;
+
+    LogicalExpressionBuilder(Operator operator, List<ExpressionBuilder> operands) {
+        this.operator = operator;
+        this.operands = operands;
+    }
+
+    static ExpressionBuilder of(Operator operator, List<ExpressionBuilder> operands) {
+        if (operands.isEmpty()) {
+            throw new IllegalArgumentException(operator + " requires at least one operand");
+        }
+        return operands.size() == 1 ? operands.get(0) : new LogicalExpressionBuilder(operator, new ArrayList<>(operands));
+    }
+
+    /*
+     * Nested builders of the same operator are walked with an explicit stack,
+     * so that a chain such as AND(AND(AND(a, b), c), d) of any length builds
+     * without deep recursion.
+     */
+    @Override
+    public Expression build(Domain rootDomain) {
+        List<Expression> built = new ArrayList<>();
+        Deque<ExpressionBuilder> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            ExpressionBuilder current = pending.pop();
+            if (current instanceof LogicalExpressionBuilder && ((LogicalExpressionBuilder) current).operator == operator) {
+                List<ExpressionBuilder> children = ((LogicalExpressionBuilder) current).operands;
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    pending.push(children.get(i));
+                }
+            } else {
+                built.add(current.build(rootDomain));
+            }
+        }
+        return new LogicalExpression(operator, built);
+    }
+}
+
 class AggregateExpressionBuilder extends ExpressionBuilder {
 
     private final ExpressionBuilder operand;
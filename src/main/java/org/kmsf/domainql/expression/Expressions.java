@@ -0,0 +1,316 @@
+package org.kmsf.domainql.expression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.kmsf.domainql.expression.type.Operator;
+
+/**
+ * Static helpers to inspect expression trees.
+ */
+public final class Expressions {
+
+    private Expressions() {
+    }
+
+    /**
+     * The reference paths (chains of reference attributes from the expression's
+     * source domain) navigated by the expression, each prefix included. These
+     * are exactly the joins the SQL generator will emit for it.
+     */
+    public static Set<List<ReferenceAttribute>> referencePaths(Expression expr) {
+        Set<List<ReferenceAttribute>> paths = new LinkedHashSet<>();
+        collectReferencePaths(expr, new ArrayList<>(), paths);
+        return paths;
+    }
+
+    public static Set<List<ReferenceAttribute>> referencePaths(Query query) {
+        Set<List<ReferenceAttribute>> paths = new LinkedHashSet<>();
+        for (Expression expr : expressions(query)) {
+            collectReferencePaths(expr, new ArrayList<>(), paths);
+        }
+        return paths;
+    }
+
+    /**
+     * The reference path leading to each attribute the expression reads, the
+     * empty path standing for the source domain itself, or null if the
+     * expression reads anything else than attributes and literals (such as a
+     * nested query or an aggregate).
+     */
+    public static Set<List<ReferenceAttribute>> attributePaths(Expression expr) {
+        Set<List<ReferenceAttribute>> paths = new LinkedHashSet<>();
+        return collectAttributePaths(expr, paths) ? paths : null;
+    }
+
+    private static boolean collectAttributePaths(Expression expr, Set<List<ReferenceAttribute>> paths) {
+        if (expr instanceof AttributeExpression || expr instanceof ComposeExpression) {
+            List<ReferenceAttribute> path = new ArrayList<>();
+            while (expr instanceof ComposeExpression) {
+                Expression reference = ((ComposeExpression) expr).getReference();
+                if (!(reference instanceof AttributeExpression)
+                    || !(((AttributeExpression) reference).getAttribute() instanceof ReferenceAttribute)) {
+                    return false;
+                }
+                path.add((ReferenceAttribute) ((AttributeExpression) reference).getAttribute());
+                expr = ((ComposeExpression) expr).getComposition();
+            }
+            paths.add(path);
+            return expr instanceof AttributeExpression;
+        } else if (expr instanceof BinaryExpression) {
+            return collectAttributePaths(((BinaryExpression) expr).getLeft(), paths)
+                && collectAttributePaths(((BinaryExpression) expr).getRight(), paths);
+        } else if (expr instanceof LogicalExpression) {
+            for (Expression operand : ((LogicalExpression) expr).getOperands()) {
+                if (!collectAttributePaths(operand, paths)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return expr instanceof LiteralExpression || expr instanceof ParameterExpression;
+    }
+
+    private static void collectReferencePaths(Expression expr, List<ReferenceAttribute> prefix,
+                                              Set<List<ReferenceAttribute>> paths) {
+        if (expr instanceof ComposeExpression) {
+            ComposeExpression compose = (ComposeExpression) expr;
+            Expression reference = compose.getReference();
+            if (reference instanceof AttributeExpression
+                && ((AttributeExpression) reference).getAttribute() instanceof ReferenceAttribute) {
+                List<ReferenceAttribute> path = new ArrayList<>(prefix);
+                path.add((ReferenceAttribute) ((AttributeExpression) reference).getAttribute());
+                paths.add(path);
+                collectReferencePaths(compose.getComposition(), path, paths);
+            }
+        } else if (expr instanceof BinaryExpression) {
+            collectReferencePaths(((BinaryExpression) expr).getLeft(), prefix, paths);
+            collectReferencePaths(((BinaryExpression) expr).getRight(), prefix, paths);
+        } else if (expr instanceof LogicalExpression) {
+            for (Expression operand : ((LogicalExpression) expr).getOperands()) {
+                collectReferencePaths(operand, prefix, paths);
+            }
+        } else if (expr instanceof AggregateExpression) {
+            Expression operand = ((AggregateExpression) expr).getOperand();
+            if (operand != null) {
+                collectReferencePaths(operand, prefix, paths);
+            }
+        }
+    }
+
+    /**
+     * Visits the expression and all its sub-expressions, parents first.
+     */
+    public static void forEach(Expression expr, Consumer<Expression> visitor) {
+        Deque<Expression> pending = new ArrayDeque<>();
+        if (expr != null) {
+            pending.push(expr);
+        }
+        while (!pending.isEmpty()) {
+            Expression current = pending.pop();
+            visitor.accept(current);
+            List<Expression> children = children(current);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(children.get(i));
+            }
+        }
+    }
+
+    private static List<Expression> children(Expression expr) {
+        if (expr instanceof ComposeExpression) {
+            return List.of(((ComposeExpression) expr).getReference(), ((ComposeExpression) expr).getComposition());
+        } else if (expr instanceof BinaryExpression) {
+            return List.of(((BinaryExpression) expr).getLeft(), ((BinaryExpression) expr).getRight());
+        } else if (expr instanceof LogicalExpression) {
+            return ((LogicalExpression) expr).getOperands();
+        } else if (expr instanceof AggregateExpression && ((AggregateExpression) expr).getOperand() != null) {
+            return List.of(((AggregateExpression) expr).getOperand());
+        } else if (expr instanceof GroupingExpression) {
+            return ((GroupingExpression) expr).getKeys();
+        }
+        return List.of();
+    }
+
+    /**
+     * Every expression of the query: projections, filter, having and order by keys.
+     */
+    public static List<Expression> expressions(Query query) {
+        List<Expression> expressions = new ArrayList<>(query.getProjections().values());
+        if (query.getFilter() != null) {
+            expressions.add(query.getFilter());
+        }
+        if (query.getHaving() != null) {
+            expressions.add(query.getHaving());
+        }
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            expressions.add(orderBy.getExpression());
+        }
+        return expressions;
+    }
+
+    /**
+     * The queries directly used as a domain by the given query: its source, the
+     * targets of the references it navigates and nested query expressions.
+     */
+    public static Set<Query> nestedQueries(Query query) {
+        Set<Query> nested = new LinkedHashSet<>();
+        if (query.getSourceDomain() instanceof Query) {
+            nested.add((Query) query.getSourceDomain());
+        }
+        for (List<ReferenceAttribute> path : referencePaths(query)) {
+            Domain target = path.get(path.size() - 1).getReferenceDomain();
+            if (target instanceof Query) {
+                nested.add((Query) target);
+            }
+        }
+        for (Expression expr : expressions(query)) {
+            forEach(expr, e -> {
+                if (e instanceof QueryExpression) {
+                    nested.add(((QueryExpression) e).getQuery());
+                }
+            });
+        }
+        return nested;
+    }
+
+    /**
+     * Rebuilds the expression bottom-up, replacing each node by the result of
+     * the rewrite function applied once its children have been rewritten.
+     * Unchanged subtrees are returned as is.
+     */
+    public static Expression transform(Expression expr, UnaryOperator<Expression> rewrite) {
+        if (expr == null) {
+            return null;
+        }
+        Expression rebuilt = expr;
+        if (expr instanceof ComposeExpression) {
+            ComposeExpression compose = (ComposeExpression) expr;
+            Expression reference = transform(compose.getReference(), rewrite);
+            Expression composition = transform(compose.getComposition(), rewrite);
+            if (reference != compose.getReference() || composition != compose.getComposition()) {
+                rebuilt = new ComposeExpression(reference, composition);
+            }
+        } else if (expr instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expr;
+            Expression left = transform(binary.getLeft(), rewrite);
+            Expression right = transform(binary.getRight(), rewrite);
+            if (left != binary.getLeft() || right != binary.getRight()) {
+                rebuilt = new BinaryExpression(left, binary.getOperator(), right);
+            }
+        } else if (expr instanceof LogicalExpression) {
+            LogicalExpression logical = (LogicalExpression) expr;
+            List<Expression> operands = new ArrayList<>(logical.getOperands().size());
+            boolean changed = false;
+            for (Expression operand : logical.getOperands()) {
+                Expression rewritten = transform(operand, rewrite);
+                changed |= rewritten != operand;
+                operands.add(rewritten);
+            }
+            if (changed) {
+                rebuilt = new LogicalExpression(logical.getOperator(), operands);
+            }
+        } else if (expr instanceof AggregateExpression) {
+            AggregateExpression aggregate = (AggregateExpression) expr;
+            Expression operand = transform(aggregate.getOperand(), rewrite);
+            if (operand != aggregate.getOperand()) {
+                rebuilt = new AggregateExpression(operand, aggregate.getFunction());
+            }
+        } else if (expr instanceof GroupingExpression) {
+            GroupingExpression grouping = (GroupingExpression) expr;
+            List<Expression> keys = new ArrayList<>();
+            boolean changed = false;
+            for (Expression key : grouping.getKeys()) {
+                Expression rewritten = transform(key, rewrite);
+                changed |= rewritten != key;
+                keys.add(rewritten);
+            }
+            if (changed) {
+                rebuilt = new GroupingExpression(keys);
+            }
+        }
+        return rewrite.apply(rebuilt);
+    }
+
+    /**
+     * The operands of a (possibly nested) AND, or the expression itself.
+     */
+    public static List<Expression> conjuncts(Expression expr) {
+        return operands(expr, Operator.AND);
+    }
+
+    /**
+     * The operands of a (possibly nested) OR, or the expression itself.
+     */
+    public static List<Expression> disjuncts(Expression expr) {
+        return operands(expr, Operator.OR);
+    }
+
+    private static List<Expression> operands(Expression expr, Operator operator) {
+        List<Expression> operands = new ArrayList<>();
+        if (expr == null) {
+            return operands;
+        }
+        Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expr);
+        while (!pending.isEmpty()) {
+            Expression current = pending.pop();
+            if (current instanceof LogicalExpression && ((LogicalExpression) current).getOperator() == operator) {
+                List<Expression> children = ((LogicalExpression) current).getOperands();
+                for (int i = children.size() - 1; i >= 0; i--) {
+                    pending.push(children.get(i));
+                }
+            } else if (current instanceof BinaryExpression && ((BinaryExpression) current).getOperator() == operator) {
+                pending.push(((BinaryExpression) current).getRight());
+                pending.push(((BinaryExpression) current).getLeft());
+            } else {
+                operands.add(current);
+            }
+        }
+        return operands;
+    }
+
+    /**
+     * The conjunction of the given predicates, or null if there are none.
+     */
+    public static Expression and(List<Expression> conjuncts) {
+        return combine(conjuncts, Operator.AND);
+    }
+
+    /**
+     * The disjunction of the given predicates, or null if there are none.
+     */
+    public static Expression or(List<Expression> disjuncts) {
+        return combine(disjuncts, Operator.OR);
+    }
+
+    private static Expression combine(List<Expression> operands, Operator operator) {
+        if (operands.isEmpty()) {
+            return null;
+        }
+        return operands.size() == 1 ? operands.get(0) : new LogicalExpression(operator, operands);
+    }
+
+    /**
+     * Whether the expression contains an aggregate, i.e. can only be evaluated
+     * per group.
+     */
+    public static boolean containsAggregate(Expression expr) {
+        boolean[] found = {false};
+        forEach(expr, e -> found[0] |= e instanceof AggregateExpression || e instanceof GroupingExpression);
+        return found[0];
+    }
+
+    public static boolean isAggregate(Expression expr) {
+        return expr.getType().isAggregate();
+    }
+
+    public static boolean hasAggregate(Query query) {
+        return query.getProjections().values().stream().anyMatch(Expressions::isAggregate);
+    }
+}
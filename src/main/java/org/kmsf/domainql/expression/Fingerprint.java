@@ -0,0 +1,321 @@
+package org.kmsf.domainql.expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.type.Operator;
+
+/**
+ * A 128-bit hash of the shape of a query or expression: what it reads and
+ * how it combines it, without the values of its literals. The values are
+ * kept aside, in the order they are met, as the parameters of the shape.
+ * Queries differing only by their literals, their limit or the position of
+ * their page thus share a fingerprint, and can share cache entries, metrics
+ * or plans.
+ *
+ * <p>A list of values (the right operand of IN) is a single parameter,
+ * whatever its length. Fingerprints are equal when their hashes are,
+ * whatever their parameters.
+ */
+public class Fingerprint {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    // the names the shapes are made of, hashed once
+    private static final long[] OPERATORS = hashes(Operator.values());
+    private static final long[] FUNCTIONS = hashes(AggregateExpression.AggregateFunction.values());
+    private static final ClassValue<Long> LITERAL_TYPES = new ClassValue<>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            return hash(type.getSimpleName());
+        }
+    };
+
+    private final long high;
+    private final long low;
+    private final List<Object> parameters;
+
+    private Fingerprint(long high, long low, List<Object> parameters) {
+        this.high = high;
+        this.low = low;
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    public static Fingerprint of(Expression expr) {
+        Hasher hasher = new Hasher();
+        hasher.expression(expr);
+        return hasher.finish();
+    }
+
+    public static Fingerprint of(Query query) {
+        Hasher hasher = new Hasher();
+        hasher.query(query);
+        return hasher.finish();
+    }
+
+    /**
+     * The fingerprint of a catalog: the names of its domains, their
+     * attributes and types, their references with their join conditions
+     * (values included) and their keys. What is compiled against the catalog
+     * remains valid as long as its fingerprint is unchanged.
+     */
+    public static Fingerprint of(DomainRegistry registry) {
+        Hasher hasher = new Hasher();
+        hasher.catalog(registry);
+        return hasher.finish();
+    }
+
+    /**
+     * A fingerprint read back from its two halves, without parameters.
+     */
+    public static Fingerprint of(long high, long low) {
+        return new Fingerprint(high, low, new ArrayList<>());
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * The fingerprint folded to 64 bits.
+     */
+    public long longValue() {
+        return high ^ low;
+    }
+
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    public String toHex() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    /**
+     * A 64-bit hash of the characters of the string.
+     */
+    static long hash(String value) {
+        long h = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = Long.rotateLeft((h ^ value.charAt(i)) * C1, 23);
+        }
+        return h ^ (h >>> 29);
+    }
+
+    private static long[] hashes(Enum<?>[] values) {
+        long[] hashes = new long[values.length];
+        for (Enum<?> value : values) {
+            hashes[value.ordinal()] = hash(value.name());
+        }
+        return hashes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Fingerprint)) return false;
+        Fingerprint that = (Fingerprint) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(longValue());
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    /*
+     * Two 64-bit lanes fed token by token, mixed together when finalized
+     * (as MurmurHash3's x64 128-bit variant does).
+     */
+    private static class Hasher {
+        private long h1;
+        private long h2;
+        private int length;
+        private final List<Object> parameters = new ArrayList<>();
+
+        void catalog(DomainRegistry registry) {
+            List<Domain> domains = new ArrayList<>(registry.getAllDomains());
+            domains.sort(Comparator.comparing(Domain::getName));
+            for (Domain domain : domains) {
+                tag('D');
+                string(domain.getName());
+                List<Attribute> attributes = new ArrayList<>(domain.getAttributes());
+                attributes.sort(Comparator.comparing(Attribute::getName));
+                for (Attribute attribute : attributes) {
+                    if (attribute instanceof ReferenceAttribute) {
+                        ReferenceAttribute reference = (ReferenceAttribute) attribute;
+                        tag('R');
+                        string(reference.getName());
+                        string(reference.getReferenceDomain().getName());
+                        expression(reference.getJoinCondition());
+                    } else {
+                        tag('A');
+                        string(attribute.getName());
+                        string(String.valueOf(attribute.getType()));
+                    }
+                }
+                for (Set<Attribute> key : domain.getKeys()) {
+                    tag('K');
+                    for (Attribute attribute : key) {
+                        string(attribute.getName());
+                    }
+                }
+            }
+            // unlike a query's, the values of a join condition are part of the catalog
+            for (Object value : parameters) {
+                string(String.valueOf(value));
+            }
+            parameters.clear();
+        }
+
+        void query(Query query) {
+            tag('Q');
+            string(query.getName());
+            Domain source = query.getSourceDomain();
+            if (source instanceof Query) {
+                query((Query) source);
+            } else {
+                tag('D');
+                string(source.getName());
+            }
+            for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+                tag('P');
+                string(projection.getKey());
+                expression(projection.getValue());
+            }
+            tag('W');
+            expression(query.getFilter());
+            tag('H');
+            expression(query.getHaving());
+            if (query.getGroupingSets() != null) {
+                for (List<Expression> groupingSet : query.getGroupingSets()) {
+                    tag('G');
+                    for (Expression key : groupingSet) {
+                        expression(key);
+                    }
+                }
+            }
+            for (Query.OrderBy orderBy : query.getOrderBy()) {
+                tag(orderBy.isAscending() ? 'A' : 'Z');
+                expression(orderBy.getExpression());
+            }
+            if (query.getLimit() != null) {
+                tag('L');
+                parameters.add(query.getLimit());
+            }
+            if (query.getContinuationToken() != null) {
+                tag('C');
+                mix(query.getContinuationToken().size());
+                parameters.addAll(query.getContinuationToken().getValues());
+            }
+        }
+
+        void expression(Expression expr) {
+            if (expr == null) {
+                tag('0');
+            } else if (expr instanceof AttributeExpression) {
+                AttributeExpression attrExpr = (AttributeExpression) expr;
+                tag('a');
+                mix(attrExpr.getAttribute().fingerprint());
+                mix(attrExpr.getContextResolution().ordinal());
+            } else if (expr instanceof ComposeExpression) {
+                tag('c');
+                expression(((ComposeExpression) expr).getReference());
+                expression(((ComposeExpression) expr).getComposition());
+            } else if (expr instanceof LiteralExpression) {
+                Object value = ((LiteralExpression) expr).getValue();
+                if (value instanceof List) {
+                    tag('v');
+                    List<?> values = (List<?>) value;
+                    mix(values.isEmpty() ? 0 : LITERAL_TYPES.get(values.get(0).getClass()));
+                } else {
+                    tag('l');
+                    mix(LITERAL_TYPES.get(value.getClass()));
+                }
+                parameters.add(value);
+            } else if (expr instanceof ParameterExpression) {
+                tag('p');
+                string(((ParameterExpression) expr).getName());
+                string(expr.getType().toString());
+            } else if (expr instanceof BinaryExpression) {
+                BinaryExpression binary = (BinaryExpression) expr;
+                tag('b');
+                mix(OPERATORS[binary.getOperator().ordinal()]);
+                expression(binary.getLeft());
+                expression(binary.getRight());
+            } else if (expr instanceof LogicalExpression) {
+                LogicalExpression logical = (LogicalExpression) expr;
+                tag('o');
+                mix(OPERATORS[logical.getOperator().ordinal()]);
+                mix(logical.getOperands().size());
+                for (Expression operand : logical.getOperands()) {
+                    expression(operand);
+                }
+            } else if (expr instanceof AggregateExpression) {
+                tag('g');
+                mix(FUNCTIONS[((AggregateExpression) expr).getFunction().ordinal()]);
+                expression(((AggregateExpression) expr).getOperand());
+            } else if (expr instanceof GroupingExpression) {
+                tag('k');
+                mix(((GroupingExpression) expr).getKeys().size());
+                for (Expression key : ((GroupingExpression) expr).getKeys()) {
+                    expression(key);
+                }
+            } else if (expr instanceof QueryExpression) {
+                tag('q');
+                query(((QueryExpression) expr).getQuery());
+            } else {
+                throw new IllegalArgumentException("Unsupported expression: " + expr.getClass().getSimpleName());
+            }
+        }
+
+        private void tag(char tag) {
+            mix(tag);
+        }
+
+        private void string(String value) {
+            mix(hash(value));
+        }
+
+        private void mix(long k) {
+            // two independent lanes: each token costs a multiply per lane, without a dependency between them
+            h1 = Long.rotateLeft((h1 ^ k) * C1, 29);
+            h2 = Long.rotateLeft((h2 + k) * C2, 31);
+            length++;
+        }
+
+        Fingerprint finish() {
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Fingerprint(h1, h2, parameters);
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
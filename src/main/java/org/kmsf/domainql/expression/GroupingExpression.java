@@ -0,0 +1,48 @@
+package org.kmsf.domainql.expression;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.kmsf.domainql.expression.type.AggregateType;
+import org.kmsf.domainql.expression.type.ExpressionType;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.expression.type.SourceType;
+
+/**
+ * SQL GROUPING(k1, ..., kn): bit i (counting from the last key) is set when
+ * key i is rolled up in the grouping set that produced the row.
+ */
+public class GroupingExpression implements Expression {
+    private final List<Expression> keys;
+
+    public GroupingExpression(List<Expression> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("GROUPING requires at least one key");
+        }
+        this.keys = List.copyOf(keys);
+    }
+
+    public List<Expression> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    @Override
+    public SourceType getSource() {
+        return keys.get(0).getSource();
+    }
+
+    @Override
+    public ExpressionType getType() {
+        return new AggregateType(ScalarType.INTEGER);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GroupingExpression && keys.equals(((GroupingExpression) o).keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return keys.hashCode();
+    }
+}
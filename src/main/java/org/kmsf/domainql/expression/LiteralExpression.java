@@ -4,6 +4,9 @@ import org.kmsf.domainql.expression.type.ExpressionType;
 import org.kmsf.domainql.expression.type.ScalarType;
 import org.kmsf.domainql.expression.type.SourceType;
 
+import java.util.List;
+import java.util.Objects;
+
 public class LiteralExpression implements Expression {
     private Object value;
 
@@ -16,12 +19,31 @@ public class LiteralExpression implements Expression {
         return null; // Literals don't have a source domain
     }
 
+    /**
+     * The type of the value, or of its elements for a list of values (the
+     * right operand of IN).
+     */
     @Override
     public ExpressionType getType() {
+        if (value instanceof List && !((List<?>) value).isEmpty()) {
+            return ScalarType.fromClass(((List<?>) value).get(0).getClass());
+        }
         return ScalarType.fromClass(value.getClass());
     }
 
     public Object getValue() {
         return value;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LiteralExpression)) return false;
+        return Objects.equals(value, ((LiteralExpression) o).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(value);
+    }
 } 
\ No newline at end of file
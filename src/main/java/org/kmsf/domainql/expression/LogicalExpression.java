@@ -0,0 +1,90 @@
+package org.kmsf.domainql.expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kmsf.domainql.expression.type.ExpressionType;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.expression.type.SourceType;
+
+/**
+ * AND or OR of any number of operands. Unlike nested binary expressions, a
+ * long chain of conditions is a single node whatever its length, so it can be
+ * walked and generated without deep recursion.
+ */
+public class LogicalExpression implements Expression {
+    private final Operator operator;
+    private final List<Expression> operands;
+    private final SourceType source;
+
+    public LogicalExpression(Operator operator, List<Expression> operands) {
+        if (operator != Operator.AND && operator != Operator.OR) {
+            throw new IllegalArgumentException("Logical expression requires AND or OR, got " + operator);
+        }
+        if (operands.size() < 2) {
+            throw new IllegalArgumentException(operator + " requires at least two operands");
+        }
+        this.operator = operator;
+        // operands of the same operator are merged, (a AND b) AND c being a AND b AND c
+        List<Expression> flattened = new ArrayList<>(operands.size());
+        for (Expression operand : operands) {
+            if (operand instanceof LogicalExpression && ((LogicalExpression) operand).operator == operator) {
+                flattened.addAll(((LogicalExpression) operand).operands);
+            } else {
+                flattened.add(operand);
+            }
+        }
+        this.operands = Collections.unmodifiableList(flattened);
+        SourceType source = null;
+        for (Expression operand : this.operands) {
+            source = BinaryExpression.determineSourceType(source, operand.getSource());
+        }
+        this.source = source;
+    }
+
+    public static LogicalExpression and(Expression... operands) {
+        return new LogicalExpression(Operator.AND, List.of(operands));
+    }
+
+    public static LogicalExpression or(Expression... operands) {
+        return new LogicalExpression(Operator.OR, List.of(operands));
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public List<Expression> getOperands() {
+        return operands;
+    }
+
+    @Override
+    public SourceType getSource() {
+        return source;
+    }
+
+    @Override
+    public ExpressionType getType() {
+        return ScalarType.BOOLEAN;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LogicalExpression)) return false;
+        LogicalExpression that = (LogicalExpression) o;
+        return operator == that.operator && operands.equals(that.operands);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * operator.hashCode() + operands.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return operator + operands.toString();
+    }
+}
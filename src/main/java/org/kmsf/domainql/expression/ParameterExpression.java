@@ -0,0 +1,57 @@
+package org.kmsf.domainql.expression;
+
+import org.kmsf.domainql.expression.type.ExpressionType;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.expression.type.SourceType;
+
+import java.util.Objects;
+
+/**
+ * A named value given when the query runs rather than when it is built,
+ * generated as a {@code ?} placeholder (see {@code QueryTemplate}). Its
+ * declared type takes part in type checking like a literal's would.
+ */
+public class ParameterExpression implements Expression {
+    private final String name;
+    private final ScalarType type;
+
+    public ParameterExpression(String name, ScalarType type) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("A parameter requires a name");
+        }
+        this.name = name;
+        this.type = type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public SourceType getSource() {
+        return null; // like literals, parameters don't have a source domain
+    }
+
+    @Override
+    public ExpressionType getType() {
+        return type;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ParameterExpression)) return false;
+        ParameterExpression that = (ParameterExpression) o;
+        return name.equals(that.name) && type.equals(that.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, type);
+    }
+
+    @Override
+    public String toString() {
+        return ":" + name;
+    }
+}
@@ -1,12 +1,24 @@
 package org.kmsf.domainql.expression;
 
+import org.kmsf.domainql.expression.type.AggregateType;
+import org.kmsf.domainql.expression.type.ExpressionType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Query extends Domain {
     private Domain sourceDomain;
     private Map<String, Expression> projections;
     private Expression filter;
+    private Expression having;
+    private final List<OrderBy> orderBy = new ArrayList<>();
+    private Integer limit;
+    private ContinuationToken continuationToken;
+    private List<List<Expression>> groupingSets;
     
     public Query(String name, Domain sourceDomain) {
         super(name);
@@ -25,8 +37,13 @@ public class Query extends Domain {
         }
         
         projections.put(alias, expression);
-        // Create corresponding attribute for the query when used as domain
-        addAttribute(alias, new Attribute(alias, this, expression.getType()));
+        // Create corresponding attribute for the query when used as domain,
+        // where an aggregated projection is a plain scalar column
+        ExpressionType type = expression.getType();
+        if (type instanceof AggregateType) {
+            type = ((AggregateType) type).getResultType();
+        }
+        addAttribute(alias, new Attribute(alias, this, type));
     }
 
     public Domain getSourceDomain() {
@@ -45,6 +62,140 @@ public class Query extends Domain {
         this.filter = filter;
     }
 
+    /**
+     * Predicate on groups, applied after aggregation.
+     */
+    public Expression getHaving() {
+        return having;
+    }
+
+    public void setHaving(Expression having) {
+        this.having = having;
+    }
+
+    public void addOrderBy(Expression expression, boolean ascending) {
+        if (expression.getSource()!=null && !expression.getSource().equals(sourceDomain.asDomainType())) {
+            throw new IllegalArgumentException(
+                "Order by expression source must match query source domain. " +
+                "Expected: " + sourceDomain.getName() + 
+                ", Got: " + expression.getSource()
+            );
+        }
+        orderBy.add(new OrderBy(expression, ascending));
+    }
+
+    public List<OrderBy> getOrderBy() {
+        return Collections.unmodifiableList(orderBy);
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive, got " + limit);
+        }
+        this.limit = limit;
+    }
+
+    public ContinuationToken getContinuationToken() {
+        return continuationToken;
+    }
+
+    /**
+     * Keyset pagination: restrict the query to the {@code pageSize} rows that
+     * follow the sort key held by {@code after} (or the first page if null).
+     * The sort keys of a token cannot be NULL.
+     */
+    public void setPage(int pageSize, ContinuationToken after) {
+        if (orderBy.isEmpty()) {
+            throw new IllegalStateException("Pagination requires at least one order by key");
+        }
+        if (after != null && after.size() != orderBy.size()) {
+            throw new IllegalArgumentException(
+                "Continuation token has " + after.size() + " values, expected " + orderBy.size()
+            );
+        }
+        if (after != null && after.getValues().contains(null)) {
+            // (k1, k2) > (?, NULL) is never true: the next page would silently be empty
+            throw new IllegalArgumentException("Keyset pagination does not support NULL sort keys: " + after);
+        }
+        setLimit(pageSize);
+        this.continuationToken = after;
+    }
+
+    public List<List<Expression>> getGroupingSets() {
+        return groupingSets;
+    }
+
+    /**
+     * Replaces the implicit GROUP BY (every non-aggregate projection) with
+     * explicit GROUPING SETS, or restores it when null.
+     */
+    public void setGroupingSets(List<List<Expression>> groupingSets) {
+        this.groupingSets = groupingSets;
+    }
+
+    /**
+     * Copy of this query, under the same name, keeping only the given
+     * projections (in their original order).
+     */
+    public Query withProjections(Collection<String> aliases) {
+        Query copy = new Query(getName(), sourceDomain);
+        for (Map.Entry<String, Expression> projection : projections.entrySet()) {
+            if (aliases.contains(projection.getKey())) {
+                copy.addProjection(projection.getKey(), projection.getValue());
+            }
+        }
+        copy.filter = filter;
+        copy.having = having;
+        copy.orderBy.addAll(orderBy);
+        copy.limit = limit;
+        copy.continuationToken = continuationToken;
+        copy.groupingSets = groupingSets;
+        return copy;
+    }
+
+    /**
+     * The shape of the query without its literal values, limit and page
+     * position (see {@link Fingerprint}).
+     */
+    public Fingerprint fingerprint() {
+        return Fingerprint.of(this);
+    }
+
+    /**
+     * Returns the alias of the projection computing the given expression, or
+     * null if the expression is not projected.
+     */
+    public String findProjectionAlias(Expression expression) {
+        for (Map.Entry<String, Expression> projection : projections.entrySet()) {
+            if (projection.getValue().equals(expression)) {
+                return projection.getKey();
+            }
+        }
+        return null;
+    }
+
+    public static class OrderBy {
+        private final Expression expression;
+        private final boolean ascending;
+
+        public OrderBy(Expression expression, boolean ascending) {
+            this.expression = expression;
+            this.ascending = ascending;
+        }
+
+        public Expression getExpression() {
+            return expression;
+        }
+
+        public boolean isAscending() {
+            return ascending;
+        }
+    }
+
     @Override
     public String toString() {
         return "Query{" +
@@ -1,10 +1,12 @@
 package org.kmsf.domainql.expression;
 
-import org.kmsf.domainql.expression.type.Operator;
+import java.util.ArrayList;
+import java.util.List;
 
 public class QueryBuilder {
     private final Query query;
     private final Domain sourceDomain;
+    private final List<Expression> conjuncts = new ArrayList<>();
 
     private QueryBuilder(String name, Domain sourceDomain) {
         this.sourceDomain = sourceDomain;
@@ -76,16 +78,43 @@ public class QueryBuilder {
         return where(exprBuilder.build(sourceDomain));
     }
 
+    /**
+     * Adds a condition to the filter: successive conditions are ANDed in a
+     * single n-ary expression, built once by {@link #build()}.
+     */
     public QueryBuilder where(Expression filter) {
-        if (query.getFilter() == null) {
-            query.setFilter(filter);
-        } else {
-            query.setFilter(new BinaryExpression(query.getFilter(), Operator.AND, filter));
-        }
+        conjuncts.add(filter);
+        return this;
+    }
+
+    public QueryBuilder orderBy(String attributePath) {
+        return orderBy(attributePath, true);
+    }
+
+    public QueryBuilder orderBy(String attributePath, boolean ascending) {
+        query.addOrderBy(buildAttributePath(attributePath.split("\\.")), ascending);
+        return this;
+    }
+
+    public QueryBuilder orderBy(ExpressionBuilder exprBuilder, boolean ascending) {
+        query.addOrderBy(exprBuilder.build(sourceDomain), ascending);
+        return this;
+    }
+
+    public QueryBuilder limit(int limit) {
+        query.setLimit(limit);
+        return this;
+    }
+
+    public QueryBuilder page(int pageSize, ContinuationToken after) {
+        query.setPage(pageSize, after);
         return this;
     }
 
     public Query build() {
+        if (!conjuncts.isEmpty()) {
+            query.setFilter(Expressions.and(conjuncts));
+        }
         return query;
     }
 } 
\ No newline at end of file
@@ -24,4 +24,14 @@ public class QueryExpression implements Expression {
     public Query getQuery() {
         return query;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof QueryExpression && ((QueryExpression) o).query.equals(query);
+    }
+
+    @Override
+    public int hashCode() {
+        return query.hashCode();
+    }
 } 
\ No newline at end of file
@@ -1,7 +1,13 @@
 package org.kmsf.domainql.expression;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.kmsf.domainql.expression.type.CrossDomainType;
 import org.kmsf.domainql.expression.type.DomainType;
+import org.kmsf.domainql.expression.type.Operator;
 import org.kmsf.domainql.expression.type.ScalarType;
 import org.kmsf.domainql.expression.type.SourceType;
 
@@ -47,4 +53,51 @@ public class ReferenceAttribute extends Attribute {
     public Expression getJoinCondition() {
         return joinCondition;
     }
+
+    /**
+     * Whether a row of the source domain matches at most one row of the
+     * referenced domain: the join condition equates a declared key of the
+     * referenced domain with source columns.
+     */
+    public boolean isToOne() {
+        return referenceDomain.isKey(targetKeyColumns());
+    }
+
+    /**
+     * The source domain columns read by the join condition: source rows
+     * sharing their values join the same rows.
+     */
+    public Set<Attribute> getSourceColumns() {
+        Set<Attribute> columns = new LinkedHashSet<>();
+        Expressions.forEach(joinCondition, e -> {
+            if (e instanceof AttributeExpression && !isTargetSide((AttributeExpression) e)) {
+                columns.add(((AttributeExpression) e).getAttribute());
+            }
+        });
+        return columns;
+    }
+
+    private List<Attribute> targetKeyColumns() {
+        List<Attribute> columns = new ArrayList<>();
+        for (Expression condition : Expressions.conjuncts(joinCondition)) {
+            if (!(condition instanceof BinaryExpression)
+                || ((BinaryExpression) condition).getOperator() != Operator.EQUALS) {
+                continue;
+            }
+            for (Expression side : List.of(((BinaryExpression) condition).getLeft(), ((BinaryExpression) condition).getRight())) {
+                if (side instanceof AttributeExpression && isTargetSide((AttributeExpression) side)) {
+                    columns.add(((AttributeExpression) side).getAttribute());
+                }
+            }
+        }
+        return columns;
+    }
+
+    private boolean isTargetSide(AttributeExpression side) {
+        switch (side.getContextResolution()) {
+            case RIGHT: return true;
+            case LEFT: return false;
+            default: return side.getAttribute().getDomain() == referenceDomain && getDomain() != referenceDomain;
+        }
+    }
 } 
@@ -27,6 +27,11 @@ public class DomainType implements ExpressionType, SourceType {
         return obj instanceof DomainType && ((DomainType) obj).domain.equals(domain);
     }
 
+    @Override
+    public int hashCode() {
+        return domain.hashCode();
+    }
+
     @Override
     public String toString() {
         return domain.toString();
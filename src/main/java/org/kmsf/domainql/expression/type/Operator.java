@@ -19,7 +19,10 @@ public enum Operator {
     PLUS(null),      // type determined at runtime
     MINUS(null),     // type determined at runtime
     MULTIPLY(null),  // type determined at runtime
-    DIVIDE(null);    // type determined at runtime
+    DIVIDE(null),    // type determined at runtime
+
+    // First non-null operand, written COALESCE(left, right) (type of the left operand)
+    COALESCE(null);
 
     private final ExpressionType returnType;
 
@@ -53,7 +53,8 @@ public class ScalarType implements ExpressionType {
 
     public static ExpressionType fromClass(Class<?> class1) {
         if (String.class.equals(class1)) return STRING;
-        if (Integer.class.equals(class1) || int.class.equals(class1)) return INTEGER;
+        if (Integer.class.equals(class1) || int.class.equals(class1)
+            || Long.class.equals(class1) || long.class.equals(class1)) return INTEGER;
         if (Double.class.equals(class1) || double.class.equals(class1) || 
             BigDecimal.class.equals(class1)) return DECIMAL;
         if (Boolean.class.equals(class1) || boolean.class.equals(class1)) return BOOLEAN;
@@ -63,6 +64,22 @@ public class ScalarType implements ExpressionType {
         throw new IllegalArgumentException("Unsupported class type: " + class1.getName());
     }
 
+    /**
+     * The type named as by {@link #toString()}.
+     */
+    public static ScalarType valueOf(String name) {
+        switch (name) {
+            case "STRING": return STRING;
+            case "INTEGER": return INTEGER;
+            case "DECIMAL": return DECIMAL;
+            case "BOOLEAN": return BOOLEAN;
+            case "DATE": return DATE;
+            case "TIMESTAMP": return TIMESTAMP;
+            default:
+                throw new IllegalArgumentException("Unknown scalar type: " + name);
+        }
+    }
+
     @Override
     public String toString() {
         return baseType.toString();
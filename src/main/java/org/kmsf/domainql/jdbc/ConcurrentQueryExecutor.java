@@ -0,0 +1,165 @@
+package org.kmsf.domainql.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.optimizer.ExpressionSimplifier;
+import org.kmsf.domainql.sql.SQLGenerator;
+
+/**
+ * Fans a batch of independent queries out to one virtual thread each. SQL
+ * compilation runs unbounded in parallel; execution is bounded by a semaphore
+ * sized to the number of connections the caller is willing to use. Queries
+ * are compiled by the generators of the given {@link QueryExecutor}.
+ *
+ * Cancelling a returned future, or letting its deadline expire, cancels the
+ * running JDBC statement and releases its connection.
+ */
+public class ConcurrentQueryExecutor implements AutoCloseable {
+    private final QueryExecutor executor;
+    private final Semaphore connections;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ConcurrentQueryExecutor(QueryExecutor executor, int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Connection count must be positive, got " + maxConnections);
+        }
+        this.executor = executor;
+        this.connections = new Semaphore(maxConnections, true);
+    }
+
+    public <T> List<CompletableFuture<T>> submitAll(List<Query> queries, Duration deadline, ResultHandler<T> handler) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(queries.size());
+        for (Query query : queries) {
+            futures.add(submit(query, deadline, handler));
+        }
+        return futures;
+    }
+
+    /**
+     * @param deadline maximum time from submission to completion, or null for none
+     */
+    public <T> CompletableFuture<T> submit(Query query, Duration deadline, ResultHandler<T> handler) {
+        QueryTask<T> task = new QueryTask<>(query, deadline, handler);
+        CompletableFuture<T> future = task.future;
+        if (deadline != null) {
+            future.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        future.whenComplete((result, error) -> {
+            if (error instanceof CancellationException || error instanceof TimeoutException) {
+                task.cancel();
+            }
+        });
+        threads.execute(task);
+        return future;
+    }
+
+    public int availableConnections() {
+        return connections.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        threads.shutdownNow();
+    }
+
+    private class QueryTask<T> implements Runnable {
+        private final Query query;
+        private final long deadlineNanos;
+        private final ResultHandler<T> handler;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private volatile Thread thread;
+        private volatile Statement statement;
+
+        QueryTask(Query query, Duration deadline, ResultHandler<T> handler) {
+            this.query = query;
+            this.deadlineNanos = deadline == null ? 0 : System.nanoTime() + deadline.toNanos();
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            try {
+                if (future.isDone()) {
+                    return;
+                }
+                Query simplified = ExpressionSimplifier.simplify(query);
+                if (ExpressionSimplifier.isEmpty(simplified)) {
+                    future.complete(handler.handle(ResultCursor.empty(query)));
+                    return;
+                }
+                SQLGenerator generator = executor.generator(simplified);
+                String sql = generator.generateSQL();
+
+                if (!acquireConnection()) {
+                    future.completeExceptionally(new TimeoutException(
+                        "Deadline expired waiting for a connection for query '" + query.getName() + "'"));
+                    return;
+                }
+                T result;
+                try (ResultCursor cursor = executor.execute(query, sql, generator.getParameters(),
+                                                            remainingSeconds(), s -> statement = s)) {
+                    if (future.isDone()) {
+                        cancel();
+                    }
+                    result = handler.handle(cursor);
+                } finally {
+                    statement = null;
+                    connections.release();
+                }
+                // completed only once the connection is back in the pool
+                future.complete(result);
+            } catch (InterruptedException e) {
+                future.completeExceptionally(new CancellationException("Query '" + query.getName() + "' was cancelled"));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                thread = null;
+            }
+        }
+
+        private boolean acquireConnection() throws InterruptedException {
+            if (deadlineNanos == 0) {
+                connections.acquire();
+                return true;
+            }
+            return connections.tryAcquire(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        private int remainingSeconds() {
+            if (deadlineNanos == 0) {
+                return 0;
+            }
+            long remaining = deadlineNanos - System.nanoTime();
+            return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+
+        void cancel() {
+            Statement running = statement;
+            if (running != null) {
+                try {
+                    running.cancel();
+                } catch (SQLException e) {
+                    // the statement may already be closed
+                }
+            }
+            Thread worker = thread;
+            if (worker != null && running == null) {
+                // still compiling or waiting for a connection
+                worker.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.kmsf.domainql.jdbc;
+
+public class QueryExecutionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public QueryExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,138 @@
+package org.kmsf.domainql.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.optimizer.ExpressionSimplifier;
+import org.kmsf.domainql.sql.QueryTemplate;
+import org.kmsf.domainql.sql.SQLGenerator;
+
+/**
+ * Runs queries against a {@link DataSource} and streams the rows through a
+ * forward-only {@link ResultCursor}: at most {@code fetchSize} rows are held
+ * by the driver at any time.
+ *
+ * <p>Queries are compiled by the generators of a factory, {@code
+ * SQLGenerator::new} by default; a factory configuring them (canonical
+ * statements, statistics, a plan optimizer, a shared fragment cache) applies
+ * to every query the executor runs.
+ */
+public class QueryExecutor {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final int fetchSize;
+    private final Function<Query, SQLGenerator> generators;
+
+    public QueryExecutor(DataSource dataSource) {
+        this(dataSource, DEFAULT_FETCH_SIZE);
+    }
+
+    public QueryExecutor(DataSource dataSource, int fetchSize) {
+        this(dataSource, fetchSize, SQLGenerator::new);
+    }
+
+    public QueryExecutor(DataSource dataSource, int fetchSize, Function<Query, SQLGenerator> generators) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Fetch size must be positive or zero, got " + fetchSize);
+        }
+        if (generators == null) {
+            throw new IllegalArgumentException("Generator factory must not be null");
+        }
+        this.dataSource = dataSource;
+        this.fetchSize = fetchSize;
+        this.generators = generators;
+    }
+
+    public QueryExecutor withFetchSize(int fetchSize) {
+        return new QueryExecutor(dataSource, fetchSize, generators);
+    }
+
+    public QueryExecutor withGenerators(Function<Query, SQLGenerator> generators) {
+        return new QueryExecutor(dataSource, fetchSize, generators);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * A generator of the query, as configured by the factory of the executor.
+     */
+    public SQLGenerator generator(Query query) {
+        return generators.apply(query);
+    }
+
+    /**
+     * Runs the query once its predicates are simplified; a query they show to
+     * be empty returns an empty cursor without reaching the database.
+     */
+    public ResultCursor execute(Query query) {
+        Query simplified = ExpressionSimplifier.simplify(query);
+        if (ExpressionSimplifier.isEmpty(simplified)) {
+            return ResultCursor.empty(query);
+        }
+        SQLGenerator generator = generator(simplified);
+        String sql = generator.generateSQL();
+        return execute(query, sql, generator.getParameters());
+    }
+
+    /**
+     * Runs the statement of a template, as generated when it was compiled.
+     */
+    public ResultCursor execute(QueryTemplate.Binding binding) {
+        return execute(binding.getQuery(), binding.getSql(), binding.getParameters());
+    }
+
+    public ResultCursor execute(Query query, String sql, List<Object> parameters) {
+        return execute(query, sql, parameters, 0, null);
+    }
+
+    /*
+     * The prepared statement is handed to onPrepared before it runs, so that a caller
+     * on another thread can cancel it while executeQuery() is still blocked.
+     */
+    ResultCursor execute(Query query, String sql, List<Object> parameters, int queryTimeoutSeconds,
+                         Consumer<Statement> onPrepared) {
+        Connection connection = null;
+        boolean restoreAutoCommit = false;
+        PreparedStatement statement = null;
+        try {
+            connection = dataSource.getConnection();
+            // Most drivers (PostgreSQL in particular) only honour the fetch size inside a transaction
+            if (fetchSize > 0 && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                restoreAutoCommit = true;
+            }
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            if (queryTimeoutSeconds > 0) {
+                statement.setQueryTimeout(queryTimeoutSeconds);
+            }
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            if (onPrepared != null) {
+                onPrepared.accept(statement);
+            }
+            ResultSet resultSet = statement.executeQuery();
+            return new ResultCursor(query, connection, restoreAutoCommit, statement, resultSet);
+        } catch (SQLException e) {
+            ResultCursor.closeQuietly(statement, connection, restoreAutoCommit);
+            throw new QueryExecutionException("Failed to execute query '" + query.getName() + "': " + sql, e);
+        }
+    }
+}
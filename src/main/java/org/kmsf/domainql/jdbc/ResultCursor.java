@@ -0,0 +1,350 @@
+package org.kmsf.domainql.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.kmsf.domainql.expression.ContinuationToken;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.type.AggregateType;
+import org.kmsf.domainql.expression.type.ExpressionType;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+/**
+ * Forward-only cursor over the rows of an executed {@link Query}. Columns are
+ * addressed by projection alias or by 1-based position and read through typed
+ * accessors; {@link #getObject(String)} maps values according to the
+ * projection's {@link ScalarType}.
+ *
+ * The cursor owns its JDBC connection and must be closed, which happens
+ * automatically once the last row has been read.
+ */
+public class ResultCursor implements AutoCloseable {
+    private final Query query;
+    private final Connection connection;
+    private final boolean restoreAutoCommit;
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final Map<String, Integer> columns = new LinkedHashMap<>();
+    private final ScalarType[] types;
+    private boolean closed;
+
+    ResultCursor(Query query, Connection connection, boolean restoreAutoCommit, Statement statement, ResultSet resultSet) {
+        this.query = query;
+        this.connection = connection;
+        this.restoreAutoCommit = restoreAutoCommit;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.types = new ScalarType[query.getProjections().size()];
+        int column = 0;
+        for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+            columns.put(projection.getKey(), column + 1);
+            types[column++] = toScalarType(projection.getValue().getType());
+        }
+    }
+
+    /**
+     * A cursor without rows, for a query known to be empty without asking the database.
+     */
+    static ResultCursor empty(Query query) {
+        ResultCursor cursor = new ResultCursor(query, null, false, null, null);
+        cursor.closed = true;
+        return cursor;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public boolean next() {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (resultSet.next()) {
+                return true;
+            }
+        } catch (SQLException e) {
+            close();
+            throw new QueryExecutionException("Failed to fetch next row of query '" + query.getName() + "'", e);
+        }
+        close();
+        return false;
+    }
+
+    public int getColumn(String alias) {
+        Integer column = columns.get(alias);
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown column '" + alias + "' in query '" + query.getName() + "'");
+        }
+        return column;
+    }
+
+    public ScalarType getType(String alias) {
+        return types[getColumn(alias) - 1];
+    }
+
+    public int getInt(String alias) {
+        return getInt(getColumn(alias));
+    }
+
+    public int getInt(int column) {
+        try {
+            return resultSet.getInt(column);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public long getLong(String alias) {
+        return getLong(getColumn(alias));
+    }
+
+    public long getLong(int column) {
+        try {
+            return resultSet.getLong(column);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public double getDouble(String alias) {
+        return getDouble(getColumn(alias));
+    }
+
+    public double getDouble(int column) {
+        try {
+            return resultSet.getDouble(column);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public boolean getBoolean(String alias) {
+        return getBoolean(getColumn(alias));
+    }
+
+    public boolean getBoolean(int column) {
+        try {
+            return resultSet.getBoolean(column);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public String getString(String alias) {
+        return getString(getColumn(alias));
+    }
+
+    public String getString(int column) {
+        try {
+            return resultSet.getString(column);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public BigDecimal getDecimal(String alias) {
+        return getDecimal(getColumn(alias));
+    }
+
+    public BigDecimal getDecimal(int column) {
+        try {
+            return resultSet.getBigDecimal(column);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public LocalDate getDate(String alias) {
+        return getDate(getColumn(alias));
+    }
+
+    public LocalDate getDate(int column) {
+        try {
+            return resultSet.getObject(column, LocalDate.class);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    public LocalDateTime getTimestamp(String alias) {
+        return getTimestamp(getColumn(alias));
+    }
+
+    public LocalDateTime getTimestamp(int column) {
+        try {
+            return resultSet.getObject(column, LocalDateTime.class);
+        } catch (SQLException e) {
+            throw readError(column, e);
+        }
+    }
+
+    /**
+     * Whether the last primitive value read was SQL NULL.
+     */
+    public boolean wasNull() {
+        try {
+            return resultSet.wasNull();
+        } catch (SQLException e) {
+            throw new QueryExecutionException("Failed to read null indicator", e);
+        }
+    }
+
+    public Object getObject(String alias) {
+        return getObject(getColumn(alias));
+    }
+
+    /**
+     * The value of the column, as the Java class of its type: an INTEGER is
+     * an Integer, or a Long when it does not fit one.
+     */
+    public Object getObject(int column) {
+        ScalarType type = types[column - 1];
+        Object value;
+        if (ScalarType.INTEGER.equals(type)) {
+            // counts, sums and long literals may not fit an int
+            long number = getLong(column);
+            if (number == (int) number) {
+                value = (int) number;
+            } else {
+                value = number;
+            }
+        } else if (ScalarType.DECIMAL.equals(type)) {
+            value = getDecimal(column);
+        } else if (ScalarType.BOOLEAN.equals(type)) {
+            value = getBoolean(column);
+        } else if (ScalarType.STRING.equals(type)) {
+            value = getString(column);
+        } else if (ScalarType.DATE.equals(type)) {
+            value = getDate(column);
+        } else if (ScalarType.TIMESTAMP.equals(type)) {
+            value = getTimestamp(column);
+        } else {
+            try {
+                value = resultSet.getObject(column);
+            } catch (SQLException e) {
+                throw readError(column, e);
+            }
+        }
+        return wasNull() ? null : value;
+    }
+
+    /**
+     * The current row as projection alias to value, mapped as by {@link #getObject(int)}.
+     */
+    public Map<String, Object> getRow() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> column : columns.entrySet()) {
+            row.put(column.getKey(), getObject(column.getValue()));
+        }
+        return row;
+    }
+
+    /**
+     * Token resuming the query's keyset pagination after the current row. All
+     * order by keys must be projected, and not NULL on the row.
+     */
+    public ContinuationToken continuationToken() {
+        List<Object> values = new ArrayList<>();
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            String alias = query.findProjectionAlias(orderBy.getExpression());
+            if (alias == null) {
+                throw new IllegalStateException("Sort keys must be projected to build a continuation token");
+            }
+            Object value = getObject(alias);
+            if (value == null) {
+                throw new IllegalStateException("Sort key '" + alias + "' is NULL: keyset pagination requires non-null sort keys");
+            }
+            values.add(value);
+        }
+        return ContinuationToken.of(values);
+    }
+
+    /**
+     * Lazily maps the remaining rows; closing the stream closes the cursor.
+     */
+    public <T> Stream<T> stream(RowMapper<T> mapper) {
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!next()) {
+                    return false;
+                }
+                action.accept(mapper.map(ResultCursor.this));
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            // ignored, the statement and connection are closed below
+        }
+        closeQuietly(statement, connection, restoreAutoCommit);
+    }
+
+    static void closeQuietly(Statement statement, Connection connection, boolean restoreAutoCommit) {
+        try {
+            if (statement != null) statement.close();
+        } catch (SQLException e) {
+            // ignored
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (restoreAutoCommit) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            // ignored
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // ignored
+        }
+    }
+
+    private QueryExecutionException readError(int column, SQLException e) {
+        return new QueryExecutionException("Failed to read column " + column + " of query '" + query.getName() + "'", e);
+    }
+
+    private static ScalarType toScalarType(ExpressionType type) {
+        if (type instanceof ScalarType) {
+            return (ScalarType) type;
+        }
+        if (type instanceof AggregateType) {
+            return ((AggregateType) type).getResultType();
+        }
+        return null;
+    }
+}
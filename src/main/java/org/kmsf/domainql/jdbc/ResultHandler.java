@@ -0,0 +1,6 @@
+package org.kmsf.domainql.jdbc;
+
+@FunctionalInterface
+public interface ResultHandler<T> {
+    T handle(ResultCursor cursor);
+}
@@ -0,0 +1,6 @@
+package org.kmsf.domainql.jdbc;
+
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultCursor cursor);
+}
@@ -0,0 +1,202 @@
+package org.kmsf.domainql.optimizer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.kmsf.domainql.expression.AggregateExpression;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.GroupingExpression;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.ParameterExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryExpression;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+/**
+ * Writes equivalent expressions the same way, whatever the order they were
+ * built in: the operands of AND and OR are sorted, and so are the values of
+ * an IN list; the operands of a commutative operator, or of a comparison
+ * (whose operator is then mirrored), are put in order, a literal going last.
+ * Operands are ordered by their {@link #key(Expression) key}, a text
+ * depending only on what they compute.
+ *
+ * <p>Projections and sort keys keep their order, which is part of the result.
+ */
+public class CanonicalForm {
+
+    /**
+     * Join paths ordered by the names of their references, a path coming
+     * before the longer ones it starts.
+     */
+    public static final Comparator<List<ReferenceAttribute>> PATH_ORDER = (a, b) -> {
+        for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+            int compared = a.get(i).getName().compareTo(b.get(i).getName());
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(a.size(), b.size());
+    };
+
+    private CanonicalForm() {
+    }
+
+    public static Query rewrite(Query query) {
+        boolean[] changed = {false};
+        Query rewritten = Rewrites.copy(query, query.getSourceDomain(), e -> {
+            Expression canonical = canonical(e);
+            changed[0] |= canonical != e;
+            return canonical;
+        });
+        return changed[0] ? rewritten : query;
+    }
+
+    public static Expression rewrite(Expression expr) {
+        return Expressions.transform(expr, CanonicalForm::canonical);
+    }
+
+    /*
+     * The node in canonical form, its operands already being.
+     */
+    private static Expression canonical(Expression expr) {
+        Operator operator = expr instanceof LogicalExpression ? ((LogicalExpression) expr).getOperator()
+            : expr instanceof BinaryExpression ? ((BinaryExpression) expr).getOperator() : null;
+        if (operator == Operator.AND || operator == Operator.OR) {
+            List<Expression> operands = operator == Operator.AND
+                ? Expressions.conjuncts(expr) : Expressions.disjuncts(expr);
+            List<Expression> sorted = new ArrayList<>(operands);
+            sorted.sort(Comparator.comparing(CanonicalForm::key));
+            if (expr instanceof LogicalExpression && sorted.equals(((LogicalExpression) expr).getOperands())) {
+                return expr;
+            }
+            return new LogicalExpression(operator, sorted);
+        }
+        if (expr instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expr;
+            Operator mirrored = mirror(binary);
+            if (mirrored != null && comesAfter(binary.getLeft(), binary.getRight())) {
+                return new BinaryExpression(binary.getRight(), mirrored, binary.getLeft());
+            }
+        } else if (expr instanceof LiteralExpression && ((LiteralExpression) expr).getValue() instanceof List) {
+            List<?> values = (List<?>) ((LiteralExpression) expr).getValue();
+            List<Object> sorted = new ArrayList<>(values);
+            sorted.sort(Comparator.comparing(CanonicalForm::literalKey));
+            if (!sorted.equals(values)) {
+                return new LiteralExpression(sorted);
+            }
+        }
+        return expr;
+    }
+
+    /*
+     * The operator once the operands are swapped, or null if they cannot be.
+     */
+    private static Operator mirror(BinaryExpression binary) {
+        switch (binary.getOperator()) {
+            case EQUALS:
+            case NOT_EQUALS:
+                return binary.getOperator();
+            case PLUS:
+            case MULTIPLY:
+                // + concatenates strings
+                return ScalarType.STRING.equals(binary.getType()) ? null : binary.getOperator();
+            case GREATER_THAN: return Operator.LESS_THAN;
+            case GREATER_THAN_OR_EQUALS: return Operator.LESS_THAN_OR_EQUALS;
+            case LESS_THAN: return Operator.GREATER_THAN;
+            case LESS_THAN_OR_EQUALS: return Operator.GREATER_THAN_OR_EQUALS;
+            default: return null;
+        }
+    }
+
+    private static boolean comesAfter(Expression left, Expression right) {
+        boolean leftLiteral = left instanceof LiteralExpression || left instanceof ParameterExpression;
+        boolean rightLiteral = right instanceof LiteralExpression || right instanceof ParameterExpression;
+        if (leftLiteral != rightLiteral) {
+            return leftLiteral;
+        }
+        return key(left).compareTo(key(right)) > 0;
+    }
+
+    /**
+     * A text identifying what the expression computes, used to order
+     * expressions.
+     */
+    public static String key(Expression expr) {
+        StringBuilder key = new StringBuilder();
+        appendKey(expr, key);
+        return key.toString();
+    }
+
+    private static void appendKey(Expression expr, StringBuilder key) {
+        if (expr instanceof AttributeExpression) {
+            AttributeExpression attrExpr = (AttributeExpression) expr;
+            key.append(attrExpr.getAttribute().getDomain().getName()).append('.')
+               .append(attrExpr.getAttribute().getName());
+            if (attrExpr.getContextResolution() != AttributeExpression.ContextResolution.DEFAULT) {
+                key.append('@').append(attrExpr.getContextResolution());
+            }
+        } else if (expr instanceof ComposeExpression) {
+            appendKey(((ComposeExpression) expr).getReference(), key);
+            key.append('/');
+            appendKey(((ComposeExpression) expr).getComposition(), key);
+        } else if (expr instanceof LiteralExpression) {
+            key.append(literalKey(((LiteralExpression) expr).getValue()));
+        } else if (expr instanceof ParameterExpression) {
+            key.append("param:").append(((ParameterExpression) expr).getName());
+        } else if (expr instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expr;
+            key.append('(');
+            appendKey(binary.getLeft(), key);
+            key.append(' ').append(binary.getOperator()).append(' ');
+            appendKey(binary.getRight(), key);
+            key.append(')');
+        } else if (expr instanceof LogicalExpression) {
+            LogicalExpression logical = (LogicalExpression) expr;
+            key.append('(');
+            for (int i = 0; i < logical.getOperands().size(); i++) {
+                if (i > 0) key.append(' ').append(logical.getOperator()).append(' ');
+                appendKey(logical.getOperands().get(i), key);
+            }
+            key.append(')');
+        } else if (expr instanceof AggregateExpression) {
+            AggregateExpression aggregate = (AggregateExpression) expr;
+            key.append(aggregate.getFunction()).append('(');
+            if (aggregate.getOperand() == null) {
+                key.append('*');
+            } else {
+                appendKey(aggregate.getOperand(), key);
+            }
+            key.append(')');
+        } else if (expr instanceof GroupingExpression) {
+            key.append("GROUPING(");
+            for (Expression groupKey : ((GroupingExpression) expr).getKeys()) {
+                appendKey(groupKey, key);
+                key.append(',');
+            }
+            key.append(')');
+        } else if (expr instanceof QueryExpression) {
+            key.append("query:").append(((QueryExpression) expr).getQuery().getName());
+        } else {
+            key.append(expr);
+        }
+    }
+
+    private static String literalKey(Object value) {
+        if (value instanceof List) {
+            List<String> keys = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                keys.add(literalKey(element));
+            }
+            return keys.toString();
+        }
+        return value.getClass().getSimpleName() + ":" + value;
+    }
+}
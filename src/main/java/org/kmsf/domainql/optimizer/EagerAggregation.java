@@ -0,0 +1,301 @@
+package org.kmsf.domainql.optimizer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.AggregateExpression;
+import org.kmsf.domainql.expression.AggregateExpression.AggregateFunction;
+import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+/**
+ * Aggregates the rows of the source (fact) domain before joining the domains
+ * its group keys are read from. The query
+ * <pre>
+ * SELECT company.name, SUM(person.salary) FROM person
+ *   JOIN department ... JOIN company ... GROUP BY company.name
+ * </pre>
+ * becomes a pre-aggregation of {@code person} by its foreign key columns,
+ * used as the source of the same query where each aggregate combines the
+ * partial results: SUM and COUNT are summed (a COUNT without group keys being
+ * 0 rather than NULL when there is no row), MIN and MAX are taken again, and
+ * AVG is the sum of the partial sums divided by the sum of the partial counts.
+ *
+ * <p>The rewrite applies when every aggregate only reads columns of the fact
+ * domain, and every reference leaving the fact domain is to-one (see
+ * {@link ReferenceAttribute#isToOne()}): a group of the pre-aggregation then
+ * joins a single row of each referenced domain, whose attributes are
+ * determined by the grouped foreign key. Queries using grouping sets are left
+ * alone.
+ */
+public class EagerAggregation {
+
+    private EagerAggregation() {
+    }
+
+    public static Query rewrite(Query query) {
+        Domain fact = query.getSourceDomain();
+        if (!Expressions.hasAggregate(query) || query.getGroupingSets() != null) {
+            return query;
+        }
+        Set<ReferenceAttribute> references = new LinkedHashSet<>();
+        for (List<ReferenceAttribute> path : Expressions.referencePaths(query)) {
+            references.add(path.get(0));
+        }
+        if (references.isEmpty()) {
+            return query;
+        }
+        for (ReferenceAttribute reference : references) {
+            if (!reference.isToOne()) {
+                return query;
+            }
+        }
+
+        List<Expression> innerFilter = new ArrayList<>();
+        List<Expression> outerFilter = new ArrayList<>();
+        for (Expression conjunct : Expressions.conjuncts(query.getFilter())) {
+            (readsFactColumnsOnly(conjunct, fact) && !Expressions.containsAggregate(conjunct)
+                ? innerFilter : outerFilter).add(conjunct);
+        }
+
+        // the columns of the fact domain read after the pre-aggregation, and the aggregates it computes
+        Set<Attribute> groupColumns = new LinkedHashSet<>();
+        Map<AggregateExpression, String> partials = new LinkedHashMap<>();
+        List<Expression> outerExpressions = new ArrayList<>(query.getProjections().values());
+        outerExpressions.addAll(outerFilter);
+        if (query.getHaving() != null) {
+            outerExpressions.add(query.getHaving());
+        }
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            outerExpressions.add(orderBy.getExpression());
+        }
+        for (Expression expr : outerExpressions) {
+            if (!collect(expr, fact, groupColumns, partials)) {
+                return query;
+            }
+        }
+
+        Query inner = new Query(query.getName() + "_pre", fact);
+        for (Attribute column : groupColumns) {
+            inner.addProjection(column.getName(), new AttributeExpression(column));
+        }
+        for (Map.Entry<AggregateExpression, String> partial : partials.entrySet()) {
+            // a fact column read after the pre-aggregation may already have the name
+            partial.setValue(uniqueAlias(partial.getValue(), inner));
+            inner.addProjection(partial.getValue(), partial.getKey());
+        }
+        inner.setFilter(Expressions.and(innerFilter));
+        Map<ReferenceAttribute, ReferenceAttribute> innerReferences = new LinkedHashMap<>();
+        for (ReferenceAttribute reference : references) {
+            innerReferences.put(reference, mirror(reference, fact, inner));
+        }
+
+        boolean global = query.getProjections().values().stream().allMatch(Expressions::isAggregate);
+        Mapping mapping = new Mapping(inner, innerReferences, partials, global);
+        Query outer = new Query(query.getName(), inner);
+        for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+            outer.addProjection(projection.getKey(), mapping.map(projection.getValue()));
+        }
+        List<Expression> mappedFilter = new ArrayList<>();
+        for (Expression conjunct : outerFilter) {
+            mappedFilter.add(mapping.map(conjunct));
+        }
+        outer.setFilter(Expressions.and(mappedFilter));
+        outer.setHaving(query.getHaving() == null ? null : mapping.map(query.getHaving()));
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            outer.addOrderBy(mapping.map(orderBy.getExpression()), orderBy.isAscending());
+        }
+        if (query.getContinuationToken() != null) {
+            outer.setPage(query.getLimit(), query.getContinuationToken());
+        } else {
+            outer.setLimit(query.getLimit());
+        }
+        return outer;
+    }
+
+    /*
+     * Records the fact columns read outside aggregates and the partial
+     * aggregates needed by the expression, or returns false if an aggregate
+     * cannot be split.
+     */
+    private static boolean collect(Expression expr, Domain fact, Set<Attribute> groupColumns,
+                                   Map<AggregateExpression, String> partials) {
+        if (expr instanceof AggregateExpression) {
+            AggregateExpression aggregate = (AggregateExpression) expr;
+            if (aggregate.getOperand() == null || !readsFactColumnsOnly(aggregate.getOperand(), fact)) {
+                return false;
+            }
+            if (aggregate.getFunction() == AggregateFunction.AVG) {
+                addPartial(new AggregateExpression(aggregate.getOperand(), AggregateFunction.SUM), partials);
+                addPartial(new AggregateExpression(aggregate.getOperand(), AggregateFunction.COUNT), partials);
+            } else {
+                addPartial(aggregate, partials);
+            }
+            return true;
+        } else if (expr instanceof AttributeExpression) {
+            Attribute attribute = ((AttributeExpression) expr).getAttribute();
+            if (attribute.getDomain() != fact || attribute instanceof ReferenceAttribute) {
+                return false;
+            }
+            groupColumns.add(attribute);
+            return true;
+        } else if (expr instanceof ComposeExpression) {
+            ReferenceAttribute reference =
+                (ReferenceAttribute) ((AttributeExpression) ((ComposeExpression) expr).getReference()).getAttribute();
+            for (Expression condition : Expressions.conjuncts(reference.getJoinCondition())) {
+                Expressions.forEach(condition, e -> {
+                    if (e instanceof AttributeExpression && isFactSide((AttributeExpression) e, fact, reference)) {
+                        groupColumns.add(((AttributeExpression) e).getAttribute());
+                    }
+                });
+            }
+            return true;
+        } else if (expr instanceof BinaryExpression) {
+            return collect(((BinaryExpression) expr).getLeft(), fact, groupColumns, partials)
+                && collect(((BinaryExpression) expr).getRight(), fact, groupColumns, partials);
+        } else if (expr instanceof LogicalExpression) {
+            for (Expression operand : ((LogicalExpression) expr).getOperands()) {
+                if (!collect(operand, fact, groupColumns, partials)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return expr instanceof LiteralExpression;
+    }
+
+    private static void addPartial(AggregateExpression aggregate, Map<AggregateExpression, String> partials) {
+        partials.computeIfAbsent(aggregate,
+            a -> a.getFunction().name().toLowerCase() + "_" + (partials.size() + 1));
+    }
+
+    private static String uniqueAlias(String alias, Query inner) {
+        String candidate = alias;
+        int counter = 1;
+        while (inner.getProjections().containsKey(candidate)) {
+            candidate = alias + "_" + (++counter);
+        }
+        return candidate;
+    }
+
+    private static boolean readsFactColumnsOnly(Expression expr, Domain fact) {
+        boolean[] factOnly = {true};
+        Expressions.forEach(expr, e -> {
+            if (e instanceof AttributeExpression) {
+                Attribute attribute = ((AttributeExpression) e).getAttribute();
+                factOnly[0] &= attribute.getDomain() == fact && !(attribute instanceof ReferenceAttribute);
+            } else if (!(e instanceof BinaryExpression || e instanceof LogicalExpression
+                || e instanceof LiteralExpression)) {
+                factOnly[0] = false;
+            }
+        });
+        return factOnly[0];
+    }
+
+    private static boolean isFactSide(AttributeExpression side, Domain fact, ReferenceAttribute reference) {
+        switch (side.getContextResolution()) {
+            case LEFT: return true;
+            case RIGHT: return false;
+            default: return side.getAttribute().getDomain() == fact && reference.getReferenceDomain() != fact;
+        }
+    }
+
+    /*
+     * The reference, declared on the pre-aggregation: its join condition reads
+     * the grouped columns instead of the fact domain's.
+     */
+    private static ReferenceAttribute mirror(ReferenceAttribute reference, Domain fact, Query inner) {
+        Expression condition = Expressions.transform(reference.getJoinCondition(), e -> {
+            if (e instanceof AttributeExpression && isFactSide((AttributeExpression) e, fact, reference)) {
+                AttributeExpression attrExpr = (AttributeExpression) e;
+                return new AttributeExpression(inner.getAttribute(attrExpr.getAttribute().getName()),
+                    attrExpr.getContextResolution());
+            }
+            return e;
+        });
+        ReferenceAttribute mirrored =
+            new ReferenceAttribute(reference.getName(), inner, reference.getReferenceDomain(), condition);
+        inner.addAttribute(mirrored);
+        return mirrored;
+    }
+
+    /**
+     * Rewrites an expression of the original query against the pre-aggregation.
+     */
+    private static class Mapping {
+        private final Query inner;
+        private final Map<ReferenceAttribute, ReferenceAttribute> references;
+        private final Map<AggregateExpression, String> partials;
+        private final boolean global;
+
+        Mapping(Query inner, Map<ReferenceAttribute, ReferenceAttribute> references,
+                Map<AggregateExpression, String> partials, boolean global) {
+            this.inner = inner;
+            this.references = references;
+            this.partials = partials;
+            this.global = global;
+        }
+
+        Expression map(Expression expr) {
+            if (expr instanceof AggregateExpression) {
+                return combine((AggregateExpression) expr);
+            } else if (expr instanceof AttributeExpression) {
+                return new AttributeExpression(inner.getAttribute(((AttributeExpression) expr).getAttribute().getName()));
+            } else if (expr instanceof ComposeExpression) {
+                ComposeExpression compose = (ComposeExpression) expr;
+                Attribute reference = ((AttributeExpression) compose.getReference()).getAttribute();
+                return new ComposeExpression(new AttributeExpression(references.get(reference)), compose.getComposition());
+            } else if (expr instanceof BinaryExpression) {
+                BinaryExpression binary = (BinaryExpression) expr;
+                return new BinaryExpression(map(binary.getLeft()), binary.getOperator(), map(binary.getRight()));
+            } else if (expr instanceof LogicalExpression) {
+                List<Expression> operands = new ArrayList<>();
+                for (Expression operand : ((LogicalExpression) expr).getOperands()) {
+                    operands.add(map(operand));
+                }
+                return new LogicalExpression(((LogicalExpression) expr).getOperator(), operands);
+            }
+            return expr;
+        }
+
+        private Expression combine(AggregateExpression aggregate) {
+            switch (aggregate.getFunction()) {
+                case AVG:
+                    Expression sum = partial(aggregate.getOperand(), AggregateFunction.SUM, AggregateFunction.SUM);
+                    Expression count = partial(aggregate.getOperand(), AggregateFunction.COUNT, AggregateFunction.SUM);
+                    if (!ScalarType.DECIMAL.equals(aggregate.getOperand().getType())) {
+                        // keep the division exact, as AVG of integers is
+                        sum = new BinaryExpression(new LiteralExpression(new BigDecimal("1.0")), Operator.MULTIPLY, sum);
+                    }
+                    return new BinaryExpression(sum, Operator.DIVIDE, count);
+                case COUNT:
+                    Expression total = partial(aggregate.getOperand(), AggregateFunction.COUNT, AggregateFunction.SUM);
+                    // without group keys the query returns a row even for no input: its count is 0, not NULL
+                    return global ? new BinaryExpression(total, Operator.COALESCE, new LiteralExpression(0)) : total;
+                default:
+                    return partial(aggregate.getOperand(), aggregate.getFunction(), aggregate.getFunction());
+            }
+        }
+
+        private Expression partial(Expression operand, AggregateFunction function, AggregateFunction combination) {
+            String alias = partials.get(new AggregateExpression(operand, function));
+            return new AggregateExpression(new AttributeExpression(inner.getAttribute(alias)), combination);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package org.kmsf.domainql.optimizer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.type.Operator;
+
+/**
+ * Rewrites predicates into a simpler equivalent form:
+ * <ul>
+ * <li>operations on literals are evaluated, e.g. {@code 2 * 3} becomes {@code 6};</li>
+ * <li>literal {@code true} conjuncts and {@code false} disjuncts are dropped, as are duplicates;</li>
+ * <li>{@code x = 1 OR x = 2 OR x = 3} becomes {@code x IN (1, 2, 3)};</li>
+ * <li>a conjunction no value can satisfy, such as {@code x = 1 AND x > 2},
+ * becomes literal {@code false}.</li>
+ * </ul>
+ * Only numbers, dates, timestamps and booleans are compared: comparisons of
+ * strings depend on the collation of the database, and are left to it.
+ * A query whose filter simplifies to {@code false} is known to be empty, see
+ * {@link #isEmpty(Query)}, and need not be sent to the database.
+ */
+public class ExpressionSimplifier {
+
+    private ExpressionSimplifier() {
+    }
+
+    public static Expression simplify(Expression expr) {
+        return Expressions.transform(expr, ExpressionSimplifier::simplifyNode);
+    }
+
+    /**
+     * Copy of the query with simplified filter and having clauses, or the query
+     * itself if there is nothing to simplify.
+     */
+    public static Query simplify(Query query) {
+        Expression filter = simplify(query.getFilter());
+        Expression having = simplify(query.getHaving());
+        if (isTrue(filter)) filter = null;
+        if (isTrue(having)) having = null;
+        if (Objects.equals(filter, query.getFilter()) && Objects.equals(having, query.getHaving())) {
+            return query;
+        }
+        Query simplified = Rewrites.copy(query, query.getSourceDomain(), UnaryOperator.identity());
+        simplified.setFilter(filter);
+        simplified.setHaving(having);
+        return simplified;
+    }
+
+    /**
+     * Whether the query is known to return no row: its filter or having clause
+     * is literal false. An aggregate without group by keys still returns one
+     * row when no input row matches, so it is never considered empty because
+     * of its filter.
+     */
+    public static boolean isEmpty(Query query) {
+        if (isFalse(query.getHaving())) {
+            return true;
+        }
+        if (!isFalse(query.getFilter())) {
+            return false;
+        }
+        if (query.getGroupingSets() != null) {
+            return query.getGroupingSets().stream().noneMatch(List::isEmpty);
+        }
+        return query.getProjections().values().stream().anyMatch(e -> !Expressions.isAggregate(e));
+    }
+
+    public static boolean isTrue(Expression expr) {
+        return expr instanceof LiteralExpression && Boolean.TRUE.equals(((LiteralExpression) expr).getValue());
+    }
+
+    public static boolean isFalse(Expression expr) {
+        return expr instanceof LiteralExpression && Boolean.FALSE.equals(((LiteralExpression) expr).getValue());
+    }
+
+    private static Expression simplifyNode(Expression expr) {
+        if (expr instanceof LogicalExpression) {
+            return ((LogicalExpression) expr).getOperator() == Operator.AND ? simplifyAnd(expr) : simplifyOr(expr);
+        }
+        if (!(expr instanceof BinaryExpression)) {
+            return expr;
+        }
+        BinaryExpression binary = (BinaryExpression) expr;
+        switch (binary.getOperator()) {
+            case AND: return simplifyAnd(binary);
+            case OR: return simplifyOr(binary);
+            default: return fold(binary);
+        }
+    }
+
+    private static Expression simplifyAnd(Expression and) {
+        List<Expression> conjuncts = new ArrayList<>(new LinkedHashSet<>(Expressions.conjuncts(and)));
+        conjuncts.removeIf(ExpressionSimplifier::isTrue);
+        if (conjuncts.stream().anyMatch(ExpressionSimplifier::isFalse) || isContradiction(conjuncts)) {
+            return new LiteralExpression(false);
+        }
+        if (conjuncts.isEmpty()) {
+            return new LiteralExpression(true);
+        }
+        Expression simplified = Expressions.and(conjuncts);
+        return simplified.equals(and) ? and : simplified;
+    }
+
+    private static Expression simplifyOr(Expression or) {
+        List<Expression> disjuncts = new ArrayList<>(new LinkedHashSet<>(Expressions.disjuncts(or)));
+        disjuncts.removeIf(ExpressionSimplifier::isFalse);
+        if (disjuncts.stream().anyMatch(ExpressionSimplifier::isTrue)) {
+            return new LiteralExpression(true);
+        }
+        if (disjuncts.isEmpty()) {
+            return new LiteralExpression(false);
+        }
+
+        // values each expression is compared with, through = or IN
+        Map<Expression, LinkedHashSet<Object>> values = new LinkedHashMap<>();
+        for (Expression disjunct : disjuncts) {
+            Comparison comparison = Comparison.of(disjunct);
+            if (comparison != null && comparison.operator == Operator.EQUALS) {
+                values.computeIfAbsent(comparison.term, t -> new LinkedHashSet<>()).add(comparison.value);
+            } else if (isInList(disjunct)) {
+                BinaryExpression in = (BinaryExpression) disjunct;
+                values.computeIfAbsent(in.getLeft(), t -> new LinkedHashSet<>())
+                    .addAll((List<?>) ((LiteralExpression) in.getRight()).getValue());
+            }
+        }
+        List<Expression> collapsed = new ArrayList<>();
+        for (Expression disjunct : disjuncts) {
+            Comparison comparison = Comparison.of(disjunct);
+            Expression term = comparison != null && comparison.operator == Operator.EQUALS ? comparison.term
+                : isInList(disjunct) ? ((BinaryExpression) disjunct).getLeft() : null;
+            if (term == null || values.containsKey(term) && values.get(term).size() < 2) {
+                collapsed.add(disjunct);
+            } else if (values.containsKey(term)) {
+                // the first comparison of the term stands for all the others
+                collapsed.add(new BinaryExpression(term, Operator.IN,
+                    new LiteralExpression(new ArrayList<>(values.remove(term)))));
+            }
+        }
+        Expression simplified = Expressions.or(collapsed);
+        return simplified.equals(or) ? or : simplified;
+    }
+
+    private static boolean isInList(Expression expr) {
+        return expr instanceof BinaryExpression
+            && ((BinaryExpression) expr).getOperator() == Operator.IN
+            && ((BinaryExpression) expr).getRight() instanceof LiteralExpression
+            && ((LiteralExpression) ((BinaryExpression) expr).getRight()).getValue() instanceof List;
+    }
+
+    /*
+     * Per compared expression, the tightest lower and upper bounds set by the
+     * comparisons with literals: the conjunction is unsatisfiable when they
+     * cross, or when they meet on a value the expression must differ from.
+     */
+    private static boolean isContradiction(List<Expression> conjuncts) {
+        Map<Expression, List<Comparison>> comparisons = new LinkedHashMap<>();
+        for (Expression conjunct : conjuncts) {
+            Comparison comparison = Comparison.of(conjunct);
+            if (comparison != null) {
+                comparisons.computeIfAbsent(comparison.term, t -> new ArrayList<>()).add(comparison);
+            }
+        }
+        for (List<Comparison> constraints : comparisons.values()) {
+            Bound lower = null;
+            Bound upper = null;
+            try {
+                for (Comparison c : constraints) {
+                    switch (c.operator) {
+                        case EQUALS:
+                            lower = Bound.tighterLower(lower, new Bound(c.value, false));
+                            upper = Bound.tighterUpper(upper, new Bound(c.value, false));
+                            break;
+                        case GREATER_THAN:
+                            lower = Bound.tighterLower(lower, new Bound(c.value, true));
+                            break;
+                        case GREATER_THAN_OR_EQUALS:
+                            lower = Bound.tighterLower(lower, new Bound(c.value, false));
+                            break;
+                        case LESS_THAN:
+                            upper = Bound.tighterUpper(upper, new Bound(c.value, true));
+                            break;
+                        case LESS_THAN_OR_EQUALS:
+                            upper = Bound.tighterUpper(upper, new Bound(c.value, false));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                if (lower == null || upper == null) {
+                    continue;
+                }
+                int order = compare(lower.value, upper.value);
+                if (order > 0 || order == 0 && (lower.strict || upper.strict)) {
+                    return true;
+                }
+                if (order == 0) {
+                    for (Comparison c : constraints) {
+                        if (c.operator == Operator.NOT_EQUALS && compare(c.value, lower.value) == 0) {
+                            return true;
+                        }
+                    }
+                }
+            } catch (IncomparableValuesException e) {
+                // values of different types, nothing can be concluded
+            }
+        }
+        return false;
+    }
+
+    private static Expression fold(BinaryExpression binary) {
+        if (!(binary.getLeft() instanceof LiteralExpression) || !(binary.getRight() instanceof LiteralExpression)) {
+            return binary;
+        }
+        Object left = ((LiteralExpression) binary.getLeft()).getValue();
+        Object right = ((LiteralExpression) binary.getRight()).getValue();
+        if (left == null || right == null || left instanceof List || right instanceof List) {
+            return binary;
+        }
+        Object folded;
+        try {
+            folded = evaluate(binary.getOperator(), left, right);
+        } catch (IncomparableValuesException | ArithmeticException e) {
+            folded = null;
+        }
+        return folded == null ? binary : new LiteralExpression(folded);
+    }
+
+    private static Object evaluate(Operator operator, Object left, Object right) {
+        switch (operator) {
+            case EQUALS: return compare(left, right) == 0;
+            case NOT_EQUALS: return compare(left, right) != 0;
+            case GREATER_THAN: return compare(left, right) > 0;
+            case GREATER_THAN_OR_EQUALS: return compare(left, right) >= 0;
+            case LESS_THAN: return compare(left, right) < 0;
+            case LESS_THAN_OR_EQUALS: return compare(left, right) <= 0;
+            case PLUS:
+            case MINUS:
+            case MULTIPLY:
+            case DIVIDE:
+                return arithmetic(operator, left, right);
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * Integer operations stay integers (and division truncates, as in SQL),
+     * unless they overflow. Decimal division is left to the database, whose
+     * rounding rules vary.
+     */
+    private static Object arithmetic(Operator operator, Object left, Object right) {
+        if (!(left instanceof Number) || !(right instanceof Number)) {
+            return null;
+        }
+        if (left instanceof Integer && right instanceof Integer) {
+            int l = (Integer) left;
+            int r = (Integer) right;
+            switch (operator) {
+                case PLUS: return Math.addExact(l, r);
+                case MINUS: return Math.subtractExact(l, r);
+                case MULTIPLY: return Math.multiplyExact(l, r);
+                default: return r == 0 ? null : l / r;
+            }
+        }
+        BigDecimal l = toDecimal((Number) left);
+        BigDecimal r = toDecimal((Number) right);
+        switch (operator) {
+            case PLUS: return l.add(r);
+            case MINUS: return l.subtract(r);
+            case MULTIPLY: return l.multiply(r);
+            default: return null;
+        }
+    }
+
+    /*
+     * Strings are never compared here: the database compares them by its
+     * collation, which may ignore case or trailing spaces, or order them by
+     * locale.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return toDecimal((Number) left).compareTo(toDecimal((Number) right));
+        }
+        if (left.getClass() != right.getClass() || !isOrdered(left)) {
+            throw new IncomparableValuesException();
+        }
+        return ((Comparable) left).compareTo(right);
+    }
+
+    private static boolean isOrdered(Object value) {
+        return value instanceof Boolean || value instanceof LocalDate || value instanceof LocalDateTime;
+    }
+
+    private static BigDecimal toDecimal(Number number) {
+        if (number instanceof BigDecimal) {
+            return (BigDecimal) number;
+        }
+        if (number instanceof Integer || number instanceof Long) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        return BigDecimal.valueOf(number.doubleValue());
+    }
+
+    /**
+     * A comparison between an expression and a literal, the literal on the right.
+     */
+    private static class Comparison {
+        final Expression term;
+        final Operator operator;
+        final Object value;
+
+        Comparison(Expression term, Operator operator, Object value) {
+            this.term = term;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        static Comparison of(Expression expr) {
+            if (!(expr instanceof BinaryExpression)) {
+                return null;
+            }
+            BinaryExpression binary = (BinaryExpression) expr;
+            Operator operator = binary.getOperator();
+            if (operator != Operator.EQUALS && operator != Operator.NOT_EQUALS
+                && operator != Operator.GREATER_THAN && operator != Operator.GREATER_THAN_OR_EQUALS
+                && operator != Operator.LESS_THAN && operator != Operator.LESS_THAN_OR_EQUALS) {
+                return null;
+            }
+            if (isValue(binary.getRight()) && !(binary.getLeft() instanceof LiteralExpression)) {
+                return new Comparison(binary.getLeft(), operator, ((LiteralExpression) binary.getRight()).getValue());
+            }
+            if (isValue(binary.getLeft()) && !(binary.getRight() instanceof LiteralExpression)) {
+                return new Comparison(binary.getRight(), mirror(operator), ((LiteralExpression) binary.getLeft()).getValue());
+            }
+            return null;
+        }
+
+        private static boolean isValue(Expression expr) {
+            return expr instanceof LiteralExpression
+                && ((LiteralExpression) expr).getValue() != null
+                && !(((LiteralExpression) expr).getValue() instanceof List);
+        }
+
+        private static Operator mirror(Operator operator) {
+            switch (operator) {
+                case GREATER_THAN: return Operator.LESS_THAN;
+                case GREATER_THAN_OR_EQUALS: return Operator.LESS_THAN_OR_EQUALS;
+                case LESS_THAN: return Operator.GREATER_THAN;
+                case LESS_THAN_OR_EQUALS: return Operator.GREATER_THAN_OR_EQUALS;
+                default: return operator;
+            }
+        }
+    }
+
+    private static class Bound {
+        final Object value;
+        final boolean strict;
+
+        Bound(Object value, boolean strict) {
+            this.value = value;
+            this.strict = strict;
+        }
+
+        static Bound tighterLower(Bound current, Bound candidate) {
+            if (current == null) return candidate;
+            int order = compare(candidate.value, current.value);
+            return order > 0 || order == 0 && candidate.strict ? candidate : current;
+        }
+
+        static Bound tighterUpper(Bound current, Bound candidate) {
+            if (current == null) return candidate;
+            int order = compare(candidate.value, current.value);
+            return order < 0 || order == 0 && candidate.strict ? candidate : current;
+        }
+    }
+
+    private static class IncomparableValuesException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,189 @@
+package org.kmsf.domainql.optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.Operator;
+
+/**
+ * Derives new filter conditions from the equalities of join conditions: with
+ * {@code person.company_id = 42} and the join {@code person.company_id =
+ * works_for.id}, the query also gets {@code works_for.id = 42}, letting the
+ * database restrict the referenced table before joining.
+ *
+ * <p>Only joins the query already makes are considered, so that no join is
+ * added. Since they are inner joins, both sides of their equalities are equal
+ * on every row of the result, and any comparison of one side with a literal
+ * holds for the other as well. Equalities between two paths found in the
+ * filter itself are used the same way.
+ */
+public class PredicateInference {
+
+    private PredicateInference() {
+    }
+
+    public static Query rewrite(Query query) {
+        if (query.getFilter() == null) {
+            return query;
+        }
+        List<Expression> conjuncts = Expressions.conjuncts(query.getFilter());
+        Map<Expression, Set<Expression>> equivalences = equivalences(query, conjuncts);
+
+        Set<Expression> inferred = new LinkedHashSet<>(conjuncts);
+        for (Expression conjunct : conjuncts) {
+            if (!isRestriction(conjunct)) {
+                continue;
+            }
+            BinaryExpression restriction = (BinaryExpression) conjunct;
+            boolean termOnLeft = !(restriction.getLeft() instanceof LiteralExpression);
+            Expression term = termOnLeft ? restriction.getLeft() : restriction.getRight();
+            for (Expression equivalent : equivalences.getOrDefault(term, Set.of())) {
+                if (!equivalent.equals(term)) {
+                    inferred.add(termOnLeft
+                        ? new BinaryExpression(equivalent, restriction.getOperator(), restriction.getRight())
+                        : new BinaryExpression(restriction.getLeft(), restriction.getOperator(), equivalent));
+                }
+            }
+        }
+        if (inferred.size() == conjuncts.size()) {
+            return query;
+        }
+        Query rewritten = Rewrites.copy(query, query.getSourceDomain(), UnaryOperator.identity());
+        rewritten.setFilter(Expressions.and(new ArrayList<>(inferred)));
+        return rewritten;
+    }
+
+    /*
+     * Classes of expressions known to be equal on every result row, each
+     * member mapped to its (shared) class.
+     */
+    private static Map<Expression, Set<Expression>> equivalences(Query query, List<Expression> conjuncts) {
+        Map<Expression, Set<Expression>> classes = new HashMap<>();
+        for (List<ReferenceAttribute> path : Expressions.referencePaths(query)) {
+            List<ReferenceAttribute> parentPath = path.subList(0, path.size() - 1);
+            ReferenceAttribute reference = path.get(path.size() - 1);
+            Domain parent = parentPath.isEmpty()
+                ? query.getSourceDomain()
+                : parentPath.get(parentPath.size() - 1).getReferenceDomain();
+            for (Expression condition : Expressions.conjuncts(reference.getJoinCondition())) {
+                if (!isColumnEquality(condition)) {
+                    continue;
+                }
+                BinaryExpression equality = (BinaryExpression) condition;
+                Expression left = resolve((AttributeExpression) equality.getLeft(), parent, reference, parentPath, path);
+                Expression right = resolve((AttributeExpression) equality.getRight(), parent, reference, parentPath, path);
+                if (left != null && right != null) {
+                    merge(classes, left, right);
+                }
+            }
+        }
+        for (Expression conjunct : conjuncts) {
+            if (conjunct instanceof BinaryExpression
+                && ((BinaryExpression) conjunct).getOperator() == Operator.EQUALS
+                && isPath(((BinaryExpression) conjunct).getLeft())
+                && isPath(((BinaryExpression) conjunct).getRight())) {
+                merge(classes, ((BinaryExpression) conjunct).getLeft(), ((BinaryExpression) conjunct).getRight());
+            }
+        }
+        return classes;
+    }
+
+    private static void merge(Map<Expression, Set<Expression>> classes, Expression a, Expression b) {
+        Set<Expression> classA = classes.computeIfAbsent(a, e -> new LinkedHashSet<>(List.of(e)));
+        Set<Expression> classB = classes.computeIfAbsent(b, e -> new LinkedHashSet<>(List.of(e)));
+        if (classA == classB) {
+            return;
+        }
+        classA.addAll(classB);
+        for (Expression member : classB) {
+            classes.put(member, classA);
+        }
+    }
+
+    private static boolean isColumnEquality(Expression condition) {
+        return condition instanceof BinaryExpression
+            && ((BinaryExpression) condition).getOperator() == Operator.EQUALS
+            && ((BinaryExpression) condition).getLeft() instanceof AttributeExpression
+            && ((BinaryExpression) condition).getRight() instanceof AttributeExpression;
+    }
+
+    /*
+     * The side of a join condition as the query would write it: a path from
+     * the query source through the joins leading to the side's domain.
+     */
+    private static Expression resolve(AttributeExpression side, Domain parent, ReferenceAttribute reference,
+                                      List<ReferenceAttribute> parentPath, List<ReferenceAttribute> path) {
+        Attribute attribute = side.getAttribute();
+        switch (side.getContextResolution()) {
+            case LEFT: return pathExpression(parentPath, attribute);
+            case RIGHT: return pathExpression(path, attribute);
+            default:
+                boolean inParent = attribute.getDomain() == parent;
+                boolean inTarget = attribute.getDomain() == reference.getReferenceDomain();
+                if (inParent == inTarget) {
+                    return null;
+                }
+                return pathExpression(inParent ? parentPath : path, attribute);
+        }
+    }
+
+    private static Expression pathExpression(List<ReferenceAttribute> references, Attribute attribute) {
+        Expression expr = new AttributeExpression(attribute);
+        for (int i = references.size() - 1; i >= 0; i--) {
+            expr = new ComposeExpression(new AttributeExpression(references.get(i)), expr);
+        }
+        return expr;
+    }
+
+    private static boolean isPath(Expression expr) {
+        while (expr instanceof ComposeExpression) {
+            expr = ((ComposeExpression) expr).getComposition();
+        }
+        return expr instanceof AttributeExpression
+            && !(((AttributeExpression) expr).getAttribute() instanceof ReferenceAttribute);
+    }
+
+    /*
+     * A comparison between a path and a literal, which holds for any
+     * expression equal to the path.
+     */
+    private static boolean isRestriction(Expression conjunct) {
+        if (!(conjunct instanceof BinaryExpression)) {
+            return false;
+        }
+        BinaryExpression binary = (BinaryExpression) conjunct;
+        switch (binary.getOperator()) {
+            case EQUALS:
+            case NOT_EQUALS:
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUALS:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUALS:
+            case LIKE:
+            case IN:
+                break;
+            default:
+                return false;
+        }
+        if (binary.getRight() instanceof LiteralExpression) {
+            return isPath(binary.getLeft());
+        }
+        return binary.getOperator() != Operator.IN && binary.getOperator() != Operator.LIKE
+            && binary.getLeft() instanceof LiteralExpression && isPath(binary.getRight());
+    }
+}
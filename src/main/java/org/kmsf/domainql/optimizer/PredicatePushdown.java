@@ -0,0 +1,130 @@
+package org.kmsf.domainql.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.kmsf.domainql.expression.AggregateExpression;
+import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.GroupingExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryExpression;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Moves the predicates an outer query applies to the columns of its source
+ * query into that query, so that rows are discarded before being joined or
+ * aggregated. A predicate is translated through the projections it reads:
+ * it lands in the inner filter when they are row-level expressions, and in
+ * the inner HAVING when one of them is an aggregate.
+ *
+ * <p>The rule follows the chain of source queries. Sources that are limited,
+ * paginated or grouped by explicit grouping sets are left alone, since
+ * filtering them first would change which rows they return.
+ */
+public class PredicatePushdown {
+
+    private PredicatePushdown() {
+    }
+
+    public static Query rewrite(Query query) {
+        if (!(query.getSourceDomain() instanceof Query)) {
+            return query;
+        }
+        Query source = (Query) query.getSourceDomain();
+        if (!canPushInto(query, source)) {
+            Query rewrittenSource = rewrite(source);
+            return rewrittenSource == source ? query : Rewrites.rebase(query, rewrittenSource);
+        }
+
+        List<Expression> kept = new ArrayList<>();
+        List<Expression> pushedFilter = new ArrayList<>(Expressions.conjuncts(source.getFilter()));
+        List<Expression> pushedHaving = new ArrayList<>(Expressions.conjuncts(source.getHaving()));
+        for (Expression conjunct : Expressions.conjuncts(query.getFilter())) {
+            Expression translated = isPushable(conjunct, source) ? translate(conjunct, source) : null;
+            if (translated == null) {
+                kept.add(conjunct);
+            } else if (Expressions.containsAggregate(translated)) {
+                pushedHaving.add(translated);
+            } else {
+                pushedFilter.add(translated);
+            }
+        }
+
+        Query remaining = query;
+        Query rewrittenSource = source;
+        if (kept.size() < Expressions.conjuncts(query.getFilter()).size()) {
+            rewrittenSource = source.withProjections(source.getProjections().keySet());
+            rewrittenSource.setFilter(Expressions.and(pushedFilter));
+            rewrittenSource.setHaving(Expressions.and(pushedHaving));
+            remaining = Rewrites.copy(query, source, UnaryOperator.identity());
+            remaining.setFilter(Expressions.and(kept));
+        }
+        rewrittenSource = rewrite(rewrittenSource);
+        return rewrittenSource == source ? query : Rewrites.rebase(remaining, rewrittenSource);
+    }
+
+    /*
+     * The source must not be otherwise used by the query (the pushed
+     * predicates would then also apply to those uses), must produce the same
+     * rows whatever is filtered out, and must expose nothing but its
+     * projections.
+     */
+    private static boolean canPushInto(Query query, Query source) {
+        if (source.getLimit() != null || source.getContinuationToken() != null
+            || source.getGroupingSets() != null) {
+            return false;
+        }
+        for (Attribute attribute : source.getAttributes()) {
+            if (attribute instanceof ReferenceAttribute) {
+                return false;
+            }
+        }
+        for (List<ReferenceAttribute> path : Expressions.referencePaths(query)) {
+            if (path.get(path.size() - 1).getReferenceDomain() == source) {
+                return false;
+            }
+        }
+        boolean[] nested = {false};
+        for (Expression expr : Expressions.expressions(query)) {
+            Expressions.forEach(expr, e -> nested[0] |= e instanceof QueryExpression
+                && ((QueryExpression) e).getQuery() == source);
+        }
+        return !nested[0];
+    }
+
+    private static boolean isPushable(Expression conjunct, Query source) {
+        boolean[] pushable = {true};
+        Expressions.forEach(conjunct, e -> {
+            if (e instanceof ComposeExpression || e instanceof QueryExpression
+                || e instanceof AggregateExpression || e instanceof GroupingExpression) {
+                pushable[0] = false;
+            } else if (e instanceof AttributeExpression) {
+                Attribute attribute = ((AttributeExpression) e).getAttribute();
+                pushable[0] &= attribute.getDomain() == source
+                    && source.getProjections().containsKey(attribute.getName());
+            }
+        });
+        return pushable[0];
+    }
+
+    /*
+     * Substitutes each column of the source by the expression computing it,
+     * or returns null if one of them cannot be evaluated in a filter.
+     */
+    private static Expression translate(Expression conjunct, Query source) {
+        Expression translated = Expressions.transform(conjunct, e -> {
+            if (e instanceof AttributeExpression) {
+                return source.getProjections().get(((AttributeExpression) e).getAttribute().getName());
+            }
+            return e;
+        });
+        boolean[] nested = {false};
+        Expressions.forEach(translated, e -> nested[0] |= e instanceof QueryExpression);
+        return nested[0] ? null : translated;
+    }
+}
@@ -0,0 +1,70 @@
+package org.kmsf.domainql.optimizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.Query;
+
+/**
+ * Helpers shared by the rewrite rules to rebuild queries.
+ */
+final class Rewrites {
+
+    private Rewrites() {
+    }
+
+    /**
+     * Copy of the query reading from another source domain, every expression
+     * being rewritten by the given function.
+     */
+    static Query copy(Query query, Domain source, UnaryOperator<Expression> rewrite) {
+        Query copy = new Query(query.getName(), source);
+        for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+            copy.addProjection(projection.getKey(), Expressions.transform(projection.getValue(), rewrite));
+        }
+        copy.setFilter(Expressions.transform(query.getFilter(), rewrite));
+        copy.setHaving(Expressions.transform(query.getHaving(), rewrite));
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            copy.addOrderBy(Expressions.transform(orderBy.getExpression(), rewrite), orderBy.isAscending());
+        }
+        if (query.getContinuationToken() != null) {
+            copy.setPage(query.getLimit(), query.getContinuationToken());
+        } else {
+            copy.setLimit(query.getLimit());
+        }
+        if (query.getGroupingSets() != null) {
+            List<List<Expression>> groupingSets = new ArrayList<>();
+            for (List<Expression> groupingSet : query.getGroupingSets()) {
+                List<Expression> keys = new ArrayList<>();
+                for (Expression key : groupingSet) {
+                    keys.add(Expressions.transform(key, rewrite));
+                }
+                groupingSets.add(keys);
+            }
+            copy.setGroupingSets(groupingSets);
+        }
+        return copy;
+    }
+
+    /**
+     * Copy of the query reading from a rebuilt version of its source query,
+     * attributes of the old source being replaced by their namesakes.
+     */
+    static Query rebase(Query query, Query source) {
+        Domain oldSource = query.getSourceDomain();
+        return copy(query, source, e -> {
+            if (e instanceof AttributeExpression && ((AttributeExpression) e).getAttribute().getDomain() == oldSource) {
+                AttributeExpression attrExpr = (AttributeExpression) e;
+                return new AttributeExpression(source.getAttribute(attrExpr.getAttribute().getName()),
+                    attrExpr.getContextResolution());
+            }
+            return e;
+        });
+    }
+}
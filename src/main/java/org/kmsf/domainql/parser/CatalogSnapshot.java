@@ -0,0 +1,436 @@
+package org.kmsf.domainql.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Fingerprint;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Binary snapshot of a catalog, loaded without rebuilding it: the file is
+ * memory-mapped, and a domain is only read when it is first used.
+ *
+ * <p>The file holds a header (format version and catalog fingerprint), the
+ * offsets of the domains sorted by name, then one record per domain: its
+ * attributes, its keys, and its references with their join conditions.
+ * Looking a domain up is a binary search on the offsets. Reading its
+ * attributes does not read the domains its references lead to, beyond the
+ * columns their join conditions compare.
+ */
+public class CatalogSnapshot {
+    static final int MAGIC = 0x44514353; // "DQCS"
+    static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Writes the registered domains to the file, replacing it at once.
+     * References must lead to registered domains, and attributes have
+     * scalar types.
+     */
+    public static void write(DomainRegistry registry, Path file) {
+        List<Domain> domains = new ArrayList<>(registry.getAllDomains());
+        domains.sort((a, b) -> a.getName().compareTo(b.getName()));
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int[] offsets = new int[domains.size()];
+        int start = HEADER_SIZE + 4 * domains.size();
+        try (DataOutputStream out = new DataOutputStream(records)) {
+            QueryCodec codec = new QueryCodec(registry);
+            for (int i = 0; i < domains.size(); i++) {
+                offsets[i] = start + out.size();
+                writeDomain(domains.get(i), registry, codec, out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Fingerprint fingerprint = registry.fingerprint();
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(fingerprint.getHigh());
+                out.writeLong(fingerprint.getLow());
+                out.writeInt(domains.size());
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                records.writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write the catalog snapshot " + file, e);
+        }
+    }
+
+    /*
+     * Plain attributes first, so that they can be read without the
+     * references, which may need the attributes of other domains.
+     */
+    private static void writeDomain(Domain domain, DomainRegistry registry, QueryCodec codec, DataOutputStream out)
+            throws IOException {
+        if (domain instanceof Query) {
+            throw new IllegalArgumentException("Query '" + domain.getName() + "' cannot be part of a catalog snapshot");
+        }
+        List<Attribute> columns = new ArrayList<>();
+        List<ReferenceAttribute> references = new ArrayList<>();
+        for (Attribute attribute : domain.getAttributes()) {
+            if (attribute instanceof ReferenceAttribute) {
+                references.add((ReferenceAttribute) attribute);
+            } else if (attribute.getType() instanceof ScalarType) {
+                columns.add(attribute);
+            } else {
+                throw new IllegalArgumentException("Attribute '" + attribute.getName() + "' of domain '"
+                    + domain.getName() + "' has no scalar type: " + attribute.getType());
+            }
+        }
+        QueryCodec.writeString(domain.getName(), out);
+        QueryCodec.writeSize(columns.size(), out);
+        for (Attribute column : columns) {
+            QueryCodec.writeString(column.getName(), out);
+            QueryCodec.writeString(column.getType().toString(), out);
+        }
+        QueryCodec.writeSize(domain.getKeys().size(), out);
+        for (Set<Attribute> key : domain.getKeys()) {
+            QueryCodec.writeSize(key.size(), out);
+            for (Attribute attribute : key) {
+                QueryCodec.writeString(attribute.getName(), out);
+            }
+        }
+        QueryCodec.writeSize(references.size(), out);
+        for (ReferenceAttribute reference : references) {
+            Domain target = reference.getReferenceDomain();
+            if (!registry.hasDomain(target.getName()) || registry.getDomain(target.getName()) != target) {
+                throw new IllegalArgumentException("Reference '" + reference.getName() + "' of domain '"
+                    + domain.getName() + "' leads to the unregistered domain '" + target.getName() + "'");
+            }
+            QueryCodec.writeString(reference.getName(), out);
+            QueryCodec.writeString(target.getName(), out);
+            codec.writeExpression(reference.getJoinCondition(), out);
+        }
+    }
+
+    /**
+     * Opens the snapshot: its domains are read as they are used, from a
+     * mapping of the file.
+     */
+    public static DomainRegistry open(Path file) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open the catalog snapshot " + file, e);
+        }
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a catalog snapshot: " + file);
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported catalog snapshot version " + buffer.getInt(4) + ": " + file);
+        }
+        int count = buffer.getInt(24);
+        if (count < 0 || HEADER_SIZE + 4L * count > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated catalog snapshot: " + file);
+        }
+        return new SnapshotRegistry(buffer, count, buffer.getLong(8), buffer.getLong(16));
+    }
+
+    /*
+     * Hands out the domains of the snapshot, read on first use; domains
+     * registered afterwards take precedence. While neither a domain is
+     * registered nor a snapshot domain is changed, the fingerprint is the
+     * one recorded in the file.
+     */
+    private static class SnapshotRegistry extends DomainRegistry {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final long high;
+        private final long low;
+        private final List<SnapshotDomain> materialized = new ArrayList<>();
+        private boolean registered;
+
+        SnapshotRegistry(ByteBuffer buffer, int count, long high, long low) {
+            this.buffer = buffer;
+            this.count = count;
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public synchronized void register(Domain domain) {
+            registered = true;
+            super.register(domain);
+        }
+
+        @Override
+        public synchronized Domain getDomain(String name) {
+            if (super.hasDomain(name)) {
+                return super.getDomain(name);
+            }
+            int offset = find(name);
+            if (offset < 0) {
+                return super.getDomain(name); // not found either
+            }
+            SnapshotDomain domain = new SnapshotDomain(name, this, offset);
+            materialized.add(domain);
+            super.register(domain);
+            return domain;
+        }
+
+        @Override
+        public synchronized boolean hasDomain(String name) {
+            return super.hasDomain(name) || find(name) >= 0;
+        }
+
+        @Override
+        public synchronized Collection<Domain> getAllDomains() {
+            for (int i = 0; i < count; i++) {
+                getDomain(nameAt(recordOffset(i)));
+            }
+            return super.getAllDomains();
+        }
+
+        @Override
+        public synchronized Fingerprint fingerprint() {
+            boolean changed = registered;
+            for (SnapshotDomain domain : materialized) {
+                changed |= domain.isChanged();
+            }
+            // unchanged, the catalog has the fingerprint recorded in the file, without reading it
+            return changed ? super.fingerprint() : Fingerprint.of(high, low);
+        }
+
+        @Override
+        public JsonObject toJson() {
+            getAllDomains();
+            return super.toJson();
+        }
+
+        /*
+         * The offset of the domain's record, or -1: a binary search on the
+         * offsets, sorted by domain name.
+         */
+        private int find(String name) {
+            int lowIndex = 0;
+            int highIndex = count - 1;
+            while (lowIndex <= highIndex) {
+                int middle = (lowIndex + highIndex) >>> 1;
+                int offset = recordOffset(middle);
+                int compared = nameAt(offset).compareTo(name);
+                if (compared < 0) {
+                    lowIndex = middle + 1;
+                } else if (compared > 0) {
+                    highIndex = middle - 1;
+                } else {
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        private int recordOffset(int index) {
+            return buffer.getInt(HEADER_SIZE + 4 * index);
+        }
+
+        private String nameAt(int offset) {
+            try {
+                return QueryCodec.readString(input(offset));
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt catalog snapshot", e);
+            }
+        }
+
+        DataInputStream input(int offset) {
+            return QueryCodec.input(buffer.slice(offset, buffer.limit() - offset));
+        }
+    }
+
+    /*
+     * A domain read in two steps: its plain attributes and keys when any
+     * attribute is first asked for, its references when one of them is, or
+     * all the attributes are. Reading happens under the lock of the registry;
+     * until the domain is loaded, attributes are looked up under it too, since
+     * the references may be added to them meanwhile.
+     */
+    private static class SnapshotDomain extends Domain {
+        private static final int EMPTY = 0;
+        private static final int COLUMNS = 1;
+        private static final int LOADING = 2;
+        private static final int LOADED = 3;
+
+        private final SnapshotRegistry registry;
+        private final int offset;
+        private volatile int state = EMPTY;
+        private int referencesOffset;
+        private int loadedVersion;
+
+        SnapshotDomain(String name, SnapshotRegistry registry, int offset) {
+            super(name);
+            this.registry = registry;
+            this.offset = offset;
+        }
+
+        boolean isChanged() {
+            return state == LOADED && getVersion() != loadedVersion;
+        }
+
+        private void loadColumns() {
+            synchronized (registry) {
+                if (state == EMPTY) {
+                    readColumns();
+                }
+            }
+        }
+
+        private void readColumns() {
+            state = LOADING;
+            try {
+                DataInputStream in = registry.input(offset);
+                int length = in.available();
+                QueryCodec.readString(in);
+                int columns = QueryCodec.readSize(in);
+                for (int i = 0; i < columns; i++) {
+                    String name = QueryCodec.readString(in);
+                    super.addAttribute(name, ScalarType.valueOf(QueryCodec.readString(in)));
+                }
+                int keys = QueryCodec.readSize(in);
+                for (int i = 0; i < keys; i++) {
+                    String[] names = new String[QueryCodec.readSize(in)];
+                    for (int j = 0; j < names.length; j++) {
+                        names[j] = QueryCodec.readString(in);
+                    }
+                    super.addKey(names);
+                }
+                referencesOffset = offset + length - in.available();
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt catalog snapshot: domain '" + getName() + "'", e);
+            }
+            state = COLUMNS;
+        }
+
+        private void load() {
+            synchronized (registry) {
+                loadColumns();
+                if (state == COLUMNS) {
+                    readReferences();
+                }
+            }
+        }
+
+        private void readReferences() {
+            state = LOADING;
+            try {
+                DataInputStream in = registry.input(referencesOffset);
+                QueryCodec codec = new QueryCodec(registry);
+                int references = QueryCodec.readSize(in);
+                for (int i = 0; i < references; i++) {
+                    String name = QueryCodec.readString(in);
+                    Domain target = registry.getDomain(QueryCodec.readString(in));
+                    Expression joinCondition = codec.readExpression(in);
+                    super.addAttribute(name, new ReferenceAttribute(name, this, target, joinCondition));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupt catalog snapshot: domain '" + getName() + "'", e);
+            }
+            loadedVersion = getVersion();
+            state = LOADED;
+        }
+
+        @Override
+        public void addAttribute(String name, Attribute attribute) {
+            load();
+            super.addAttribute(name, attribute);
+        }
+
+        @Override
+        public Attribute getAttribute(String name) {
+            if (state != LOADED) {
+                synchronized (registry) {
+                    loadFor(name);
+                    return super.getAttribute(name);
+                }
+            }
+            return super.getAttribute(name);
+        }
+
+        @Override
+        public boolean hasAttribute(String name) {
+            if (state != LOADED) {
+                synchronized (registry) {
+                    loadFor(name);
+                    return super.hasAttribute(name);
+                }
+            }
+            return super.hasAttribute(name);
+        }
+
+        /*
+         * Reads the columns, and the references unless the name is a column;
+         * called holding the lock of the registry.
+         */
+        private void loadFor(String name) {
+            loadColumns();
+            if (state == COLUMNS && !super.hasAttribute(name)) {
+                readReferences();
+            }
+        }
+
+        @Override
+        public Collection<Attribute> getAttributes() {
+            load();
+            return super.getAttributes();
+        }
+
+        @Override
+        public void addKey(String... attributeNames) {
+            load();
+            super.addKey(attributeNames);
+        }
+
+        @Override
+        public List<Set<Attribute>> getKeys() {
+            loadColumns();
+            return super.getKeys();
+        }
+
+        @Override
+        public boolean isKey(Collection<Attribute> attributes) {
+            loadColumns();
+            return super.isKey(attributes);
+        }
+
+        @Override
+        public JsonObject toJson() {
+            load();
+            return super.toJson();
+        }
+    }
+}
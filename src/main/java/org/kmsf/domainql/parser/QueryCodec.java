@@ -0,0 +1,467 @@
+package org.kmsf.domainql.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.AggregateExpression;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.ContinuationToken;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.GroupingExpression;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.ParameterExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryExpression;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+/**
+ * Compact binary form of queries and expressions. Domains are written by
+ * name and resolved against a {@link DomainRegistry} when read, so only
+ * queries over registered domains can be written; nested queries are
+ * written once, wherever they are used.
+ */
+public class QueryCodec {
+    private final DomainRegistry registry;
+    private final Map<Query, Integer> writtenQueries = new IdentityHashMap<>();
+    private final List<Query> readQueries = new ArrayList<>();
+    // the domain a composition reads, given by its reference
+    private Domain composed;
+
+    public QueryCodec(DomainRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static byte[] encode(Query query, DomainRegistry registry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            new QueryCodec(registry).writeQuery(query, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Query decode(byte[] bytes, DomainRegistry registry) {
+        try {
+            return new QueryCodec(registry).readQuery(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid encoded query", e);
+        }
+    }
+
+    public void writeQuery(Query query, DataOutput out) throws IOException {
+        Integer index = writtenQueries.get(query);
+        if (index != null) {
+            out.writeByte('R');
+            writeSize(index, out);
+            return;
+        }
+        writtenQueries.put(query, writtenQueries.size());
+        out.writeByte('Q');
+        writeString(query.getName(), out);
+        writeDomain(query.getSourceDomain(), out);
+        writeSize(query.getProjections().size(), out);
+        for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+            writeString(projection.getKey(), out);
+            writeExpression(projection.getValue(), out);
+        }
+        writeExpression(query.getFilter(), out);
+        writeExpression(query.getHaving(), out);
+        writeSize(query.getOrderBy().size(), out);
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            out.writeBoolean(orderBy.isAscending());
+            writeExpression(orderBy.getExpression(), out);
+        }
+        writeSize(query.getLimit() == null ? 0 : query.getLimit(), out);
+        if (query.getContinuationToken() == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeValues(query.getContinuationToken().getValues(), out);
+        }
+        if (query.getGroupingSets() == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            writeSize(query.getGroupingSets().size(), out);
+            for (List<Expression> groupingSet : query.getGroupingSets()) {
+                writeExpressions(groupingSet, out);
+            }
+        }
+    }
+
+    public Query readQuery(DataInput in) throws IOException {
+        return readQuery(in.readByte(), in);
+    }
+
+    private Query readQuery(int tag, DataInput in) throws IOException {
+        if (tag == 'R') {
+            int index = readSize(in);
+            if (index >= readQueries.size() || readQueries.get(index) == null) {
+                throw new IllegalArgumentException("Invalid query reference: " + index);
+            }
+            return readQueries.get(index);
+        } else if (tag != 'Q') {
+            throw new IllegalArgumentException("Invalid query tag: " + tag);
+        }
+        int index = readQueries.size();
+        readQueries.add(null);
+        String name = readString(in);
+        Query query = new Query(name, readDomain(in));
+        int projections = readSize(in);
+        for (int i = 0; i < projections; i++) {
+            String alias = readString(in);
+            query.addProjection(alias, readExpression(in));
+        }
+        query.setFilter(readExpression(in));
+        query.setHaving(readExpression(in));
+        int orderBy = readSize(in);
+        for (int i = 0; i < orderBy; i++) {
+            boolean ascending = in.readBoolean();
+            query.addOrderBy(readExpression(in), ascending);
+        }
+        int limit = readSize(in);
+        if (in.readBoolean()) {
+            query.setPage(limit, ContinuationToken.of(readValues(in)));
+        } else if (limit > 0) {
+            query.setLimit(limit);
+        }
+        if (in.readBoolean()) {
+            int count = readSize(in);
+            List<List<Expression>> groupingSets = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                groupingSets.add(readExpressions(in));
+            }
+            query.setGroupingSets(groupingSets);
+        }
+        readQueries.set(index, query);
+        return query;
+    }
+
+    private void writeDomain(Domain domain, DataOutput out) throws IOException {
+        if (domain instanceof Query) {
+            writeQuery((Query) domain, out);
+            return;
+        }
+        if (!registry.hasDomain(domain.getName()) || registry.getDomain(domain.getName()) != domain) {
+            throw new IllegalArgumentException("Domain '" + domain.getName() + "' is not registered");
+        }
+        out.writeByte('D');
+        writeString(domain.getName(), out);
+    }
+
+    private Domain readDomain(DataInput in) throws IOException {
+        int tag = in.readByte();
+        if (tag == 'D') {
+            return registry.getDomain(readString(in));
+        }
+        return readQuery(tag, in);
+    }
+
+    public void writeExpression(Expression expr, DataOutput out) throws IOException {
+        if (expr == null) {
+            out.writeByte('0');
+        } else if (expr instanceof AttributeExpression) {
+            AttributeExpression attrExpr = (AttributeExpression) expr;
+            if (attrExpr.getAttribute().getDomain() == composed) {
+                out.writeByte('i');
+            } else {
+                out.writeByte('a');
+                writeDomain(attrExpr.getAttribute().getDomain(), out);
+            }
+            writeString(attrExpr.getAttribute().getName(), out);
+            out.writeByte(attrExpr.getContextResolution().ordinal());
+        } else if (expr instanceof ComposeExpression) {
+            ComposeExpression compose = (ComposeExpression) expr;
+            out.writeByte('c');
+            writeExpression(compose.getReference(), out);
+            Domain outer = composed;
+            composed = referencedDomain(compose.getReference());
+            writeExpression(compose.getComposition(), out);
+            composed = outer;
+        } else if (expr instanceof LiteralExpression) {
+            out.writeByte('l');
+            writeValue(((LiteralExpression) expr).getValue(), out);
+        } else if (expr instanceof ParameterExpression) {
+            out.writeByte('p');
+            writeString(((ParameterExpression) expr).getName(), out);
+            writeString(expr.getType().toString(), out);
+        } else if (expr instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expr;
+            out.writeByte('b');
+            out.writeByte(binary.getOperator().ordinal());
+            writeExpression(binary.getLeft(), out);
+            writeExpression(binary.getRight(), out);
+        } else if (expr instanceof LogicalExpression) {
+            out.writeByte('o');
+            out.writeByte(((LogicalExpression) expr).getOperator().ordinal());
+            writeExpressions(((LogicalExpression) expr).getOperands(), out);
+        } else if (expr instanceof AggregateExpression) {
+            out.writeByte('g');
+            out.writeByte(((AggregateExpression) expr).getFunction().ordinal());
+            writeExpression(((AggregateExpression) expr).getOperand(), out);
+        } else if (expr instanceof GroupingExpression) {
+            out.writeByte('k');
+            writeExpressions(((GroupingExpression) expr).getKeys(), out);
+        } else if (expr instanceof QueryExpression) {
+            out.writeByte('q');
+            writeQuery(((QueryExpression) expr).getQuery(), out);
+        } else {
+            throw new IllegalArgumentException("Unsupported expression: " + expr.getClass().getSimpleName());
+        }
+    }
+
+    public Expression readExpression(DataInput in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case '0':
+                return null;
+            case 'a':
+            case 'i': {
+                Domain domain = tag == 'a' ? readDomain(in) : composed;
+                String name = readString(in);
+                return new AttributeExpression(domain.getAttribute(name),
+                    AttributeExpression.ContextResolution.values()[in.readByte()]);
+            }
+            case 'c': {
+                Expression reference = readExpression(in);
+                Domain outer = composed;
+                composed = referencedDomain(reference);
+                Expression composition = readExpression(in);
+                composed = outer;
+                return new ComposeExpression(reference, composition);
+            }
+            case 'l':
+                return new LiteralExpression(readValue(in));
+            case 'p': {
+                String name = readString(in);
+                return new ParameterExpression(name, ScalarType.valueOf(readString(in)));
+            }
+            case 'b': {
+                Operator operator = Operator.values()[in.readByte()];
+                Expression left = readExpression(in);
+                return new BinaryExpression(left, operator, readExpression(in));
+            }
+            case 'o': {
+                Operator operator = Operator.values()[in.readByte()];
+                return new LogicalExpression(operator, readExpressions(in));
+            }
+            case 'g': {
+                AggregateExpression.AggregateFunction function = AggregateExpression.AggregateFunction.values()[in.readByte()];
+                return new AggregateExpression(readExpression(in), function);
+            }
+            case 'k':
+                return new GroupingExpression(readExpressions(in));
+            case 'q':
+                return new QueryExpression(readQuery(in));
+            default:
+                throw new IllegalArgumentException("Invalid expression tag: " + tag);
+        }
+    }
+
+    /*
+     * The domain a reference leads to: its attributes are written relatively
+     * to the reference, so that they are read from the very domain it targets
+     * (which may be a query, not written by name).
+     */
+    private static Domain referencedDomain(Expression reference) {
+        if (reference instanceof AttributeExpression
+            && ((AttributeExpression) reference).getAttribute() instanceof ReferenceAttribute) {
+            return ((ReferenceAttribute) ((AttributeExpression) reference).getAttribute()).getReferenceDomain();
+        }
+        return null;
+    }
+
+    private void writeExpressions(List<Expression> expressions, DataOutput out) throws IOException {
+        writeSize(expressions.size(), out);
+        for (Expression expr : expressions) {
+            writeExpression(expr, out);
+        }
+    }
+
+    private List<Expression> readExpressions(DataInput in) throws IOException {
+        int count = readSize(in);
+        List<Expression> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            expressions.add(readExpression(in));
+        }
+        return expressions;
+    }
+
+    /**
+     * Writes a literal value: null, a string, a number, a boolean, a date,
+     * a timestamp or a list of those.
+     */
+    public static void writeValue(Object value, DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte('N');
+        } else if (value instanceof String) {
+            out.writeByte('S');
+            writeString((String) value, out);
+        } else if (value instanceof Integer) {
+            out.writeByte('I');
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte('J');
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte('F');
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte('M');
+            writeString(value.toString(), out);
+        } else if (value instanceof Boolean) {
+            out.writeByte('B');
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof LocalDate) {
+            out.writeByte('d');
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (value instanceof LocalDateTime) {
+            out.writeByte('t');
+            writeString(value.toString(), out);
+        } else if (value instanceof List) {
+            out.writeByte('L');
+            writeValues((List<?>) value, out);
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+        }
+    }
+
+    public static Object readValue(DataInput in) throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case 'N': return null;
+            case 'S': return readString(in);
+            case 'I': return in.readInt();
+            case 'J': return in.readLong();
+            case 'F': return in.readDouble();
+            case 'M': return new BigDecimal(readString(in));
+            case 'B': return in.readBoolean();
+            case 'd': return LocalDate.ofEpochDay(in.readLong());
+            case 't': return LocalDateTime.parse(readString(in));
+            case 'L': return readValues(in);
+            default:
+                throw new IllegalArgumentException("Invalid value tag: " + tag);
+        }
+    }
+
+    public static void writeValues(List<?> values, DataOutput out) throws IOException {
+        writeSize(values.size(), out);
+        for (Object value : values) {
+            writeValue(value, out);
+        }
+    }
+
+    public static List<Object> readValues(DataInput in) throws IOException {
+        int count = readSize(in);
+        List<Object> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readValue(in));
+        }
+        return values;
+    }
+
+    /**
+     * Reads the remaining bytes of the buffer (a mapped file, say) without
+     * copying them.
+     */
+    public static DataInputStream input(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        return new DataInputStream(new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int read = Math.min(length, view.remaining());
+                view.get(bytes, offset, read);
+                return read;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.min(n, view.remaining());
+                view.position(view.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        });
+    }
+
+    /*
+     * Strings are written as UTF-8 after their length, which (unlike
+     * writeUTF) is not limited to 64KB.
+     */
+    public static void writeString(String value, DataOutput out) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeSize(bytes.length, out);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[readSize(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Sizes, indexes and limits as a variable-length integer: 7 bits per
+     * byte, most of them fitting in one byte.
+     */
+    public static void writeSize(int size, DataOutput out) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        while ((size & ~0x7F) != 0) {
+            out.writeByte((size & 0x7F) | 0x80);
+            size >>>= 7;
+        }
+        out.writeByte(size);
+    }
+
+    public static int readSize(DataInput in) throws IOException {
+        int size = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            size |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (size < 0) {
+                    throw new IllegalArgumentException("Invalid size");
+                }
+                return size;
+            }
+        }
+        throw new IllegalArgumentException("Invalid size");
+    }
+}
@@ -1,10 +1,15 @@
 package org.kmsf.domainql.parser;
 
+import org.kmsf.domainql.expression.ContinuationToken;
 import org.kmsf.domainql.expression.Domain;
 import org.kmsf.domainql.expression.DomainRegistry;
 import org.kmsf.domainql.expression.ExpressionBuilder;
 import org.kmsf.domainql.expression.Query;
 import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -43,18 +48,26 @@ public class QueryParser {
         }
 
         // Parse order by
-        /*
         if (queryObj.has("orderBy")) {
             JsonArray orderClauses = queryObj.getAsJsonArray("orderBy");
             for (JsonElement order : orderClauses) {
                 JsonObject orderObj = order.getAsJsonObject();
                 builder.orderBy(
                     parseExpression(orderObj.get("expression").getAsJsonObject()),
-                    orderObj.get("ascending").getAsBoolean()
+                    !orderObj.has("ascending") || orderObj.get("ascending").getAsBoolean()
                 );
             }
         }
-        */
+
+        // Parse keyset pagination
+        if (queryObj.has("limit")) {
+            int limit = queryObj.get("limit").getAsInt();
+            if (queryObj.has("after")) {
+                builder.page(limit, ContinuationToken.decode(queryObj.get("after").getAsString()));
+            } else {
+                builder.limit(limit);
+            }
+        }
 
         return builder.build();
     }
@@ -68,6 +81,10 @@ public class QueryParser {
                 
             case "literal":
                 return parseLiteral(exprObj.get("value"));
+
+            case "parameter":
+                return ExpressionBuilder.param(exprObj.get("name").getAsString(),
+                    ScalarType.valueOf(exprObj.get("valueType").getAsString()));
                 
             case "binary":
                 return parseBinaryExpression(exprObj);
@@ -90,13 +107,23 @@ public class QueryParser {
     }
 
     private ExpressionBuilder parseBinaryExpression(JsonObject exprObj) {
+        String operator = exprObj.get("operator").getAsString();
+        if (exprObj.has("operands") && (operator.equals("AND") || operator.equals("OR"))) {
+            // any number of conditions, as a flat list rather than nested pairs
+            List<ExpressionBuilder> operands = new ArrayList<>();
+            for (JsonElement operand : exprObj.getAsJsonArray("operands")) {
+                operands.add(parseExpression(operand.getAsJsonObject()));
+            }
+            return operator.equals("AND") ? ExpressionBuilder.AND(operands) : ExpressionBuilder.OR(operands);
+        }
         ExpressionBuilder left = parseExpression(exprObj.get("left").getAsJsonObject());
         ExpressionBuilder right = parseExpression(exprObj.get("right").getAsJsonObject());
-        String operator = exprObj.get("operator").getAsString();
         
         switch (operator) {
             case "EQUALS": return ExpressionBuilder.EQUALS(left, right);
             case "GREATER_THAN": return ExpressionBuilder.GREATER_THAN(left, right);
+            case "AND": return ExpressionBuilder.AND(left, right);
+            case "OR": return ExpressionBuilder.OR(left, right);
             // ... autres opérateurs
             default:
                 throw new IllegalArgumentException("Unknown operator: " + operator);
@@ -0,0 +1,56 @@
+package org.kmsf.domainql.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.Expression;
+
+/**
+ * Groups the rows of its input by the non-aggregate columns, and computes
+ * the aggregate ones over each group.
+ */
+public class Aggregate extends PlanNode {
+    private final PlanNode input;
+    private final Map<String, Expression> projections;
+
+    public Aggregate(PlanNode input, Map<String, Expression> projections) {
+        this.input = input;
+        this.projections = new LinkedHashMap<>(projections);
+    }
+
+    public PlanNode getInput() {
+        return input;
+    }
+
+    public Map<String, Expression> getProjections() {
+        return Collections.unmodifiableMap(projections);
+    }
+
+    public List<Expression> getGroupKeys() {
+        List<Expression> keys = new ArrayList<>();
+        for (Expression expr : projections.values()) {
+            if (!expr.getType().isAggregate()) {
+                keys.add(expr);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of(input);
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return new Aggregate(inputs.get(0), projections);
+    }
+
+    @Override
+    public String describe() {
+        return "Aggregate " + String.join(", ", projections.keySet());
+    }
+}
@@ -0,0 +1,69 @@
+package org.kmsf.domainql.plan;
+
+import java.util.Locale;
+
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+
+/**
+ * Estimates the rows each operator produces, and the cost of a plan as the
+ * total number of rows its operators produce.
+ */
+public class CostModel {
+    private final StatisticsCatalog statistics;
+
+    public CostModel(StatisticsCatalog statistics) {
+        this.statistics = statistics;
+    }
+
+    public double rows(PlanNode node) {
+        if (node instanceof Scan) {
+            return statistics.getRowCount(((Scan) node).getDomain());
+        } else if (node instanceof Subquery) {
+            return statistics.getRowCount(((Subquery) node).getQuery());
+        } else if (node instanceof Filter) {
+            return rows(((Filter) node).getInput()) * statistics.selectivity(((Filter) node).getCondition());
+        } else if (node instanceof Join) {
+            Join join = (Join) node;
+            double left = rows(join.getLeft());
+            double right = rows(join.getRight());
+            if (join.getReference().isToOne()) {
+                // each row matches at most one row, that conditions on the joined side may discard
+                return left * Math.min(1, right / Math.max(1, statistics.getRowCount(join.getReference().getReferenceDomain())));
+            }
+            return left * right * statistics.selectivity(join.getReference().getJoinCondition());
+        } else if (node instanceof Aggregate) {
+            return ((Aggregate) node).getGroupKeys().isEmpty() ? 1 : rows(((Aggregate) node).getInput());
+        } else if (node instanceof Limit) {
+            return Math.min(((Limit) node).getLimit(), rows(((Limit) node).getInput()));
+        }
+        return rows(node.getInputs().get(0));
+    }
+
+    public double cost(PlanNode node) {
+        double cost = rows(node);
+        for (PlanNode input : node.getInputs()) {
+            cost += cost(input);
+        }
+        return cost;
+    }
+
+    /**
+     * The plan, one operator per line with its estimated rows.
+     */
+    public String explain(PlanNode node) {
+        StringBuilder sb = new StringBuilder();
+        explain(node, 0, sb);
+        return sb.toString();
+    }
+
+    private void explain(PlanNode node, int depth, StringBuilder sb) {
+        if (depth > 0) {
+            sb.append("\n");
+        }
+        sb.append("  ".repeat(depth)).append(node.describe())
+          .append(String.format(Locale.ROOT, " (rows=%.0f)", rows(node)));
+        for (PlanNode input : node.getInputs()) {
+            explain(input, depth + 1, sb);
+        }
+    }
+}
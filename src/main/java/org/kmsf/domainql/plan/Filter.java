@@ -0,0 +1,42 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+
+/**
+ * Keeps the rows of its input satisfying a condition.
+ */
+public class Filter extends PlanNode {
+    private final PlanNode input;
+    private final Expression condition;
+
+    public Filter(PlanNode input, Expression condition) {
+        this.input = input;
+        this.condition = condition;
+    }
+
+    public PlanNode getInput() {
+        return input;
+    }
+
+    public Expression getCondition() {
+        return condition;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of(input);
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return new Filter(inputs.get(0), condition);
+    }
+
+    @Override
+    public String describe() {
+        return "Filter " + Expressions.conjuncts(condition).size() + " conjunct(s)";
+    }
+}
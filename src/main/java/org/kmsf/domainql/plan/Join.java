@@ -0,0 +1,76 @@
+package org.kmsf.domainql.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Inner join of the rows reached so far with the domain at the end of a
+ * reference path, on the join condition of the path's last reference.
+ */
+public class Join extends PlanNode {
+    private final PlanNode left;
+    private final PlanNode right;
+    private final List<ReferenceAttribute> path;
+
+    /**
+     * @param path references followed from the query source to the joined domain
+     */
+    public Join(PlanNode left, PlanNode right, List<ReferenceAttribute> path) {
+        this.left = left;
+        this.right = right;
+        this.path = List.copyOf(path);
+    }
+
+    public PlanNode getLeft() {
+        return left;
+    }
+
+    public PlanNode getRight() {
+        return right;
+    }
+
+    public List<ReferenceAttribute> getPath() {
+        return path;
+    }
+
+    public ReferenceAttribute getReference() {
+        return path.get(path.size() - 1);
+    }
+
+    /**
+     * The reference paths of the rows produced by the left input, the query
+     * source being the empty path.
+     */
+    public List<List<ReferenceAttribute>> getLeftPaths() {
+        List<List<ReferenceAttribute>> paths = new ArrayList<>();
+        PlanNode current = left;
+        while (!current.getInputs().isEmpty()) {
+            if (current instanceof Join) {
+                paths.add(((Join) current).path);
+                current = ((Join) current).left;
+            } else {
+                current = current.getInputs().get(0);
+            }
+        }
+        paths.add(List.of());
+        return paths;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of(left, right);
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return new Join(inputs.get(0), inputs.get(1), path);
+    }
+
+    @Override
+    public String describe() {
+        return "Join " + path.stream().map(ReferenceAttribute::getName).collect(Collectors.joining("."));
+    }
+}
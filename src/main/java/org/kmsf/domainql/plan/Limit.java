@@ -0,0 +1,39 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+/**
+ * Keeps the first rows of its input.
+ */
+public class Limit extends PlanNode {
+    private final PlanNode input;
+    private final int limit;
+
+    public Limit(PlanNode input, int limit) {
+        this.input = input;
+        this.limit = limit;
+    }
+
+    public PlanNode getInput() {
+        return input;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of(input);
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return new Limit(inputs.get(0), limit);
+    }
+
+    @Override
+    public String describe() {
+        return "Limit " + limit;
+    }
+}
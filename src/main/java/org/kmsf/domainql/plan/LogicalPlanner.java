@@ -0,0 +1,60 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Lowers a query to its logical plan:
+ * <pre>
+ * Limit(Sort(Filter[having](Aggregate|Project(Filter(Join(...Join(Scan, Scan)...))))))
+ * </pre>
+ * where each reference path the query navigates becomes one join, parents
+ * first, and a source query becomes a {@link Subquery}.
+ */
+public class LogicalPlanner {
+
+    private LogicalPlanner() {
+    }
+
+    /**
+     * Whether the query can be lowered: grouping sets and keyset pagination
+     * have no operator of their own yet.
+     */
+    public static boolean supports(Query query) {
+        return query.getGroupingSets() == null && query.getContinuationToken() == null;
+    }
+
+    public static PlanNode lower(Query query) {
+        if (!supports(query)) {
+            throw new IllegalArgumentException("Query '" + query.getName()
+                + "' uses grouping sets or pagination, which have no logical plan");
+        }
+        PlanNode plan = query.getSourceDomain() instanceof Query
+            ? new Subquery((Query) query.getSourceDomain())
+            : new Scan(query.getSourceDomain());
+        for (List<ReferenceAttribute> path : Expressions.referencePaths(query)) {
+            plan = new Join(plan, new Scan(path.get(path.size() - 1).getReferenceDomain()), path);
+        }
+        if (query.getFilter() != null) {
+            plan = new Filter(plan, query.getFilter());
+        }
+        if (Expressions.hasAggregate(query)) {
+            plan = new Aggregate(plan, query.getProjections());
+        } else {
+            plan = new Project(plan, query.getProjections());
+        }
+        if (query.getHaving() != null) {
+            plan = new Filter(plan, query.getHaving());
+        }
+        if (!query.getOrderBy().isEmpty()) {
+            plan = new Sort(plan, query.getOrderBy());
+        }
+        if (query.getLimit() != null) {
+            plan = new Limit(plan, query.getLimit());
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,30 @@
+package org.kmsf.domainql.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+
+/**
+ * Combines a filter over a filter into a single one.
+ */
+public class MergeFilters implements PlanRule {
+
+    @Override
+    public String getName() {
+        return "MergeFilters";
+    }
+
+    @Override
+    public PlanNode apply(PlanNode node) {
+        if (!(node instanceof Filter) || !(((Filter) node).getInput() instanceof Filter)) {
+            return node;
+        }
+        Filter outer = (Filter) node;
+        Filter inner = (Filter) outer.getInput();
+        List<Expression> conjuncts = new ArrayList<>(Expressions.conjuncts(inner.getCondition()));
+        conjuncts.addAll(Expressions.conjuncts(outer.getCondition()));
+        return new Filter(inner.getInput(), Expressions.and(conjuncts));
+    }
+}
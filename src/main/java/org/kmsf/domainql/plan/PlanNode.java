@@ -0,0 +1,39 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+/**
+ * Node of a logical plan: a relational operator over the rows of its inputs.
+ * Nodes are immutable; rewrites build new nodes with {@link #withInputs}.
+ */
+public abstract class PlanNode {
+
+    public abstract List<PlanNode> getInputs();
+
+    /**
+     * The same operator over other inputs, in the order of {@link #getInputs()}.
+     */
+    public abstract PlanNode withInputs(List<PlanNode> inputs);
+
+    /**
+     * One-line description of the operator, without its inputs.
+     */
+    public abstract String describe();
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        appendTo(sb, 0);
+        return sb.toString();
+    }
+
+    private void appendTo(StringBuilder sb, int depth) {
+        if (depth > 0) {
+            sb.append("\n");
+        }
+        sb.append("  ".repeat(depth)).append(describe());
+        for (PlanNode input : getInputs()) {
+            input.appendTo(sb, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.kmsf.domainql.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+
+/**
+ * Applies rules to every node of a plan, inputs first, until none of them
+ * changes it anymore. Each application is charged with the change of cost of
+ * the rewritten subtree (see {@link CostModel}), summed per rule over all the
+ * plans the optimizer processes: a positive saving means the rule pays off.
+ */
+public class PlanOptimizer {
+    public static final int MAX_PASSES = 100;
+
+    private final List<PlanRule> rules;
+    private final CostModel costModel;
+    private final Map<String, RuleStatistics> ruleStatistics = new LinkedHashMap<>();
+
+    public PlanOptimizer(StatisticsCatalog statistics) {
+        this(statistics, defaultRules());
+    }
+
+    public PlanOptimizer(StatisticsCatalog statistics, List<PlanRule> rules) {
+        this.rules = List.copyOf(rules);
+        this.costModel = new CostModel(statistics);
+        for (PlanRule rule : rules) {
+            ruleStatistics.put(rule.getName(), new RuleStatistics());
+        }
+    }
+
+    public static List<PlanRule> defaultRules() {
+        return List.of(new SimplifyFilter(), new PushFilterThroughJoin(), new MergeFilters());
+    }
+
+    public CostModel getCostModel() {
+        return costModel;
+    }
+
+    public PlanNode optimize(PlanNode plan) {
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            PlanNode rewritten = rewrite(plan);
+            if (rewritten == plan) {
+                return plan;
+            }
+            plan = rewritten;
+        }
+        return plan;
+    }
+
+    private PlanNode rewrite(PlanNode node) {
+        List<PlanNode> inputs = new ArrayList<>();
+        boolean changed = false;
+        for (PlanNode input : node.getInputs()) {
+            PlanNode rewritten = rewrite(input);
+            changed |= rewritten != input;
+            inputs.add(rewritten);
+        }
+        if (changed) {
+            node = node.withInputs(inputs);
+        }
+        for (PlanRule rule : rules) {
+            PlanNode rewritten = rule.apply(node);
+            if (rewritten != node) {
+                record(rule, costModel.cost(node) - costModel.cost(rewritten));
+                node = rewritten;
+            }
+        }
+        return node;
+    }
+
+    private synchronized void record(PlanRule rule, double saving) {
+        ruleStatistics.computeIfAbsent(rule.getName(), name -> new RuleStatistics()).record(saving);
+    }
+
+    /**
+     * Applications and estimated savings of each rule, by rule name.
+     */
+    public synchronized Map<String, RuleStatistics> getRuleStatistics() {
+        Map<String, RuleStatistics> copy = new LinkedHashMap<>();
+        ruleStatistics.forEach((name, statistics) -> copy.put(name, statistics.copy()));
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public static class RuleStatistics {
+        private int applications;
+        private double saving;
+
+        void record(double saving) {
+            this.applications++;
+            this.saving += saving;
+        }
+
+        RuleStatistics copy() {
+            RuleStatistics copy = new RuleStatistics();
+            copy.applications = applications;
+            copy.saving = saving;
+            return copy;
+        }
+
+        public int getApplications() {
+            return applications;
+        }
+
+        /**
+         * Total decrease of the estimated cost, negative if the rule made
+         * plans costlier.
+         */
+        public double getSaving() {
+            return saving;
+        }
+    }
+}
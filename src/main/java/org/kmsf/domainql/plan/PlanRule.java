@@ -0,0 +1,14 @@
+package org.kmsf.domainql.plan;
+
+/**
+ * Rewrite of a plan node into an equivalent one.
+ */
+public interface PlanRule {
+
+    String getName();
+
+    /**
+     * The rewritten node, or the node itself if the rule does not apply.
+     */
+    PlanNode apply(PlanNode node);
+}
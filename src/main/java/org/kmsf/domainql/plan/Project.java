@@ -0,0 +1,44 @@
+package org.kmsf.domainql.plan;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.Expression;
+
+/**
+ * Computes the named columns of each row of its input.
+ */
+public class Project extends PlanNode {
+    private final PlanNode input;
+    private final Map<String, Expression> projections;
+
+    public Project(PlanNode input, Map<String, Expression> projections) {
+        this.input = input;
+        this.projections = new LinkedHashMap<>(projections);
+    }
+
+    public PlanNode getInput() {
+        return input;
+    }
+
+    public Map<String, Expression> getProjections() {
+        return Collections.unmodifiableMap(projections);
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of(input);
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return new Project(inputs.get(0), projections);
+    }
+
+    @Override
+    public String describe() {
+        return "Project " + String.join(", ", projections.keySet());
+    }
+}
@@ -0,0 +1,53 @@
+package org.kmsf.domainql.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Moves the conjuncts of a filter over an inner join to the input whose rows
+ * they read, so that rows are discarded before being joined.
+ */
+public class PushFilterThroughJoin implements PlanRule {
+
+    @Override
+    public String getName() {
+        return "PushFilterThroughJoin";
+    }
+
+    @Override
+    public PlanNode apply(PlanNode node) {
+        if (!(node instanceof Filter) || !(((Filter) node).getInput() instanceof Join)) {
+            return node;
+        }
+        Join join = (Join) ((Filter) node).getInput();
+        List<List<ReferenceAttribute>> leftPaths = join.getLeftPaths();
+        List<Expression> kept = new ArrayList<>();
+        List<Expression> left = new ArrayList<>();
+        List<Expression> right = new ArrayList<>();
+        for (Expression conjunct : Expressions.conjuncts(((Filter) node).getCondition())) {
+            Set<List<ReferenceAttribute>> paths = Expressions.attributePaths(conjunct);
+            if (paths == null || paths.isEmpty()) {
+                kept.add(conjunct);
+            } else if (paths.equals(Set.of(join.getPath()))) {
+                right.add(conjunct);
+            } else if (leftPaths.containsAll(paths)) {
+                left.add(conjunct);
+            } else {
+                kept.add(conjunct);
+            }
+        }
+        if (left.isEmpty() && right.isEmpty()) {
+            return node;
+        }
+        PlanNode pushed = new Join(
+            left.isEmpty() ? join.getLeft() : new Filter(join.getLeft(), Expressions.and(left)),
+            right.isEmpty() ? join.getRight() : new Filter(join.getRight(), Expressions.and(right)),
+            join.getPath());
+        return kept.isEmpty() ? pushed : new Filter(pushed, Expressions.and(kept));
+    }
+}
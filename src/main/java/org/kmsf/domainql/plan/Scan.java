@@ -0,0 +1,35 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.Domain;
+
+/**
+ * Reads the rows of a domain's table.
+ */
+public class Scan extends PlanNode {
+    private final Domain domain;
+
+    public Scan(Domain domain) {
+        this.domain = domain;
+    }
+
+    public Domain getDomain() {
+        return domain;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of();
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return this;
+    }
+
+    @Override
+    public String describe() {
+        return "Scan " + domain.getName();
+    }
+}
@@ -0,0 +1,29 @@
+package org.kmsf.domainql.plan;
+
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.optimizer.ExpressionSimplifier;
+
+/**
+ * Simplifies the condition of a filter (see {@link ExpressionSimplifier}),
+ * removing the filter when it always holds.
+ */
+public class SimplifyFilter implements PlanRule {
+
+    @Override
+    public String getName() {
+        return "SimplifyFilter";
+    }
+
+    @Override
+    public PlanNode apply(PlanNode node) {
+        if (!(node instanceof Filter)) {
+            return node;
+        }
+        Filter filter = (Filter) node;
+        Expression simplified = ExpressionSimplifier.simplify(filter.getCondition());
+        if (ExpressionSimplifier.isTrue(simplified)) {
+            return filter.getInput();
+        }
+        return simplified.equals(filter.getCondition()) ? node : new Filter(filter.getInput(), simplified);
+    }
+}
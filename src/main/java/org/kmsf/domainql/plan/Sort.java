@@ -0,0 +1,41 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.Query;
+
+/**
+ * Orders the rows of its input.
+ */
+public class Sort extends PlanNode {
+    private final PlanNode input;
+    private final List<Query.OrderBy> orderBy;
+
+    public Sort(PlanNode input, List<Query.OrderBy> orderBy) {
+        this.input = input;
+        this.orderBy = List.copyOf(orderBy);
+    }
+
+    public PlanNode getInput() {
+        return input;
+    }
+
+    public List<Query.OrderBy> getOrderBy() {
+        return orderBy;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of(input);
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return new Sort(inputs.get(0), orderBy);
+    }
+
+    @Override
+    public String describe() {
+        return "Sort " + orderBy.size() + " key(s)";
+    }
+}
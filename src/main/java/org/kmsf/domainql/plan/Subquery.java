@@ -0,0 +1,35 @@
+package org.kmsf.domainql.plan;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.Query;
+
+/**
+ * Reads the rows of a nested query, planned on its own.
+ */
+public class Subquery extends PlanNode {
+    private final Query query;
+
+    public Subquery(Query query) {
+        this.query = query;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    @Override
+    public List<PlanNode> getInputs() {
+        return List.of();
+    }
+
+    @Override
+    public PlanNode withInputs(List<PlanNode> inputs) {
+        return this;
+    }
+
+    @Override
+    public String describe() {
+        return "Subquery " + query.getName();
+    }
+}
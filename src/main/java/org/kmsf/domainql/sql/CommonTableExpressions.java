@@ -0,0 +1,151 @@
+package org.kmsf.domainql.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Registry of the nested queries of a statement, shared by the generators of
+ * the outer query and of every WITH entry so that each distinct query is
+ * computed once, whatever the number of places it is used.
+ */
+class CommonTableExpressions {
+    private final Map<Query, String> names = new LinkedHashMap<>();
+    private final Map<Query, Integer> uses = new HashMap<>();
+    private final Set<String> usedNames = new HashSet<>();
+    private final Map<Query, Set<String>> columns = new HashMap<>();
+
+    /**
+     * Records one more use of the query and returns its WITH entry name.
+     */
+    String use(Query query) {
+        uses.merge(query, 1, Integer::sum);
+        return names.computeIfAbsent(query, q -> {
+            String name = q.getName();
+            int counter = 1;
+            while (!usedNames.add(name)) {
+                name = q.getName() + "_" + (++counter);
+            }
+            return name;
+        });
+    }
+
+    /**
+     * Records that a column of the query is read by one of its users.
+     */
+    void reference(Query query, String column) {
+        columns.computeIfAbsent(query, q -> new HashSet<>()).add(column);
+    }
+
+    /**
+     * Records a use reading every column, such as a nested query expression.
+     */
+    void referenceAll(Query query) {
+        columns.computeIfAbsent(query, q -> new HashSet<>()).addAll(query.getProjections().keySet());
+    }
+
+    /**
+     * The query restricted to the projections its users read. Group by keys
+     * are always kept since dropping one would merge groups, and so is one
+     * aggregate at least, without which the grouping would disappear. Every
+     * join is kept, through one of the projections needing it: an inner join
+     * filters out rows without a match and repeats those with several, so
+     * dropping it would change the rows of the entry, or the rows its
+     * aggregates see.
+     */
+    Query pruned(Query query) {
+        Set<String> referenced = columns.getOrDefault(query, Collections.emptySet());
+        boolean aggregate = Expressions.hasAggregate(query);
+        Set<String> kept = new HashSet<>();
+        Set<List<ReferenceAttribute>> keptJoins = new HashSet<>();
+        if (query.getFilter() != null) {
+            keptJoins.addAll(Expressions.referencePaths(query.getFilter()));
+        }
+        if (query.getHaving() != null) {
+            keptJoins.addAll(Expressions.referencePaths(query.getHaving()));
+        }
+        for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+            if (referenced.contains(projection.getKey())
+                || (aggregate && !Expressions.isAggregate(projection.getValue()))) {
+                kept.add(projection.getKey());
+                keptJoins.addAll(Expressions.referencePaths(projection.getValue()));
+            }
+        }
+        boolean keptAggregate = false;
+        for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
+            Set<List<ReferenceAttribute>> joins = Expressions.referencePaths(projection.getValue());
+            if (!keptJoins.containsAll(joins)) {
+                kept.add(projection.getKey());
+                keptJoins.addAll(joins);
+            }
+            keptAggregate |= kept.contains(projection.getKey()) && Expressions.isAggregate(projection.getValue());
+        }
+        if (aggregate && !keptAggregate) {
+            // without any aggregate the group by, hence the grouping, would disappear
+            query.getProjections().entrySet().stream()
+                .filter(p -> Expressions.isAggregate(p.getValue()))
+                .findFirst()
+                .ifPresent(p -> kept.add(p.getKey()));
+        }
+        if (kept.isEmpty() && !query.getProjections().isEmpty()) {
+            // keep the statement valid (and the row count) when no column is read
+            kept.add(query.getProjections().keySet().iterator().next());
+        }
+        if (kept.size() == query.getProjections().size()) {
+            return query;
+        }
+        return query.withProjections(kept);
+    }
+
+    boolean isEmpty() {
+        return names.isEmpty();
+    }
+
+    String getName(Query query) {
+        return names.get(query);
+    }
+
+    int getUses(Query query) {
+        return uses.getOrDefault(query, 0);
+    }
+
+    /**
+     * A subquery worth materializing once rather than inlining at each use.
+     */
+    boolean isExpensive(Query query) {
+        return Expressions.hasAggregate(query) || !Expressions.referencePaths(query).isEmpty();
+    }
+
+    /**
+     * All queries nested (transitively) in the root, every query listed before
+     * the queries it uses, so that generating them in this order discovers all
+     * the uses of a query before its own turn.
+     */
+    static List<Query> referrersFirst(Query root) {
+        List<Query> postOrder = new ArrayList<>();
+        visit(root, new HashSet<>(), postOrder);
+        postOrder.remove(root);
+        Collections.reverse(postOrder);
+        return postOrder;
+    }
+
+    private static void visit(Query query, Set<Query> visited, List<Query> postOrder) {
+        if (!visited.add(query)) {
+            return;
+        }
+        for (Query nested : Expressions.nestedQueries(query)) {
+            visit(nested, visited, postOrder);
+        }
+        postOrder.add(query);
+    }
+}
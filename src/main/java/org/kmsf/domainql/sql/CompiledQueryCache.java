@@ -0,0 +1,332 @@
+package org.kmsf.domainql.sql;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Fingerprint;
+import org.kmsf.domainql.expression.ParameterExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.parser.QueryCodec;
+
+/**
+ * Compiled queries (see {@link QueryTemplate}) kept on disk from one run to
+ * the next, so that a restarted service does not compile its hot queries
+ * again. The file of the cache is named after the fingerprint of the catalog
+ * the queries were compiled against: a changed catalog starts from an empty
+ * cache.
+ *
+ * <p>Opening the cache maps its file and indexes the entries; an entry is
+ * decoded when first looked up. Entries are keyed by the fingerprint of the
+ * query and hold the values of its literals, which are part of the
+ * statement: a query only differing from the cached one by these values is
+ * compiled again, and replaces it. Queries run with varying values are best
+ * written with parameters.
+ */
+public class CompiledQueryCache {
+    static final int MAGIC = 0x44514343; // "DQCC"
+    static final int FORMAT_VERSION = 1;
+
+    private final Path file;
+    private final DomainRegistry registry;
+    private final Fingerprint catalog;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private CompiledQueryCache(Path file, DomainRegistry registry, Fingerprint catalog) {
+        this.file = file;
+        this.registry = registry;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Opens the cache of the given directory for the catalog. A missing,
+     * unreadable or outdated file gives an empty cache, which replaces it
+     * when saved.
+     */
+    public static CompiledQueryCache open(Path directory, DomainRegistry registry) {
+        Fingerprint catalog = registry.fingerprint();
+        CompiledQueryCache cache = new CompiledQueryCache(directory.resolve(catalog.toHex() + ".dqc"), registry, catalog);
+        if (Files.isRegularFile(cache.file)) {
+            cache.load();
+        }
+        return cache;
+    }
+
+    private void load() {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 28 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                || buffer.getLong() != catalog.getHigh() || buffer.getLong() != catalog.getLow()) {
+                return;
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count && buffer.remaining() >= 20; i++) {
+                Key key = new Key(buffer.getLong(), buffer.getLong());
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    break; // truncated: the entries before are kept
+                }
+                entries.put(key, new Entry(buffer.slice(buffer.position(), length)));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Fingerprint getCatalogFingerprint() {
+        return catalog;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The cached compilation of the query, or null if it has none.
+     */
+    public QueryTemplate get(Query query) {
+        return get(query, query.fingerprint());
+    }
+
+    private QueryTemplate get(Query query, Fingerprint fingerprint) {
+        Key key = new Key(fingerprint);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return entry.template(query, fingerprint.getParameters());
+        } catch (IllegalStateException e) {
+            // a corrupt entry is a miss, replaced once the query is compiled again
+            entries.remove(key, entry);
+            return null;
+        }
+    }
+
+    /**
+     * The cached compilation of the query, compiling and caching it if there
+     * is none. Queries reading unregistered domains are compiled but not
+     * cached, since the fingerprint of the catalog does not cover them.
+     */
+    public QueryTemplate compile(Query query) {
+        Fingerprint fingerprint = query.fingerprint();
+        QueryTemplate template = get(query, fingerprint);
+        if (template != null) {
+            return template;
+        }
+        template = QueryTemplate.compile(query);
+        byte[] encoded;
+        try {
+            encoded = encode(fingerprint.getParameters(), template);
+        } catch (IllegalArgumentException e) {
+            return template;
+        }
+        entries.put(new Key(fingerprint), new Entry(encoded, fingerprint.getParameters(), template));
+        modified = true;
+        return template;
+    }
+
+    /**
+     * The cached queries, decoded on demand, to compile or prepare them ahead
+     * of their first use.
+     */
+    public List<Query> getQueries() {
+        List<Query> queries = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            queries.add(entry.query());
+        }
+        return queries;
+    }
+
+    /**
+     * Writes the cache to its file, replacing it at once, if queries were
+     * compiled since it was opened.
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                List<Map.Entry<Key, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(catalog.getHigh());
+                out.writeLong(catalog.getLow());
+                out.writeInt(snapshot.size());
+                for (Map.Entry<Key, Entry> entry : snapshot) {
+                    out.writeLong(entry.getKey().high);
+                    out.writeLong(entry.getKey().low);
+                    ByteBuffer encoded = entry.getValue().encoded.duplicate();
+                    out.writeInt(encoded.remaining());
+                    byte[] bytes = new byte[encoded.remaining()];
+                    encoded.get(bytes);
+                    out.write(bytes);
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to save the compiled query cache to " + file, e);
+        }
+    }
+
+    /*
+     * An entry: the values of the query's literals, its statement, what its
+     * placeholders take, then the query itself.
+     */
+    private byte[] encode(List<Object> literals, QueryTemplate template) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            QueryCodec.writeValues(literals, out);
+            QueryCodec.writeString(template.getSql(), out);
+            List<Object> placeholders = template.placeholders();
+            QueryCodec.writeSize(placeholders.size(), out);
+            for (Object placeholder : placeholders) {
+                if (placeholder instanceof ParameterExpression) {
+                    out.writeByte('p');
+                    QueryCodec.writeString(((ParameterExpression) placeholder).getName(), out);
+                    QueryCodec.writeString(((ParameterExpression) placeholder).getType().toString(), out);
+                } else {
+                    out.writeByte('v');
+                    QueryCodec.writeValue(placeholder, out);
+                }
+            }
+            new QueryCodec(registry).writeQuery(template.getQuery(), out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Key {
+        private final long high;
+        private final long low;
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        Key(Fingerprint fingerprint) {
+            this(fingerprint.getHigh(), fingerprint.getLow());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return high == that.high && low == that.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+    }
+
+    private final class Entry {
+        private final ByteBuffer encoded;
+        private List<Object> literals;
+        private String sql;
+        private List<Object> placeholders;
+        private QueryTemplate template;
+        private Query query;
+        private int queryOffset;
+
+        // read from the file, decoded when first used
+        Entry(ByteBuffer encoded) {
+            this.encoded = encoded;
+        }
+
+        Entry(byte[] encoded, List<Object> literals, QueryTemplate template) {
+            this.encoded = ByteBuffer.wrap(encoded);
+            this.literals = literals;
+            this.template = template;
+            this.query = template.getQuery();
+        }
+
+        synchronized QueryTemplate template(Query query, List<Object> literals) {
+            if (this.literals == null) {
+                decode();
+            }
+            if (!this.literals.equals(literals)) {
+                return null;
+            }
+            if (template == null) {
+                // an equal fingerprint with equal values: the query is the one compiled
+                template = new QueryTemplate(query, sql, placeholders);
+            }
+            return template;
+        }
+
+        synchronized Query query() {
+            if (query == null) {
+                if (literals == null) {
+                    decode();
+                }
+                try {
+                    DataInputStream in = input();
+                    in.skipNBytes(queryOffset);
+                    query = new QueryCodec(registry).readQuery(in);
+                } catch (IOException | RuntimeException e) {
+                    throw new IllegalStateException("Corrupt compiled query cache " + file, e);
+                }
+            }
+            return query;
+        }
+
+        private void decode() {
+            try {
+                DataInputStream in = input();
+                int length = encoded.remaining();
+                List<Object> literals = QueryCodec.readValues(in);
+                sql = QueryCodec.readString(in);
+                int count = QueryCodec.readSize(in);
+                placeholders = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    if (in.readByte() == 'p') {
+                        String name = QueryCodec.readString(in);
+                        placeholders.add(new ParameterExpression(name, ScalarType.valueOf(QueryCodec.readString(in))));
+                    } else {
+                        placeholders.add(QueryCodec.readValue(in));
+                    }
+                }
+                queryOffset = length - in.available();
+                this.literals = literals;
+            } catch (IOException | RuntimeException e) {
+                throw new IllegalStateException("Corrupt compiled query cache " + file, e);
+            }
+        }
+
+        private DataInputStream input() {
+            return QueryCodec.input(encoded);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.kmsf.domainql.sql;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.Query;
+
+/**
+ * One SQL statement answering several compatible queries at once, together
+ * with the mapping from each member query's projection aliases to the
+ * columns of the fused statement.
+ */
+public class FusedQuery {
+    private final Query query;
+    private final Map<Query, Map<String, String>> columnMappings;
+    private final String sql;
+    private final List<Object> parameters;
+
+    FusedQuery(Query query, Map<Query, Map<String, String>> columnMappings, String sql, List<Object> parameters) {
+        this.query = query;
+        this.columnMappings = columnMappings;
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public List<Query> getMembers() {
+        return List.copyOf(columnMappings.keySet());
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Member projection alias to fused column alias, in the member's projection order.
+     */
+    public Map<String, String> getColumnMapping(Query member) {
+        Map<String, String> mapping = columnMappings.get(member);
+        if (mapping == null) {
+            throw new IllegalArgumentException("Query '" + member.getName() + "' is not part of this fused query");
+        }
+        return Collections.unmodifiableMap(mapping);
+    }
+
+    /**
+     * Extracts the row of a member query from a row of the fused statement.
+     */
+    public Map<String, Object> split(Query member, Map<String, Object> fusedRow) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        getColumnMapping(member).forEach((alias, column) -> row.put(alias, fusedRow.get(column)));
+        return row;
+    }
+}
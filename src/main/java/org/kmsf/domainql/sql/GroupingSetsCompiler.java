@@ -0,0 +1,177 @@
+package org.kmsf.domainql.sql;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.GroupingExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Batch compiler consolidating aggregate queries that share source, filter and
+ * joins but group at different granularities into one
+ * {@code GROUP BY GROUPING SETS (...)} statement. Rows are routed back to the
+ * original queries by the value of {@code GROUPING(k1, ..., kn)}.
+ *
+ * Non aggregate, ordered or paginated queries, and those with a having clause
+ * (which would filter the groups of the other granularities too), are
+ * compiled on their own.
+ */
+public class GroupingSetsCompiler {
+    public static final String GROUPING_ID = "grouping_id";
+
+    public static List<GroupingSetsQuery> compile(List<Query> queries) {
+        Map<Object, List<Query>> groups = new LinkedHashMap<>();
+        for (Query query : queries) {
+            groups.computeIfAbsent(groupKey(query), k -> new ArrayList<>()).add(query);
+        }
+
+        List<GroupingSetsQuery> result = new ArrayList<>();
+        for (List<Query> group : groups.values()) {
+            result.add(consolidate(group));
+        }
+        return result;
+    }
+
+    static GroupingSetsQuery consolidate(List<Query> members) {
+        Query first = members.get(0);
+
+        // union of the group by keys, in order of appearance, and each member's key set
+        Set<Expression> keys = new LinkedHashSet<>();
+        Map<Query, Set<Expression>> memberKeys = new LinkedHashMap<>();
+        for (Query member : members) {
+            Set<Expression> groupBy = new HashSet<>();
+            for (Expression projection : member.getProjections().values()) {
+                if (!Expressions.isAggregate(projection)) {
+                    groupBy.add(projection);
+                    keys.add(projection);
+                }
+            }
+            memberKeys.put(member, groupBy);
+        }
+        boolean groupingSets = new HashSet<>(memberKeys.values()).size() > 1;
+
+        Query fused = new Query(fusedName(members), first.getSourceDomain());
+        fused.setFilter(first.getFilter());
+        // only a query compiled on its own has one
+        fused.setHaving(first.getHaving());
+        Map<Expression, String> columns = new LinkedHashMap<>();
+        for (Expression key : keys) {
+            columns.put(key, addProjection(fused, aliasOf(members, key), key));
+        }
+        Map<Query, Map<String, String>> mappings = new LinkedHashMap<>();
+        for (Query member : members) {
+            Map<String, String> mapping = new LinkedHashMap<>();
+            for (Map.Entry<String, Expression> projection : member.getProjections().entrySet()) {
+                String column = columns.get(projection.getValue());
+                if (column == null) {
+                    column = addProjection(fused, projection.getKey(), projection.getValue());
+                    columns.put(projection.getValue(), column);
+                }
+                mapping.put(projection.getKey(), column);
+            }
+            mappings.put(member, mapping);
+        }
+
+        String groupingIdColumn = null;
+        Map<Query, Integer> groupingIds = new LinkedHashMap<>();
+        if (groupingSets) {
+            List<Expression> keyList = new ArrayList<>(keys);
+            groupingIdColumn = addProjection(fused, GROUPING_ID, new GroupingExpression(keyList));
+
+            Set<List<Expression>> sets = new LinkedHashSet<>();
+            for (Map.Entry<Query, Set<Expression>> entry : memberKeys.entrySet()) {
+                List<Expression> set = new ArrayList<>();
+                int groupingId = 0;
+                for (int i = 0; i < keyList.size(); i++) {
+                    if (entry.getValue().contains(keyList.get(i))) {
+                        set.add(keyList.get(i));
+                    } else {
+                        groupingId |= 1 << (keyList.size() - 1 - i);
+                    }
+                }
+                sets.add(set);
+                groupingIds.put(entry.getKey(), groupingId);
+            }
+            fused.setGroupingSets(new ArrayList<>(sets));
+        } else {
+            members.forEach(member -> groupingIds.put(member, 0));
+        }
+
+        SQLGenerator generator = new SQLGenerator(fused);
+        String sql = generator.generateSQL();
+        return new GroupingSetsQuery(fused, mappings, sql, generator.getParameters(), groupingIdColumn, groupingIds);
+    }
+
+    private static Object groupKey(Query query) {
+        if (!Expressions.hasAggregate(query) || !query.getOrderBy().isEmpty() || query.getLimit() != null
+            || query.getGroupingSets() != null || query.getHaving() != null) {
+            return query;
+        }
+        return new GroupKey(query.getSourceDomain(), query.getFilter(), Expressions.referencePaths(query));
+    }
+
+    private static String aliasOf(List<Query> members, Expression key) {
+        for (Query member : members) {
+            String alias = member.findProjectionAlias(key);
+            if (alias != null) {
+                return alias;
+            }
+        }
+        throw new IllegalStateException("Group by key is not projected by any member");
+    }
+
+    private static String addProjection(Query fused, String alias, Expression expression) {
+        String candidate = alias;
+        int counter = 1;
+        while (fused.getProjections().containsKey(candidate)) {
+            candidate = alias + "_" + (++counter);
+        }
+        fused.addProjection(candidate, expression);
+        return candidate;
+    }
+
+    private static String fusedName(List<Query> members) {
+        if (members.size() == 1) {
+            return members.get(0).getName();
+        }
+        StringBuilder name = new StringBuilder("grouping_sets");
+        for (Query member : members) {
+            name.append("_").append(member.getName());
+        }
+        return name.toString();
+    }
+
+    private static class GroupKey {
+        private final Domain source;
+        private final Expression filter;
+        private final Set<List<ReferenceAttribute>> joins;
+
+        GroupKey(Domain source, Expression filter, Set<List<ReferenceAttribute>> joins) {
+            this.source = source;
+            this.filter = filter;
+            this.joins = joins;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupKey)) return false;
+            GroupKey that = (GroupKey) o;
+            return source == that.source && Objects.equals(filter, that.filter) && joins.equals(that.joins);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, filter, joins);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.kmsf.domainql.sql;
+
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.Query;
+
+/**
+ * Fused aggregate statement computing several group by granularities with
+ * GROUPING SETS. Each row carries a grouping id identifying the grouping set,
+ * hence the member queries, it belongs to.
+ */
+public class GroupingSetsQuery extends FusedQuery {
+    private final String groupingIdColumn;
+    private final Map<Query, Integer> groupingIds;
+
+    GroupingSetsQuery(Query query, Map<Query, Map<String, String>> columnMappings, String sql, List<Object> parameters,
+                      String groupingIdColumn, Map<Query, Integer> groupingIds) {
+        super(query, columnMappings, sql, parameters);
+        this.groupingIdColumn = groupingIdColumn;
+        this.groupingIds = groupingIds;
+    }
+
+    /**
+     * Alias of the GROUPING(...) column, or null when all members share a
+     * single grouping set and every row belongs to every member.
+     */
+    public String getGroupingIdColumn() {
+        return groupingIdColumn;
+    }
+
+    public int getGroupingId(Query member) {
+        Integer groupingId = groupingIds.get(member);
+        if (groupingId == null) {
+            throw new IllegalArgumentException("Query '" + member.getName() + "' is not part of this grouping sets query");
+        }
+        return groupingId;
+    }
+
+    public boolean belongsTo(Query member, Map<String, Object> row) {
+        if (groupingIdColumn == null) {
+            return groupingIds.containsKey(member);
+        }
+        Object groupingId = row.get(groupingIdColumn);
+        return groupingId != null && ((Number) groupingId).intValue() == getGroupingId(member);
+    }
+}
@@ -0,0 +1,209 @@
+package org.kmsf.domainql.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.sql.SQLGenerator.DomainPath;
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+
+/**
+ * Orders the joins of a query by their estimated effect on the number of
+ * rows: at each step, among the paths whose parent is already joined, the one
+ * multiplying the intermediate result by the smallest factor comes next. A
+ * to-one join keeps at most one row per input row, so its factor is the
+ * selectivity of the filter conjuncts reading it; a to-many join multiplies
+ * the rows by the estimated matches per row. Selective dimensions are thus
+ * joined first and fanning-out joins last.
+ *
+ * <p>Each step also records which input a hash join should build its table
+ * from: the smaller of the intermediate result and the filtered joined table.
+ */
+public class JoinPlanner {
+    private final StatisticsCatalog statistics;
+
+    public JoinPlanner(StatisticsCatalog statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * The cheapest order of the paths, the first of which is the query source.
+     * The paths whose parent is joined wait in a queue by factor, so that
+     * planning n joins takes O(n log n).
+     */
+    public JoinPlan plan(Query query, List<DomainPath> paths) {
+        Map<DomainPath, Double> localSelectivities = localSelectivities(query, paths);
+        Map<DomainPath, List<Candidate>> children = new HashMap<>();
+        List<Candidate> candidates = new ArrayList<>(paths.size() - 1);
+        for (int i = 1; i < paths.size(); i++) {
+            DomainPath path = paths.get(i);
+            Candidate candidate = new Candidate(path, factor(path, localSelectivities), i);
+            candidates.add(candidate);
+            children.computeIfAbsent(path.parent, p -> new ArrayList<>()).add(candidate);
+        }
+
+        // the smallest factor first, and among equal factors the path read first
+        PriorityQueue<Candidate> ready = new PriorityQueue<>(
+            Comparator.comparingDouble((Candidate c) -> c.factor).thenComparingInt(c -> c.index));
+        Set<DomainPath> joined = new HashSet<>();
+        List<DomainPath> order = new ArrayList<>(paths.size());
+        order.add(paths.get(0));
+        joined.add(paths.get(0));
+        ready.addAll(children.getOrDefault(paths.get(0), Collections.emptyList()));
+        while (!ready.isEmpty()) {
+            Candidate best = ready.poll();
+            if (!joined.add(best.path)) {
+                continue;
+            }
+            order.add(best.path);
+            ready.addAll(children.getOrDefault(best.path, Collections.emptyList()));
+        }
+        // paths whose parent is not joined: keep them as they are
+        for (Candidate candidate : candidates) {
+            if (!joined.contains(candidate.path)) {
+                order.add(candidate.path);
+            }
+        }
+        return estimate(query, order);
+    }
+
+    /**
+     * The estimates of the given join order, left as it is.
+     */
+    public JoinPlan estimate(Query query, List<DomainPath> order) {
+        Map<DomainPath, Double> localSelectivities = localSelectivities(query, order);
+        List<JoinStep> steps = new ArrayList<>();
+        double rows = 0;
+        for (DomainPath path : order) {
+            double tableRows = statistics.getRowCount(path.domain) * localSelectivities.getOrDefault(path, 1.0);
+            if (path.parent == null) {
+                rows = tableRows;
+                steps.add(new JoinStep(path, tableRows, rows, false));
+            } else {
+                double input = rows;
+                rows = input * factor(path, localSelectivities);
+                steps.add(new JoinStep(path, tableRows, rows, tableRows <= input));
+            }
+        }
+        return new JoinPlan(steps);
+    }
+
+    private double factor(DomainPath path, Map<DomainPath, Double> localSelectivities) {
+        double local = localSelectivities.getOrDefault(path, 1.0);
+        if (path.reference.isToOne()) {
+            return local;
+        }
+        return statistics.getRowCount(path.domain) * local * statistics.selectivity(path.reference.getJoinCondition());
+    }
+
+    /*
+     * Combined selectivity of the filter conjuncts reading a single path.
+     */
+    private Map<DomainPath, Double> localSelectivities(Query query, List<DomainPath> paths) {
+        Map<List<ReferenceAttribute>, DomainPath> byReferences = new HashMap<>();
+        for (DomainPath path : paths) {
+            byReferences.put(references(path), path);
+        }
+        Map<DomainPath, Double> selectivities = new HashMap<>();
+        for (Expression conjunct : Expressions.conjuncts(query.getFilter())) {
+            Set<List<ReferenceAttribute>> read = Expressions.attributePaths(conjunct);
+            if (read == null || read.size() != 1) {
+                continue;
+            }
+            DomainPath path = byReferences.get(read.iterator().next());
+            if (path != null) {
+                selectivities.merge(path, statistics.selectivity(conjunct), (a, b) -> a * b);
+            }
+        }
+        return selectivities;
+    }
+
+    private static List<ReferenceAttribute> references(DomainPath path) {
+        List<ReferenceAttribute> references = new ArrayList<>();
+        for (DomainPath current = path; current.parent != null; current = current.parent) {
+            references.add(current.reference);
+        }
+        Collections.reverse(references);
+        return references;
+    }
+
+    private static class Candidate {
+        final DomainPath path;
+        final double factor;
+        final int index;
+
+        Candidate(DomainPath path, double factor, int index) {
+            this.path = path;
+            this.factor = factor;
+            this.index = index;
+        }
+    }
+
+    public static class JoinStep {
+        private final DomainPath path;
+        private final double tableRows;
+        private final double outputRows;
+        private final boolean buildJoined;
+
+        JoinStep(DomainPath path, double tableRows, double outputRows, boolean buildJoined) {
+            this.path = path;
+            this.tableRows = tableRows;
+            this.outputRows = outputRows;
+            this.buildJoined = buildJoined;
+        }
+
+        public DomainPath getPath() {
+            return path;
+        }
+
+        /**
+         * Estimated rows of the joined table once its own conditions apply.
+         */
+        public double getTableRows() {
+            return tableRows;
+        }
+
+        /**
+         * Estimated rows of the intermediate result after this step.
+         */
+        public double getOutputRows() {
+            return outputRows;
+        }
+
+        /**
+         * Whether a hash join builds its table from the joined table and
+         * probes it with the intermediate result, rather than the opposite.
+         */
+        public boolean isBuildJoined() {
+            return buildJoined;
+        }
+    }
+
+    public static class JoinPlan {
+        private final List<JoinStep> steps;
+
+        JoinPlan(List<JoinStep> steps) {
+            this.steps = steps;
+        }
+
+        public List<JoinStep> getSteps() {
+            return Collections.unmodifiableList(steps);
+        }
+
+        public List<DomainPath> getOrder() {
+            List<DomainPath> order = new ArrayList<>();
+            steps.forEach(step -> order.add(step.path));
+            return order;
+        }
+    }
+}
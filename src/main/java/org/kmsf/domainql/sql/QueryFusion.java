@@ -0,0 +1,148 @@
+package org.kmsf.domainql.sql;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * Batch compiler merging queries that only differ by their projections into a
+ * single statement.
+ *
+ * Queries are fused when they share the source domain, the filter and the set
+ * of joins (an extra inner join could drop rows), and, for aggregate queries,
+ * the same group by keys, having clause and grouping sets. Ordered or
+ * paginated queries are never fused.
+ * Identical projections are computed once and shared between members.
+ */
+public class QueryFusion {
+
+    public static List<FusedQuery> compile(List<Query> queries) {
+        Map<FusionKey, List<Query>> groups = new LinkedHashMap<>();
+        for (Query query : queries) {
+            groups.computeIfAbsent(FusionKey.of(query), k -> new ArrayList<>()).add(query);
+        }
+
+        List<FusedQuery> result = new ArrayList<>();
+        for (List<Query> group : groups.values()) {
+            result.add(fuse(group));
+        }
+        return result;
+    }
+
+    static FusedQuery fuse(List<Query> members) {
+        Query first = members.get(0);
+        Query fused = new Query(fusedName(members), first.getSourceDomain());
+        fused.setFilter(first.getFilter());
+        fused.setHaving(first.getHaving());
+        fused.setGroupingSets(first.getGroupingSets());
+
+        Map<Expression, String> columns = new LinkedHashMap<>();
+        Map<Query, Map<String, String>> mappings = new LinkedHashMap<>();
+        for (Query member : members) {
+            Map<String, String> mapping = new LinkedHashMap<>();
+            for (Map.Entry<String, Expression> projection : member.getProjections().entrySet()) {
+                String column = columns.get(projection.getValue());
+                if (column == null) {
+                    column = uniqueAlias(projection.getKey(), fused);
+                    fused.addProjection(column, projection.getValue());
+                    columns.put(projection.getValue(), column);
+                }
+                mapping.put(projection.getKey(), column);
+            }
+            mappings.put(member, mapping);
+        }
+
+        SQLGenerator generator = new SQLGenerator(fused);
+        String sql = generator.generateSQL();
+        return new FusedQuery(fused, mappings, sql, generator.getParameters());
+    }
+
+    private static String fusedName(List<Query> members) {
+        if (members.size() == 1) {
+            return members.get(0).getName();
+        }
+        StringBuilder name = new StringBuilder("fused");
+        for (Query member : members) {
+            name.append("_").append(member.getName());
+        }
+        return name.toString();
+    }
+
+    private static String uniqueAlias(String alias, Query fused) {
+        String candidate = alias;
+        int counter = 1;
+        while (fused.getProjections().containsKey(candidate)) {
+            candidate = alias + "_" + (++counter);
+        }
+        return candidate;
+    }
+
+    private static class FusionKey {
+        private final Object identity;
+        private final Domain source;
+        private final Expression filter;
+        private final Expression having;
+        private final List<List<Expression>> groupingSets;
+        private final Set<List<ReferenceAttribute>> joins;
+        private final boolean aggregate;
+        private final Set<Expression> groupKeys;
+
+        private FusionKey(Object identity, Domain source, Expression filter, Expression having,
+                          List<List<Expression>> groupingSets, Set<List<ReferenceAttribute>> joins,
+                          boolean aggregate, Set<Expression> groupKeys) {
+            this.identity = identity;
+            this.source = source;
+            this.filter = filter;
+            this.having = having;
+            this.groupingSets = groupingSets;
+            this.joins = joins;
+            this.aggregate = aggregate;
+            this.groupKeys = groupKeys;
+        }
+
+        static FusionKey of(Query query) {
+            // ordering and limits are per query: such queries stay on their own
+            Object identity = query.getOrderBy().isEmpty() && query.getLimit() == null ? null : query;
+            boolean aggregate = Expressions.hasAggregate(query);
+            Set<Expression> groupKeys = new HashSet<>();
+            if (aggregate) {
+                for (Expression projection : query.getProjections().values()) {
+                    if (!Expressions.isAggregate(projection)) {
+                        groupKeys.add(projection);
+                    }
+                }
+            }
+            return new FusionKey(identity, query.getSourceDomain(), query.getFilter(), query.getHaving(),
+                                 query.getGroupingSets(), Expressions.referencePaths(query), aggregate, groupKeys);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FusionKey)) return false;
+            FusionKey that = (FusionKey) o;
+            return identity == that.identity &&
+                   source == that.source &&
+                   Objects.equals(filter, that.filter) &&
+                   Objects.equals(having, that.having) &&
+                   Objects.equals(groupingSets, that.groupingSets) &&
+                   joins.equals(that.joins) &&
+                   aggregate == that.aggregate &&
+                   groupKeys.equals(that.groupKeys);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identity, source, filter, having, groupingSets, joins, aggregate, groupKeys);
+        }
+    }
+}
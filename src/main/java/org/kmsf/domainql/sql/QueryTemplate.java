@@ -0,0 +1,222 @@
+package org.kmsf.domainql.sql;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.ParameterExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+/**
+ * A query with named parameters (see {@code ExpressionBuilder.param}),
+ * generated once and then run with different values. Binding checks the
+ * values against the declared types and fills the bind list, in time
+ * proportional to the number of placeholders: the expressions are neither
+ * rebuilt nor generated again.
+ *
+ * <p>A parameter used several times has one value, bound to each of its
+ * placeholders. Values which are not parameters (the position of a page,
+ * for instance) keep the value they had when the template was compiled.
+ */
+public class QueryTemplate {
+    private final Query query;
+    private final String sql;
+    private final String[] names;
+    private final ScalarType[] types;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    // for each placeholder, the index of its parameter, or -1 for a value given at compile time
+    private final int[] slots;
+    private final Object[] constants;
+
+    QueryTemplate(Query query, String sql, List<Object> placeholders) {
+        this.query = query;
+        this.sql = sql;
+        this.slots = new int[placeholders.size()];
+        this.constants = new Object[placeholders.size()];
+        String[] names = new String[placeholders.size()];
+        ScalarType[] types = new ScalarType[placeholders.size()];
+        for (int i = 0; i < placeholders.size(); i++) {
+            Object placeholder = placeholders.get(i);
+            if (!(placeholder instanceof ParameterExpression)) {
+                slots[i] = -1;
+                constants[i] = placeholder;
+                continue;
+            }
+            ParameterExpression parameter = (ParameterExpression) placeholder;
+            Integer index = indexes.get(parameter.getName());
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(parameter.getName(), index);
+                names[index] = parameter.getName();
+                types[index] = (ScalarType) parameter.getType();
+            } else if (!types[index].equals(parameter.getType())) {
+                throw new IllegalArgumentException("Parameter '" + parameter.getName() + "' is declared both as "
+                    + types[index] + " and as " + parameter.getType());
+            }
+            slots[i] = index;
+        }
+        this.names = Arrays.copyOf(names, indexes.size());
+        this.types = Arrays.copyOf(types, indexes.size());
+    }
+
+    public static QueryTemplate compile(Query query) {
+        SQLGenerator generator = new SQLGenerator(query);
+        String sql = generator.generateSQL();
+        return new QueryTemplate(query, sql, generator.getParameters());
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The names of the parameters, in the order they are first used.
+     */
+    public List<String> getParameterNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public ScalarType getParameterType(String name) {
+        return types[indexOf(name)];
+    }
+
+    /**
+     * The position of the parameter in {@link #getParameterNames()}, to bind
+     * it without looking its name up.
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown parameter '" + name + "' in query '" + query.getName() + "'");
+        }
+        return index;
+    }
+
+    /*
+     * What each placeholder takes, as the generator listed it: a parameter
+     * or a value.
+     */
+    List<Object> placeholders() {
+        List<Object> placeholders = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            placeholders.add(slots[i] < 0 ? constants[i] : new ParameterExpression(names[slots[i]], types[slots[i]]));
+        }
+        return placeholders;
+    }
+
+    public Binder binder() {
+        return new Binder();
+    }
+
+    public Binding bind(Map<String, ?> values) {
+        Binder binder = new Binder();
+        int found = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (values.containsKey(names[i])) {
+                binder.set(i, values.get(names[i]));
+                found++;
+            }
+        }
+        if (found != values.size()) {
+            for (String name : values.keySet()) {
+                indexOf(name);
+            }
+        }
+        return binder.bind();
+    }
+
+    private static boolean accepts(ScalarType type, Object value) {
+        if (value == null) {
+            return true;
+        } else if (ScalarType.STRING.equals(type)) {
+            return value instanceof String;
+        } else if (ScalarType.INTEGER.equals(type)) {
+            return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+        } else if (ScalarType.DECIMAL.equals(type)) {
+            return value instanceof Number;
+        } else if (ScalarType.BOOLEAN.equals(type)) {
+            return value instanceof Boolean;
+        } else if (ScalarType.DATE.equals(type)) {
+            return value instanceof LocalDate;
+        } else if (ScalarType.TIMESTAMP.equals(type)) {
+            return value instanceof LocalDateTime || value instanceof Instant;
+        }
+        return false;
+    }
+
+    /**
+     * Collects the values of the parameters; every parameter must be set,
+     * possibly to null, before binding.
+     */
+    public class Binder {
+        private final Object[] values = new Object[names.length];
+        private final boolean[] set = new boolean[names.length];
+
+        private Binder() {
+        }
+
+        public Binder set(String name, Object value) {
+            return set(indexOf(name), value);
+        }
+
+        public Binder set(int index, Object value) {
+            if (!accepts(types[index], value)) {
+                throw new IllegalArgumentException("Parameter '" + names[index] + "' expects a " + types[index]
+                    + " value, got " + value.getClass().getSimpleName());
+            }
+            values[index] = value;
+            set[index] = true;
+            return this;
+        }
+
+        public Binding bind() {
+            for (int i = 0; i < names.length; i++) {
+                if (!set[i]) {
+                    throw new IllegalStateException("Parameter '" + names[i] + "' is not bound");
+                }
+            }
+            Object[] parameters = constants.clone();
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] >= 0) {
+                    parameters[i] = values[slots[i]];
+                }
+            }
+            return new Binding(parameters);
+        }
+    }
+
+    /**
+     * The statement of the template with the values to bind to its
+     * placeholders, in order.
+     */
+    public class Binding {
+        private final List<Object> parameters;
+
+        private Binding(Object[] parameters) {
+            this.parameters = Collections.unmodifiableList(Arrays.asList(parameters));
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public List<Object> getParameters() {
+            return parameters;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.kmsf.domainql.sql;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+
+/**
+ * The SQL of an expression with the aliases of the domains it reads left
+ * out: the text between them, and a slot for each. A slot names its path
+ * relatively to one of the paths the expression was generated at (a base:
+ * the root of a query, or the two sides of a join), so that the fragment can
+ * be stitched at other paths, in other queries.
+ *
+ * <p>Slots without an attribute stand for a join the expression navigates:
+ * stitching creates the joins and aliases in the order the expression would.
+ */
+public class SQLFragment {
+
+    /**
+     * Marks an expression whose SQL cannot be reused (it holds a subquery).
+     */
+    static final SQLFragment NONE = new SQLFragment(null, 0, new String[] {""}, new int[0],
+        new ReferenceAttribute[0][], new String[0]);
+
+    // weak, as the owner of an expression's fragment is the query holding the key
+    private final WeakReference<Domain> owner;
+    private final int ownerVersion;
+    private final String[] texts;
+    private final int[] bases;
+    private final ReferenceAttribute[][] references;
+    private final String[] attributes;
+
+    private SQLFragment(Domain owner, int ownerVersion, String[] texts, int[] bases,
+                        ReferenceAttribute[][] references, String[] attributes) {
+        this.owner = new WeakReference<>(owner);
+        this.ownerVersion = ownerVersion;
+        this.texts = texts;
+        this.bases = bases;
+        this.references = references;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Whether the fragment was generated for the domain as it is now.
+     */
+    public boolean isValidFor(Domain domain) {
+        return owner.get() == domain && ownerVersion == domain.getVersion();
+    }
+
+    public int getSlotCount() {
+        return bases.length;
+    }
+
+    /**
+     * The text before the given slot, or after the last one.
+     */
+    public String getText(int index) {
+        return texts[index];
+    }
+
+    public int getBase(int slot) {
+        return bases[slot];
+    }
+
+    public ReferenceAttribute[] getReferences(int slot) {
+        return references[slot];
+    }
+
+    /**
+     * The attribute read at the slot, or null if the slot only joins its path.
+     */
+    public String getAttribute(int slot) {
+        return attributes[slot];
+    }
+
+    /**
+     * Cuts the SQL being generated at the aliases, from the given position of
+     * the buffer.
+     */
+    static class Recorder {
+        private final Domain owner;
+        private final SQLGenerator.DomainPath[] bases;
+        private final StringBuilder sql;
+        private int mark;
+        private boolean reusable = true;
+        private final List<String> texts = new ArrayList<>();
+        private final List<Integer> slotBases = new ArrayList<>();
+        private final List<ReferenceAttribute[]> slotReferences = new ArrayList<>();
+        private final List<String> slotAttributes = new ArrayList<>();
+
+        Recorder(Domain owner, StringBuilder sql, SQLGenerator.DomainPath[] bases) {
+            this.owner = owner;
+            this.sql = sql;
+            this.bases = bases;
+            this.mark = sql.length();
+        }
+
+        void join(SQLGenerator.DomainPath path) {
+            slot(path, null, 0);
+        }
+
+        /**
+         * Called when the alias of the path is about to be appended.
+         */
+        void alias(SQLGenerator.DomainPath path, String attribute, String alias) {
+            slot(path, attribute, alias.length() + 1 + attribute.length());
+        }
+
+        void notReusable() {
+            reusable = false;
+        }
+
+        private void slot(SQLGenerator.DomainPath path, String attribute, int appendedLength) {
+            int depth = 0;
+            int base = baseOf(path);
+            for (SQLGenerator.DomainPath ancestor = path; base < 0 && ancestor.parent != null; depth++) {
+                ancestor = ancestor.parent;
+                base = baseOf(ancestor);
+            }
+            if (base < 0) {
+                reusable = false;
+                return;
+            }
+            ReferenceAttribute[] relative = new ReferenceAttribute[depth];
+            for (int i = depth - 1; i >= 0; i--) {
+                relative[i] = path.reference;
+                path = path.parent;
+            }
+            texts.add(sql.substring(mark, sql.length()));
+            slotBases.add(base);
+            slotReferences.add(relative);
+            slotAttributes.add(attribute);
+            mark = sql.length() + appendedLength;
+        }
+
+        private int baseOf(SQLGenerator.DomainPath path) {
+            for (int i = 0; i < bases.length; i++) {
+                if (bases[i] == path) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        SQLFragment build() {
+            if (!reusable) {
+                return NONE;
+            }
+            texts.add(sql.substring(mark, sql.length()));
+            int[] baseArray = new int[slotBases.size()];
+            for (int i = 0; i < baseArray.length; i++) {
+                baseArray[i] = slotBases.get(i);
+            }
+            return new SQLFragment(owner, owner.getVersion(), texts.toArray(new String[0]), baseArray,
+                slotReferences.toArray(new ReferenceAttribute[0][]), slotAttributes.toArray(new String[0]));
+        }
+    }
+}
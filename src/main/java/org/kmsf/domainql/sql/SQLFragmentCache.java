@@ -0,0 +1,87 @@
+package org.kmsf.domainql.sql;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kmsf.domainql.expression.Domain;
+
+/**
+ * The SQL fragments of join conditions, keyed by their reference, and of the
+ * expressions of queries, keyed by the expression instance. A fragment is
+ * dropped when the domain owning it (the reference's domain, or the query)
+ * has changed since it was generated.
+ *
+ * <p>A generator creates its own cache when it generates its query a second
+ * time; generators of the same domains can share one (see
+ * {@link SQLGenerator#setFragmentCache(SQLFragmentCache)}) to reuse the
+ * fragments across queries from their first generation. The cache is safe to
+ * share between threads, and only holds its keys weakly: the fragments of a
+ * query no longer used are dropped once the query is collected.
+ */
+public class SQLFragmentCache {
+    private final Map<Key, SQLFragment> fragments = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+
+    /**
+     * The fragment generated for the key, or null if there is none or it is
+     * out of date.
+     */
+    public SQLFragment get(Object key, Domain owner) {
+        expunge();
+        Key lookup = new Key(key, null);
+        SQLFragment fragment = fragments.get(lookup);
+        if (fragment == null || fragment == SQLFragment.NONE || fragment.isValidFor(owner)) {
+            return fragment;
+        }
+        fragments.remove(lookup, fragment);
+        return null;
+    }
+
+    public void put(Object key, SQLFragment fragment) {
+        expunge();
+        fragments.put(new Key(key, collected), fragment);
+    }
+
+    public int size() {
+        expunge();
+        return fragments.size();
+    }
+
+    public void clear() {
+        fragments.clear();
+    }
+
+    private void expunge() {
+        for (Reference<?> key; (key = collected.poll()) != null; ) {
+            fragments.remove(key);
+        }
+    }
+
+    /*
+     * Compares its referents by identity; a collected key only equals itself.
+     */
+    private static final class Key extends WeakReference<Object> {
+        private final int hash;
+
+        Key(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Object referent = get();
+            return referent != null && referent == ((Key) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
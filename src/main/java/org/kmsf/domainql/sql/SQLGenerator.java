@@ -1,27 +1,88 @@
 package org.kmsf.domainql.sql;
 
 import org.kmsf.domainql.expression.AggregateExpression;
+import org.kmsf.domainql.expression.Attribute;
 import org.kmsf.domainql.expression.AttributeExpression;
 import org.kmsf.domainql.expression.BinaryExpression;
 import org.kmsf.domainql.expression.ComposeExpression;
 import org.kmsf.domainql.expression.Domain;
 import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.GroupingExpression;
 import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.ParameterExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
 import org.kmsf.domainql.expression.Query;
 import org.kmsf.domainql.expression.QueryExpression;
 import org.kmsf.domainql.expression.ReferenceAttribute;
 import org.kmsf.domainql.expression.type.*;
+import org.kmsf.domainql.optimizer.CanonicalForm;
+import org.kmsf.domainql.plan.Aggregate;
+import org.kmsf.domainql.plan.Filter;
+import org.kmsf.domainql.plan.Join;
+import org.kmsf.domainql.plan.Limit;
+import org.kmsf.domainql.plan.LogicalPlanner;
+import org.kmsf.domainql.plan.PlanNode;
+import org.kmsf.domainql.plan.PlanOptimizer;
+import org.kmsf.domainql.plan.Project;
+import org.kmsf.domainql.plan.Sort;
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+import java.math.BigDecimal;
 import java.util.*;
 import java.util.function.BiConsumer;
 
 public class SQLGenerator {
-    private final Query query;
+    private Query query;
     private final JoinContext joinContext;
+    private CommonTableExpressions commonTableExpressions;
+    private final boolean nested;
     private int subqueryCounter = 0;
+    private final List<Object> parameters = new ArrayList<>();
+    private boolean materializeRepeatedSubqueries = false;
+    private boolean pruneSubqueryColumns = true;
+    private GroupByReduction groupByReduction = GroupByReduction.NONE;
+    private Set<Expression> dependentGroupKeys = Collections.emptySet();
+    private StatisticsCatalog statistics;
+    private JoinPlanner.JoinPlan joinPlan;
+    private PlanOptimizer planOptimizer;
+    private List<DomainPath> planJoinOrder;
+    private final Map<DomainPath, List<Expression>> planJoinConditions = new HashMap<>();
+    private SQLFragmentCache fragmentCache;
+    private boolean canonical = false;
+    private SQLFragment.Recorder recorder;
+
+    // state derived from the query once, and buffers reused by every generation
+    private boolean prepared;
+    private DomainPath rootPath;
+    private boolean groupBy;
+    private final List<Expression> groupKeys = new ArrayList<>();
+    private final List<Expression> rowPredicates = new ArrayList<>();
+    private final List<Expression> groupPredicates = new ArrayList<>();
+    private final JoinPathResolver joinResolver = new JoinPathResolver(null, null);
+    private final StringBuilder fromClause = new StringBuilder();
+    private final DomainPath[] rootBases = new DomainPath[1];
+    private final DomainPath[] joinBases = new DomainPath[2];
+
+    /**
+     * How group keys functionally determined by other group keys are handled:
+     * kept in the GROUP BY (the default), or dropped from it and projected
+     * through an aggregate that picks their single value per group.
+     */
+    public enum GroupByReduction {
+        NONE,
+        MIN,
+        ANY_VALUE
+    }
 
     public SQLGenerator(Query query) {
+        this(query, new CommonTableExpressions(), false);
+    }
+
+    private SQLGenerator(Query query, CommonTableExpressions commonTableExpressions, boolean nested) {
         this.query = query;
         this.joinContext = new JoinContext();
+        this.commonTableExpressions = commonTableExpressions;
+        this.nested = nested;
     }
 
     public static String generateSQL(Query query) {
@@ -29,45 +90,335 @@ public class SQLGenerator {
         return generator.generateSQL();
     }
 
+    /**
+     * Marks WITH entries used more than once, and costly to compute, as
+     * MATERIALIZED (PostgreSQL syntax) so the database evaluates them once.
+     */
+    public SQLGenerator setMaterializeRepeatedSubqueries(boolean materializeRepeatedSubqueries) {
+        this.materializeRepeatedSubqueries = materializeRepeatedSubqueries;
+        return this;
+    }
+
+    /**
+     * Whether WITH entries only compute the columns the rest of the statement
+     * reads (on by default).
+     */
+    public SQLGenerator setPruneSubqueryColumns(boolean pruneSubqueryColumns) {
+        this.pruneSubqueryColumns = pruneSubqueryColumns;
+        return this;
+    }
+
+    /**
+     * Reduces GROUP BY lists to the keys that determine the others, based on
+     * the keys declared on domains and to-one references.
+     */
+    public SQLGenerator setGroupByReduction(GroupByReduction groupByReduction) {
+        this.groupByReduction = groupByReduction;
+        return this;
+    }
+
+    /**
+     * Orders the joins by their estimated cost (see {@link JoinPlanner})
+     * instead of the order in which the query reads them.
+     */
+    public SQLGenerator setStatistics(StatisticsCatalog statistics) {
+        this.statistics = statistics;
+        return this;
+    }
+
+    /**
+     * Lowers each query to a logical plan (see {@link LogicalPlanner}), runs
+     * the optimizer over it and emits the optimized plan: its join order, and
+     * its filters where they were placed. Queries without a logical plan are
+     * emitted as they are.
+     */
+    public SQLGenerator setPlanOptimizer(PlanOptimizer planOptimizer) {
+        this.planOptimizer = planOptimizer;
+        return this;
+    }
+
+    /**
+     * Writes equivalent queries the same way, so that they share the
+     * database's prepared statements: expressions are put in canonical form
+     * (see {@link CanonicalForm}), group keys are sorted, and joins are
+     * emitted and named in the order of their paths rather than in the order
+     * the query reads them.
+     */
+    public SQLGenerator setCanonical(boolean canonical) {
+        this.canonical = canonical;
+        return this;
+    }
+
+    /**
+     * Shares the SQL fragments of join conditions and expressions with other
+     * generators, so that they are generated once for all of them.
+     */
+    public SQLGenerator setFragmentCache(SQLFragmentCache fragmentCache) {
+        this.fragmentCache = fragmentCache;
+        return this;
+    }
+
+    /**
+     * Generates the statement, and describes the joins of its main query in
+     * the order they are emitted, with their estimated cardinalities and the
+     * side a hash join would build its table from.
+     */
+    public String explain() {
+        StringBuilder sb = new StringBuilder(generateSQL());
+        if (joinPlan == null) {
+            joinPlan = new JoinPlanner(new StatisticsCatalog()).estimate(query, joinContext.getPaths());
+        }
+        for (JoinPlanner.JoinStep step : joinPlan.getSteps()) {
+            DomainPath path = step.getPath();
+            String alias = joinContext.getOrCreateAlias(path);
+            sb.append("\n");
+            if (path.parent == null) {
+                sb.append(String.format(Locale.ROOT, "FROM %s rows=%.0f", alias, step.getOutputRows()));
+            } else {
+                sb.append(String.format(Locale.ROOT, "JOIN %s rows=%.0f -> %.0f build=%s", alias,
+                    step.getTableRows(), step.getOutputRows(),
+                    step.isBuildJoined() ? alias : joinContext.getOrCreateAlias(path.parent)));
+            }
+        }
+        return sb.toString();
+    }
+
     public String generateSQL() {
+        StringBuilder sql = new StringBuilder();
+        generateSQL(sql);
+        return sql.toString();
+    }
+
+    /**
+     * Appends the statement to the given buffer. A generator, like the
+     * buffer, can be reused to generate its query again: the joins, aliases
+     * and predicates found the first time are kept, so that a statement
+     * without nested queries is written directly into the buffer without
+     * allocating intermediate strings.
+     */
+    public void generateSQL(StringBuilder sql) {
+        if (planOptimizer != null && planJoinOrder == null && LogicalPlanner.supports(query)) {
+            query = raise(planOptimizer.optimize(LogicalPlanner.lower(query)));
+        }
+        parameters.clear();
+        subqueryCounter = 0;
+        if (prepared && fragmentCache == null && !nested) {
+            // generated again: from now on, join conditions and expressions are stitched from fragments
+            fragmentCache = new SQLFragmentCache();
+        }
+        if (!nested && !commonTableExpressions.isEmpty()) {
+            commonTableExpressions = new CommonTableExpressions();
+        }
+        int start = sql.length();
+        generateQueryBody(sql);
+        if (nested || commonTableExpressions.isEmpty()) {
+            return;
+        }
+
+        // The WITH clause comes first, and so do its parameters
+        List<Object> bodyParameters = new ArrayList<>(parameters);
+        parameters.clear();
+        StringBuilder withClause = new StringBuilder();
+        generateWithClause(withClause);
+        sql.insert(start, withClause);
+        parameters.addAll(bodyParameters);
+    }
+
+    /*
+     * Every distinct nested query becomes one WITH entry, referenced by name
+     * wherever it is used. Entries are generated referrers first, so that all
+     * uses of a query are known when its turn comes, and emitted in the
+     * reverse order since an entry may only refer to the ones before it.
+     */
+    private void generateWithClause(StringBuilder sql) {
+        List<Query> nestedQueries = CommonTableExpressions.referrersFirst(query);
+        Map<Query, SQLGenerator> generators = new HashMap<>();
+        Map<Query, int[]> bodies = new HashMap<>();
+        StringBuilder bodiesBuffer = new StringBuilder();
+        for (Query nestedQuery : nestedQueries) {
+            if (commonTableExpressions.getUses(nestedQuery) == 0) {
+                continue;
+            }
+            Query entry = pruneSubqueryColumns ? commonTableExpressions.pruned(nestedQuery) : nestedQuery;
+            SQLGenerator generator = new SQLGenerator(entry, commonTableExpressions, true);
+            generator.groupByReduction = groupByReduction;
+            generator.statistics = statistics;
+            generator.planOptimizer = planOptimizer;
+            generator.fragmentCache = fragmentCache;
+            generator.canonical = canonical;
+            int start = bodiesBuffer.length();
+            generator.generateSQL(bodiesBuffer);
+            bodies.put(nestedQuery, new int[] {start, bodiesBuffer.length()});
+            generators.put(nestedQuery, generator);
+        }
+
+        sql.append("WITH ");
+        boolean first = true;
+        for (int i = nestedQueries.size() - 1; i >= 0; i--) {
+            Query nestedQuery = nestedQueries.get(i);
+            if (!bodies.containsKey(nestedQuery)) {
+                continue;
+            }
+            if (!first) sql.append(", ");
+            sql.append(commonTableExpressions.getName(nestedQuery)).append(" AS ");
+            if (materializeRepeatedSubqueries
+                && commonTableExpressions.getUses(nestedQuery) > 1
+                && commonTableExpressions.isExpensive(nestedQuery)) {
+                sql.append("MATERIALIZED ");
+            }
+            int[] body = bodies.get(nestedQuery);
+            sql.append("(").append(bodiesBuffer, body[0], body[1]).append(")");
+            parameters.addAll(generators.get(nestedQuery).getParameters());
+            first = false;
+        }
+        sql.append(" ");
+    }
+
+    /*
+     * Derives from the query what does not change from one generation to the
+     * next.
+     */
+    private void prepare() {
+        if (canonical) {
+            query = CanonicalForm.rewrite(query);
+        }
+        rootPath = joinContext.root(query.getSourceDomain());
+        rootBases[0] = rootPath;
+        if (canonical) {
+            // aliases are given in the order of the paths, before any is read
+            joinContext.getOrCreateAlias(rootPath);
+            List<List<ReferenceAttribute>> paths = new ArrayList<>(Expressions.referencePaths(query));
+            paths.sort(CanonicalForm.PATH_ORDER);
+            for (List<ReferenceAttribute> path : paths) {
+                DomainPath domainPath = rootPath;
+                for (ReferenceAttribute reference : path) {
+                    domainPath = domainPath.child(reference);
+                    joinContext.getOrCreateAlias(domainPath);
+                }
+            }
+        }
+        groupBy = needsGroupBy(query);
+        splitPredicates(query, rowPredicates, groupPredicates);
+        if (groupByReduction != GroupByReduction.NONE && query.getGroupingSets() == null && groupBy) {
+            dependentGroupKeys = dependentGroupKeys(query);
+        }
+        for (Expression expr : query.getProjections().values()) {
+            if (!expr.getType().isAggregate() && !dependentGroupKeys.contains(expr)) {
+                groupKeys.add(expr);
+            }
+        }
+        if (canonical) {
+            groupKeys.sort(Comparator.comparing(CanonicalForm::key));
+        }
+        prepared = true;
+    }
 
-        // initialize the root path
-        DomainPath rootPath = new DomainPath(query.getSourceDomain());
+    private void generateQueryBody(StringBuilder sql) {
+        if (!prepared) {
+            prepare();
+        }
         joinContext.getOrCreateAlias(rootPath);
 
-        // Generate projections
-        StringBuilder selectPart = new StringBuilder();
-        generateProjections(selectPart, rootPath);
+        // Generate projections; the FROM clause is inserted after them once all the joins are known
+        sql.append("SELECT ");
+        generateProjections(sql, rootPath);
+        int fromPosition = sql.length();
+        int fromParameterPosition = parameters.size();
 
-        // Generate WHERE clause if filter exists
-        StringBuilder wherePart = new StringBuilder();
-        if (query.getFilter() != null) {
-            wherePart.append(" WHERE ");
-            generateExpression(query.getFilter(), new SimplePathResolver(rootPath), wherePart);
+        // Generate WHERE clause if filter exists, followed by the keyset seek predicate
+        if (!rowPredicates.isEmpty()) {
+            sql.append(" WHERE ");
+            generateConjunction(rowPredicates, sql);
+        }
+        if (query.getContinuationToken() != null) {
+            sql.append(rowPredicates.isEmpty() ? " WHERE " : " AND ");
+            generateSeekPredicate(query, rootPath, sql);
         }
 
         // Generate GROUP BY if needed
-        StringBuilder groupByPart = new StringBuilder();
-        if (needsGroupBy(query)) {
-            groupByPart.append(" GROUP BY ");
-            generateGroupByClause(query, rootPath, groupByPart);
+        if (groupBy) {
+            sql.append(" GROUP BY ");
+            generateGroupByClause(query, rootPath, sql);
         }
-        
-        // Generate FROM clause with necessary JOINs
-        StringBuilder sql = new StringBuilder("SELECT ");
-        sql.append(selectPart);
-        generateFromClause(query, sql);
-        sql.append(wherePart);
-        sql.append(groupByPart);
 
-        return sql.toString();
+        if (!groupPredicates.isEmpty()) {
+            sql.append(" HAVING ");
+            generateConjunction(groupPredicates, sql);
+        }
+
+        // Generate ORDER BY and LIMIT
+        if (!query.getOrderBy().isEmpty()) {
+            sql.append(" ORDER BY ");
+            generateOrderByClause(query, rootPath, sql);
+        }
+        if (query.getLimit() != null) {
+            sql.append(" LIMIT ").append(query.getLimit().intValue());
+        }
+
+        // Generate FROM clause with necessary JOINs; its parameters go where it is inserted
+        int bodyParameterCount = parameters.size();
+        fromClause.setLength(0);
+        generateFromClause(query, fromClause);
+        sql.insert(fromPosition, fromClause);
+        if (parameters.size() > bodyParameterCount) {
+            List<Object> added = parameters.subList(bodyParameterCount, parameters.size());
+            List<Object> fromParameters = new ArrayList<>(added);
+            added.clear();
+            parameters.addAll(fromParameterPosition, fromParameters);
+        }
+    }
+
+    /*
+     * Same output as the AND of the predicates, without building it.
+     */
+    private void generateConjunction(List<Expression> predicates, StringBuilder sql) {
+        if (predicates.size() == 1) {
+            generateRootExpression(predicates.get(0), sql);
+            return;
+        }
+        sql.append("(");
+        for (int i = 0; i < predicates.size(); i++) {
+            if (i > 0) sql.append(" AND ");
+            generateRootExpression(predicates.get(i), sql);
+        }
+        sql.append(")");
+    }
+
+    /*
+     * Sorts the conjuncts of the filter and of the having clause by the stage
+     * able to evaluate them: those reading an aggregate apply to groups
+     * (HAVING), all others to rows before they are grouped (WHERE). A row-level
+     * conjunct of the having clause can only read group keys, so filtering rows
+     * on it keeps the same groups, unless grouping sets null out some keys.
+     * Without group keys, the single group of an aggregate query exists even
+     * when no row does: such a conjunct (a constant or a parameter) must stay
+     * in HAVING to drop it.
+     */
+    private void splitPredicates(Query query, List<Expression> rowPredicates, List<Expression> groupPredicates) {
+        for (Expression conjunct : Expressions.conjuncts(query.getFilter())) {
+            (Expressions.containsAggregate(conjunct) ? groupPredicates : rowPredicates).add(conjunct);
+        }
+        for (Expression conjunct : Expressions.conjuncts(query.getHaving())) {
+            if (groupBy && query.getGroupingSets() == null && !Expressions.containsAggregate(conjunct)) {
+                rowPredicates.add(conjunct);
+            } else {
+                groupPredicates.add(conjunct);
+            }
+        }
+    }
+
+    /**
+     * Values to bind, in order, to the {@code ?} placeholders of the last generated SQL.
+     */
+    public List<Object> getParameters() {
+        return Collections.unmodifiableList(parameters);
     }
 
     private void generateProjections(StringBuilder sql, DomainPath rootPath) {
         boolean first = true;
         for (Map.Entry<String, Expression> projection : query.getProjections().entrySet()) {
             if (!first) sql.append(", ");
-            generateExpression(projection.getValue(), new SimplePathResolver(rootPath), sql);
+            generateGroupValue(projection.getValue(), rootPath, sql);
             sql.append(" AS ").append(projection.getKey());
             first = false;
         }
@@ -83,9 +434,10 @@ public class SQLGenerator {
                 if (attrExpr.getAttribute() instanceof ReferenceAttribute) {
                     ReferenceAttribute refAttr = (ReferenceAttribute) attrExpr.getAttribute();
                     DomainPath currentPath = pathResolver.resolve(attrExpr);
-                    DomainPath newPath = new DomainPath(refAttr.getReferenceDomain(), currentPath, refAttr);
+                    DomainPath newPath = currentPath.child(refAttr);
+                    if (recorder != null) recorder.join(newPath);
                     joinContext.getOrCreateAlias(newPath);
-                    generateExpression(compose.getComposition(), new SimplePathResolver(newPath), sql);
+                    generateExpression(compose.getComposition(), newPath.resolver(), sql);
                     return;
                 }
             }
@@ -93,32 +445,110 @@ public class SQLGenerator {
             AttributeExpression attrExpr = (AttributeExpression) expr;
             DomainPath path = pathResolver.resolve(attrExpr);
             String alias = joinContext.getOrCreateAlias(path);
-            
+            if (path.domain instanceof Query) {
+                commonTableExpressions.reference((Query) path.domain, attrExpr.getAttribute().getName());
+            }
+            if (recorder != null) recorder.alias(path, attrExpr.getAttribute().getName(), alias);
+
             sql.append(alias)
                .append(".")
                .append(attrExpr.getAttribute().getName());
             return;
         } else if (expr instanceof BinaryExpression) {
             generateBinaryExpression((BinaryExpression) expr, pathResolver, sql);
+        } else if (expr instanceof LogicalExpression) {
+            generateLogicalExpression((LogicalExpression) expr, pathResolver, sql);
         } else if (expr instanceof AggregateExpression) {
             generateAggregateExpression((AggregateExpression) expr, pathResolver, sql);
         } else if (expr instanceof QueryExpression) {
             generateQueryExpression((QueryExpression) expr, sql);
         } else if (expr instanceof LiteralExpression) {
             generateLiteralExpression((LiteralExpression) expr, sql);
+        } else if (expr instanceof ParameterExpression) {
+            // the placeholder itself stands in the parameters, until a QueryTemplate binds it
+            if (recorder != null) recorder.notReusable();
+            sql.append("?");
+            parameters.add(expr);
+        } else if (expr instanceof GroupingExpression) {
+            sql.append("GROUPING(");
+            generateExpressionList(((GroupingExpression) expr).getKeys(), pathResolver, sql);
+            sql.append(")");
+        }
+    }
+
+    private void generateRootExpression(Expression expr, StringBuilder sql) {
+        generateFragment(expr, expr, query, rootPath.resolver(), sql, rootBases);
+    }
+
+    /*
+     * Stitches the fragment cached for the key at the given base paths, or
+     * generates the expression while recording its fragment.
+     */
+    private void generateFragment(Object key, Expression expr, Domain owner, PathResolver pathResolver,
+                                  StringBuilder sql, DomainPath[] bases) {
+        SQLFragment fragment = recorder == null && fragmentCache != null
+            ? fragmentCache.get(key, owner) : SQLFragment.NONE;
+        if (fragment == SQLFragment.NONE) {
+            generateExpression(expr, pathResolver, sql);
+        } else if (fragment != null) {
+            appendFragment(fragment, bases, sql);
+        } else {
+            recorder = new SQLFragment.Recorder(owner, sql, bases);
+            generateExpression(expr, pathResolver, sql);
+            fragmentCache.put(key, recorder.build());
+            recorder = null;
         }
     }
 
+    private void appendFragment(SQLFragment fragment, DomainPath[] bases, StringBuilder sql) {
+        for (int i = 0; i < fragment.getSlotCount(); i++) {
+            sql.append(fragment.getText(i));
+            DomainPath path = bases[fragment.getBase(i)];
+            for (ReferenceAttribute reference : fragment.getReferences(i)) {
+                path = path.child(reference);
+            }
+            String alias = joinContext.getOrCreateAlias(path);
+            String attribute = fragment.getAttribute(i);
+            if (attribute != null) {
+                if (path.domain instanceof Query) {
+                    commonTableExpressions.reference((Query) path.domain, attribute);
+                }
+                sql.append(alias).append(".").append(attribute);
+            }
+        }
+        sql.append(fragment.getText(fragment.getSlotCount()));
+    }
+
     private void generateLiteralExpression(LiteralExpression expr, StringBuilder sql) {
-        ExpressionType type = expr.getType();
+        if (expr.getValue() instanceof List) {
+            sql.append("(");
+            boolean first = true;
+            for (Object value : (List<?>) expr.getValue()) {
+                if (!first) sql.append(", ");
+                generateLiteralValue(value, sql);
+                first = false;
+            }
+            sql.append(")");
+            return;
+        }
+        generateLiteralValue(expr.getValue(), sql);
+    }
+
+    private void generateLiteralValue(Object value, StringBuilder sql) {
+        ExpressionType type = ScalarType.fromClass(value.getClass());
         if (type instanceof ScalarType) {
             ScalarType scalarType = (ScalarType) type;
             if (scalarType.equals(ScalarType.STRING)) {
-                sql.append("'").append(expr.getValue()).append("'");
+                sql.append("'").append(value).append("'");
             } else if (scalarType.equals(ScalarType.DATE)) {
-                sql.append("to_date('").append(expr.getValue().toString()).append("', 'YYYY-MM-DD')");
+                sql.append("to_date('").append(value.toString()).append("', 'YYYY-MM-DD')");
+            } else if (value instanceof BigDecimal) {
+                sql.append(((BigDecimal) value).toPlainString());
+            } else if (value instanceof Integer || value instanceof Long) {
+                // appended digit by digit, without an intermediate string
+                sql.append(((Number) value).longValue());
             } else {
-                sql.append(expr.getValue());
+                sql.append(value);
             }
         } else {
             throw new IllegalArgumentException("Unsupported literal type: " + type);
@@ -126,15 +556,23 @@ public class SQLGenerator {
     }
     
     private void generateQueryExpression(QueryExpression expr, StringBuilder sql) {
+        if (recorder != null) recorder.notReusable();
         String subqueryAlias = "sq" + (++subqueryCounter);
-        SQLGenerator subqueryGenerator = new SQLGenerator(expr.getQuery());
-        sql.append("(")
-           .append(subqueryGenerator.generateSQL())
-           .append(") AS ")
+        commonTableExpressions.referenceAll(expr.getQuery());
+        sql.append(commonTableExpressions.use(expr.getQuery()))
+           .append(" AS ")
            .append(subqueryAlias);
     }
     
     private void generateBinaryExpression(BinaryExpression expr, PathResolver pathResolver, StringBuilder sql) {
+        if (expr.getOperator() == Operator.COALESCE) {
+            sql.append("COALESCE(");
+            generateExpression(expr.getLeft(), pathResolver, sql);
+            sql.append(", ");
+            generateExpression(expr.getRight(), pathResolver, sql);
+            sql.append(")");
+            return;
+        }
         sql.append("(");
         generateExpression(expr.getLeft(), pathResolver, sql);
         sql.append(" ")
@@ -144,6 +582,18 @@ public class SQLGenerator {
         sql.append(")");
     }
 
+    private void generateLogicalExpression(LogicalExpression expr, PathResolver pathResolver, StringBuilder sql) {
+        String operator = " " + getBinaryOperator(expr.getOperator()) + " ";
+        sql.append("(");
+        boolean first = true;
+        for (Expression operand : expr.getOperands()) {
+            if (!first) sql.append(operator);
+            generateExpression(operand, pathResolver, sql);
+            first = false;
+        }
+        sql.append(")");
+    }
+
     private String getBinaryOperator(Operator operator) {
         switch (operator) {
             case EQUALS: return "=";
@@ -166,29 +616,122 @@ public class SQLGenerator {
     }
 
     private void generateFromClause(Query query, StringBuilder sql) {
-        joinContext.forEachJoin((path, alias) -> {
-            if (path.parent == null) {
-                sql.append(" FROM ");
-                generateTableNameAndAlias(path, alias, sql);
-            } else {
-                sql.append(" JOIN ");
-                generateTableNameAndAlias(path, alias, sql);
-                sql.append(" ON ");
-                generateExpression(path.reference.getJoinCondition(), 
-                                   new JoinPathResolver(path.parent, path), 
-                                   sql);
+        if (planJoinOrder == null && statistics == null) {
+            // the order in which the query reads the joins
+            joinPlan = null;
+            for (Map.Entry<DomainPath, String> join : joinContext.domainAliases.entrySet()) {
+                generateJoin(join.getKey(), join.getValue(), sql);
+            }
+            return;
+        }
+        JoinPlanner planner = new JoinPlanner(statistics == null ? new StatisticsCatalog() : statistics);
+        if (planJoinOrder != null) {
+            planJoinOrder.forEach(joinContext::getOrCreateAlias);
+            Set<DomainPath> order = new LinkedHashSet<>(joinContext.getPaths().subList(0, 1));
+            order.addAll(planJoinOrder);
+            order.addAll(joinContext.getPaths());
+            joinPlan = planner.estimate(query, new ArrayList<>(order));
+        } else {
+            joinPlan = planner.plan(query, joinContext.getPaths());
+        }
+        for (DomainPath path : joinPlan.getOrder()) {
+            generateJoin(path, joinContext.getOrCreateAlias(path), sql);
+        }
+    }
+
+    private void generateJoin(DomainPath path, String alias, StringBuilder sql) {
+        if (path.parent == null) {
+            sql.append(" FROM ");
+            generateTableNameAndAlias(path, alias, sql);
+            return;
+        }
+        sql.append(" JOIN ");
+        generateTableNameAndAlias(path, alias, sql);
+        sql.append(" ON ");
+        joinBases[0] = path.parent;
+        joinBases[1] = path;
+        generateFragment(path.reference, path.reference.getJoinCondition(), path.reference.getDomain(),
+            joinResolver.at(path.parent, path), sql, joinBases);
+        if (planJoinOrder != null) {
+            for (Expression condition : planJoinConditions.getOrDefault(path, List.of())) {
+                sql.append(" AND ");
+                generateRootExpression(condition, sql);
+            }
+        }
+    }
+
+    /*
+     * The query the plan computes, its joins being emitted in the plan's
+     * order, with the filters pushed on a joined domain as conditions of the
+     * join.
+     */
+    private Query raise(PlanNode plan) {
+        Query raised = new Query(query.getName(), query.getSourceDomain());
+        List<Expression> where = new ArrayList<>();
+        List<Expression> having = new ArrayList<>();
+        List<Join> joins = new ArrayList<>();
+        boolean belowProjection = false;
+        List<PlanNode> pending = new ArrayList<>(List.of(plan));
+        while (!pending.isEmpty()) {
+            PlanNode node = pending.remove(pending.size() - 1);
+            if (node instanceof Limit) {
+                raised.setLimit(((Limit) node).getLimit());
+            } else if (node instanceof Sort) {
+                for (Query.OrderBy orderBy : ((Sort) node).getOrderBy()) {
+                    raised.addOrderBy(orderBy.getExpression(), orderBy.isAscending());
+                }
+            } else if (node instanceof Filter) {
+                (belowProjection ? where : having).addAll(Expressions.conjuncts(((Filter) node).getCondition()));
+            } else if (node instanceof Aggregate || node instanceof Project) {
+                Map<String, Expression> projections = node instanceof Aggregate
+                    ? ((Aggregate) node).getProjections() : ((Project) node).getProjections();
+                projections.forEach(raised::addProjection);
+                belowProjection = true;
+            } else if (node instanceof Join) {
+                Join join = (Join) node;
+                joins.add(join);
+                List<Expression> conditions = new ArrayList<>();
+                for (PlanNode right = join.getRight(); right instanceof Filter; right = ((Filter) right).getInput()) {
+                    conditions.addAll(Expressions.conjuncts(((Filter) right).getCondition()));
+                }
+                planJoinConditions.put(domainPath(join.getPath()), conditions);
+                pending.add(join.getLeft());
+                continue;
             }
-        });
+            pending.addAll(node.getInputs());
+        }
+        raised.setFilter(Expressions.and(where));
+        raised.setHaving(Expressions.and(having));
+        Collections.reverse(joins);
+        planJoinOrder = new ArrayList<>();
+        for (Join join : joins) {
+            planJoinOrder.add(domainPath(join.getPath()));
+        }
+        return raised;
+    }
+
+    private DomainPath domainPath(List<ReferenceAttribute> references) {
+        DomainPath path = joinContext.root(query.getSourceDomain());
+        for (ReferenceAttribute reference : references) {
+            path = path.child(reference);
+        }
+        return path;
     }
 
     private void generateTableNameAndAlias(DomainPath path, String alias, StringBuilder sql) {
-        sql.append(path.domain.getName());
-        if (alias != null && !alias.isEmpty() && !alias.equals(path.domain.getName())) {
+        String tableName = path.domain instanceof Query
+            ? commonTableExpressions.use((Query) path.domain)
+            : path.domain.getName();
+        sql.append(tableName);
+        if (alias != null && !alias.isEmpty() && !alias.equals(tableName)) {
             sql.append(" AS ").append(alias);
         }
     }
 
     private boolean needsGroupBy(Query query) {
+        if (query.getGroupingSets() != null) {
+            return true;
+        }
         boolean hasAggregate = false;
         boolean hasNonAggregate = false;
         
@@ -205,16 +748,184 @@ public class SQLGenerator {
     }
 
     private void generateGroupByClause(Query query, DomainPath rootPath, StringBuilder sql) {
-        boolean first = true;
-        for (Expression expr : query.getProjections().values()) {
-            if (!expr.getType().isAggregate()) {
+        if (query.getGroupingSets() != null) {
+            sql.append("GROUPING SETS (");
+            boolean first = true;
+            for (List<Expression> groupingSet : query.getGroupingSets()) {
                 if (!first) sql.append(", ");
-                generateExpression(expr, new SimplePathResolver(rootPath), sql);
+                sql.append("(");
+                generateExpressionList(groupingSet, rootPath.resolver(), sql);
+                sql.append(")");
                 first = false;
             }
+            sql.append(")");
+            return;
+        }
+        for (int i = 0; i < groupKeys.size(); i++) {
+            if (i > 0) sql.append(", ");
+            generateRootExpression(groupKeys.get(i), sql);
+        }
+    }
+
+    /*
+     * A group key left out of the GROUP BY is read through an aggregate, its
+     * value being the same on every row of the group.
+     */
+    private void generateGroupValue(Expression expr, DomainPath rootPath, StringBuilder sql) {
+        if (dependentGroupKeys.contains(expr)) {
+            sql.append(groupByReduction.name()).append("(");
+            generateRootExpression(expr, sql);
+            sql.append(")");
+        } else {
+            generateRootExpression(expr, sql);
         }
     }
 
+    /*
+     * Group keys determined by the other ones. The rows of a join path are
+     * determined when the keys include a declared key of its domain, or when
+     * it is reached through a to-one reference from determined rows, or from
+     * rows whose keys include every column the join reads. Attributes of a
+     * determined path are determined as well, except the chosen key itself.
+     */
+    private Set<Expression> dependentGroupKeys(Query query) {
+        Map<List<ReferenceAttribute>, Set<Attribute>> grouped = new HashMap<>();
+        Map<Expression, List<ReferenceAttribute>> keyPaths = new LinkedHashMap<>();
+        for (Expression expr : query.getProjections().values()) {
+            if (expr.getType().isAggregate()) {
+                continue;
+            }
+            List<ReferenceAttribute> path = new ArrayList<>();
+            Expression current = expr;
+            while (current instanceof ComposeExpression
+                && ((ComposeExpression) current).getReference() instanceof AttributeExpression) {
+                path.add((ReferenceAttribute) ((AttributeExpression) ((ComposeExpression) current).getReference()).getAttribute());
+                current = ((ComposeExpression) current).getComposition();
+            }
+            if (current instanceof AttributeExpression) {
+                grouped.computeIfAbsent(path, p -> new HashSet<>()).add(((AttributeExpression) current).getAttribute());
+                keyPaths.put(expr, path);
+            }
+        }
+
+        Map<List<ReferenceAttribute>, Set<Attribute>> chosenKeys = new HashMap<>();
+        for (Map.Entry<List<ReferenceAttribute>, Set<Attribute>> entry : grouped.entrySet()) {
+            List<ReferenceAttribute> path = entry.getKey();
+            Domain domain = path.isEmpty() ? query.getSourceDomain() : path.get(path.size() - 1).getReferenceDomain();
+            for (Set<Attribute> key : domain.getKeys()) {
+                if (entry.getValue().containsAll(key)) {
+                    chosenKeys.put(path, key);
+                    break;
+                }
+            }
+        }
+
+        Set<Expression> dependent = new HashSet<>();
+        for (Map.Entry<Expression, List<ReferenceAttribute>> entry : keyPaths.entrySet()) {
+            List<ReferenceAttribute> path = entry.getValue();
+            Expression current = entry.getKey();
+            while (current instanceof ComposeExpression) {
+                current = ((ComposeExpression) current).getComposition();
+            }
+            Set<Attribute> chosenKey = chosenKeys.get(path);
+            if (isDeterminedByParent(path, grouped, chosenKeys)
+                || chosenKey != null && !chosenKey.contains(((AttributeExpression) current).getAttribute())) {
+                dependent.add(entry.getKey());
+            }
+        }
+        return dependent;
+    }
+
+    private static boolean isDetermined(List<ReferenceAttribute> path, Map<List<ReferenceAttribute>, Set<Attribute>> grouped,
+                                        Map<List<ReferenceAttribute>, Set<Attribute>> chosenKeys) {
+        return chosenKeys.containsKey(path) || isDeterminedByParent(path, grouped, chosenKeys);
+    }
+
+    private static boolean isDeterminedByParent(List<ReferenceAttribute> path,
+                                                Map<List<ReferenceAttribute>, Set<Attribute>> grouped,
+                                                Map<List<ReferenceAttribute>, Set<Attribute>> chosenKeys) {
+        if (path.isEmpty() || !path.get(path.size() - 1).isToOne()) {
+            return false;
+        }
+        List<ReferenceAttribute> parent = path.subList(0, path.size() - 1);
+        return isDetermined(parent, grouped, chosenKeys)
+            || grouped.getOrDefault(parent, Collections.emptySet()).containsAll(path.get(path.size() - 1).getSourceColumns());
+    }
+
+    private void generateExpressionList(List<Expression> expressions, PathResolver pathResolver, StringBuilder sql) {
+        boolean first = true;
+        for (Expression expr : expressions) {
+            if (!first) sql.append(", ");
+            generateExpression(expr, pathResolver, sql);
+            first = false;
+        }
+    }
+
+    private void generateOrderByClause(Query query, DomainPath rootPath, StringBuilder sql) {
+        boolean first = true;
+        for (Query.OrderBy orderBy : query.getOrderBy()) {
+            if (!first) sql.append(", ");
+            generateGroupValue(orderBy.getExpression(), rootPath, sql);
+            if (!orderBy.isAscending()) sql.append(" DESC");
+            first = false;
+        }
+    }
+
+    /*
+     * Keyset pagination: only rows strictly after the last seen sort key. When all keys
+     * share the same direction this is a single row-value comparison the database can
+     * answer with an index range scan; mixed directions expand to the equivalent
+     * (k1 > ?) OR (k1 = ? AND k2 < ?) form.
+     */
+    private void generateSeekPredicate(Query query, DomainPath rootPath, StringBuilder sql) {
+        List<Query.OrderBy> keys = query.getOrderBy();
+        List<Object> values = query.getContinuationToken().getValues();
+        for (Query.OrderBy key : keys) {
+            if (key.getExpression().getType().isAggregate()) {
+                throw new IllegalStateException("Keyset pagination does not support aggregate sort keys");
+            }
+        }
+
+        boolean sameDirection = keys.stream().allMatch(k -> k.isAscending() == keys.get(0).isAscending());
+        if (sameDirection) {
+            String operator = keys.get(0).isAscending() ? " > " : " < ";
+            if (keys.size() == 1) {
+                generateExpression(keys.get(0).getExpression(), rootPath.resolver(), sql);
+                sql.append(operator).append("?");
+            } else {
+                sql.append("(");
+                for (int i = 0; i < keys.size(); i++) {
+                    if (i > 0) sql.append(", ");
+                    generateExpression(keys.get(i).getExpression(), rootPath.resolver(), sql);
+                }
+                sql.append(")").append(operator).append("(");
+                for (int i = 0; i < keys.size(); i++) {
+                    if (i > 0) sql.append(", ");
+                    sql.append("?");
+                }
+                sql.append(")");
+            }
+            parameters.addAll(values);
+            return;
+        }
+
+        sql.append("(");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) sql.append(" OR ");
+            sql.append("(");
+            for (int j = 0; j < i; j++) {
+                generateExpression(keys.get(j).getExpression(), rootPath.resolver(), sql);
+                sql.append(" = ? AND ");
+                parameters.add(values.get(j));
+            }
+            generateExpression(keys.get(i).getExpression(), rootPath.resolver(), sql);
+            sql.append(keys.get(i).isAscending() ? " > ?" : " < ?");
+            parameters.add(values.get(i));
+            sql.append(")");
+        }
+        sql.append(")");
+    }
+
     private void generateAggregateExpression(AggregateExpression expr, PathResolver pathResolver, StringBuilder sql) {
         sql.append(expr.getFunction().name())
            .append("(");
@@ -237,39 +948,105 @@ public class SQLGenerator {
             this.reference = reference;
         }
 
+        private int hash;
+        private Map<ReferenceAttribute, DomainPath> children;
+        private SimplePathResolver resolver;
+
+        /**
+         * The path reached by following the reference, created once.
+         */
+        DomainPath child(ReferenceAttribute reference) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            DomainPath child = children.get(reference);
+            if (child == null) {
+                child = new DomainPath(reference.getReferenceDomain(), this, reference);
+                children.put(reference, child);
+            }
+            return child;
+        }
+
+        SimplePathResolver resolver() {
+            if (resolver == null) {
+                resolver = new SimplePathResolver(this);
+            }
+            return resolver;
+        }
+
+        /*
+         * Paths are interned by their parent (see child()), so that equal
+         * paths are most often the same instance; others are compared up to
+         * the first ancestor they share.
+         */
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
             if (!(o instanceof DomainPath)) return false;
+            DomainPath path = this;
             DomainPath that = (DomainPath) o;
-            return Objects.equals(domain, that.domain) &&
-                   Objects.equals(parent, that.parent) &&
-                   Objects.equals(reference, that.reference);
+            while (path != that) {
+                if (path == null || that == null || path.hashCode() != that.hashCode()
+                    || !Objects.equals(path.domain, that.domain)
+                    || !Objects.equals(path.reference, that.reference)) {
+                    return false;
+                }
+                path = path.parent;
+                that = that.parent;
+            }
+            return true;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(domain, parent, reference);
+            if (hash == 0) {
+                hash = Objects.hash(domain, parent, reference);
+            }
+            return hash;
         }
     }
 
+    /**
+     * The join graph of a query: the paths it navigates, interned from their
+     * root, and the alias of each.
+     */
     public static class JoinContext {
         private final Map<DomainPath, String> domainAliases = new LinkedHashMap<>();
-        private int aliasCounter = 0;
+        private final Map<Domain, DomainPath> roots = new HashMap<>();
+        private final Set<String> aliases = new HashSet<>();
+        private final Map<String, Integer> aliasCounters = new HashMap<>();
+
+        /**
+         * The path starting at the domain, whose descendants are then shared
+         * by every navigation from it.
+         */
+        public DomainPath root(Domain domain) {
+            DomainPath root = roots.get(domain);
+            if (root == null) {
+                root = new DomainPath(domain);
+                roots.put(domain, root);
+            }
+            return root;
+        }
 
         public String getOrCreateAlias(DomainPath path) {
-            String alias = domainAliases.computeIfAbsent(path, p -> {
-                return generateUniqueAlias(generateMeaningfullAlias(p));
-            });
-            addJoin(path, alias);
+            String alias = domainAliases.get(path);
+            if (alias == null) {
+                alias = generateUniqueAlias(generateMeaningfullAlias(path));
+                addJoin(path, alias);
+            }
             return alias;
         }
 
         private String generateUniqueAlias(String someAlias) {
-            if (domainAliases.containsValue(someAlias)) {
-                return someAlias + "_" + (++aliasCounter);
+            String alias = someAlias;
+            int counter = aliasCounters.getOrDefault(someAlias, 0);
+            // a suffixed alias may itself be taken, by a reference named like it
+            while (aliases.contains(alias)) {
+                alias = someAlias + "_" + (++counter);
             }
-            return someAlias;
+            aliasCounters.put(someAlias, counter);
+            return alias;
         }
 
         private String generateMeaningfullAlias(DomainPath path) {
@@ -281,7 +1058,9 @@ public class SQLGenerator {
         }
 
         private void addJoin(DomainPath path, String alias) {
-            domainAliases.putIfAbsent(path, alias);
+            if (domainAliases.putIfAbsent(path, alias) == null) {
+                aliases.add(alias);
+            }
         }
 
         public void forEachJoin(BiConsumer<DomainPath, String> consumer) {
@@ -289,6 +1068,10 @@ public class SQLGenerator {
                 .forEach(e -> consumer.accept(e.getKey(), e.getValue()));
         }
 
+        public List<DomainPath> getPaths() {
+            return new ArrayList<>(domainAliases.keySet());
+        }
+
         public Integer getAliasCount() {
             return domainAliases.size();
         }
@@ -312,13 +1095,22 @@ public class SQLGenerator {
     }
     
     public static class JoinPathResolver implements PathResolver {
-        private final DomainPath leftPath;
-        private final DomainPath rightPath;
+        private DomainPath leftPath;
+        private DomainPath rightPath;
     
         public JoinPathResolver(DomainPath leftPath, DomainPath rightPath) {
             this.leftPath = leftPath;
             this.rightPath = rightPath;
         }
+
+        /**
+         * Points the resolver to another join, so that one instance serves them all.
+         */
+        JoinPathResolver at(DomainPath leftPath, DomainPath rightPath) {
+            this.leftPath = leftPath;
+            this.rightPath = rightPath;
+            return this;
+        }
     
         @Override
         public DomainPath resolve(AttributeExpression expr) {
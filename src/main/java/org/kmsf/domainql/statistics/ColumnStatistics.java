@@ -0,0 +1,51 @@
+package org.kmsf.domainql.statistics;
+
+import com.google.gson.JsonObject;
+
+public class ColumnStatistics {
+    private final long distinctCount;
+    private final double nullFraction;
+    private final Histogram histogram;
+
+    /**
+     * @param histogram distribution of the non-null values, null for
+     *                  non-numeric columns
+     */
+    public ColumnStatistics(long distinctCount, double nullFraction, Histogram histogram) {
+        if (nullFraction < 0 || nullFraction > 1) {
+            throw new IllegalArgumentException("Null fraction must be between 0 and 1, got " + nullFraction);
+        }
+        this.distinctCount = distinctCount;
+        this.nullFraction = nullFraction;
+        this.histogram = histogram;
+    }
+
+    public long getDistinctCount() {
+        return distinctCount;
+    }
+
+    public double getNullFraction() {
+        return nullFraction;
+    }
+
+    public Histogram getHistogram() {
+        return histogram;
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("distinctCount", distinctCount);
+        json.addProperty("nullFraction", nullFraction);
+        if (histogram != null) {
+            json.add("histogram", histogram.toJson());
+        }
+        return json;
+    }
+
+    public static ColumnStatistics fromJson(JsonObject json) {
+        return new ColumnStatistics(
+            json.get("distinctCount").getAsLong(),
+            json.get("nullFraction").getAsDouble(),
+            json.has("histogram") ? Histogram.fromJson(json.getAsJsonArray("histogram")) : null);
+    }
+}
@@ -0,0 +1,91 @@
+package org.kmsf.domainql.statistics;
+
+import java.util.Arrays;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+/**
+ * Equi-depth histogram of a numeric column: each of the buckets delimited by
+ * consecutive bounds holds the same share of the non-null values.
+ */
+public class Histogram {
+    private final double[] bounds;
+
+    public Histogram(double[] bounds) {
+        if (bounds.length < 2) {
+            throw new IllegalArgumentException("A histogram needs at least two bounds");
+        }
+        this.bounds = bounds.clone();
+    }
+
+    /**
+     * Builds a histogram of at most {@code buckets} buckets from sorted values.
+     */
+    public static Histogram of(double[] sortedValues, int buckets) {
+        if (sortedValues.length == 0) {
+            return null;
+        }
+        int count = Math.max(1, Math.min(buckets, sortedValues.length - 1));
+        double[] bounds = new double[count + 1];
+        for (int i = 0; i <= count; i++) {
+            bounds[i] = sortedValues[(int) ((long) i * (sortedValues.length - 1) / count)];
+        }
+        return new Histogram(bounds);
+    }
+
+    public double getMin() {
+        return bounds[0];
+    }
+
+    public double getMax() {
+        return bounds[bounds.length - 1];
+    }
+
+    /**
+     * Estimated fraction of the non-null values lower than the given one,
+     * interpolating linearly within a bucket.
+     */
+    public double fractionBelow(double value) {
+        if (value <= bounds[0]) {
+            return 0;
+        }
+        int buckets = bounds.length - 1;
+        if (value > bounds[buckets]) {
+            return 1;
+        }
+        int position = Arrays.binarySearch(bounds, value);
+        int bucket = position >= 0 ? firstIndexOf(position) - 1 : -position - 2;
+        if (position >= 0) {
+            // the value is a bound: all the buckets before it are below
+            return (double) (bucket + 1) / buckets;
+        }
+        double width = bounds[bucket + 1] - bounds[bucket];
+        double within = width == 0 ? 0 : (value - bounds[bucket]) / width;
+        return (bucket + within) / buckets;
+    }
+
+    private int firstIndexOf(int position) {
+        while (position > 0 && bounds[position - 1] == bounds[position]) {
+            position--;
+        }
+        return position;
+    }
+
+    public JsonArray toJson() {
+        JsonArray json = new JsonArray();
+        for (double bound : bounds) {
+            json.add(bound);
+        }
+        return json;
+    }
+
+    public static Histogram fromJson(JsonArray json) {
+        double[] bounds = new double[json.size()];
+        int i = 0;
+        for (JsonElement bound : json) {
+            bounds[i++] = bound.getAsDouble();
+        }
+        return new Histogram(bounds);
+    }
+}
@@ -0,0 +1,92 @@
+package org.kmsf.domainql.statistics;
+
+/**
+ * Approximate count of distinct values in constant memory: each value is
+ * hashed, the first bits of the hash select a register, which keeps the
+ * longest run of leading zeros seen in the remaining bits. With the default
+ * 4096 registers the standard error is about 1.6%.
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18, got " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(Object value) {
+        if (value == null) {
+            return;
+        }
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of precision " + precision
+                + " and " + other.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate on small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /*
+     * A 64-bit hash spreading the bits of the value: integral numbers hash by
+     * value, so that 1, 1L and BigDecimal 1 count once.
+     */
+    private static long hash(Object value) {
+        long h;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            h = ((Number) value).longValue();
+        } else if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            h = d == Math.rint(d) && !Double.isInfinite(d) ? (long) d : Double.doubleToLongBits(d);
+        } else if (value instanceof CharSequence) {
+            h = 0xcbf29ce484222325L;
+            CharSequence chars = (CharSequence) value;
+            for (int i = 0; i < chars.length(); i++) {
+                h = (h ^ chars.charAt(i)) * 0x100000001b3L;
+            }
+        } else {
+            h = value.hashCode();
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,207 @@
+package org.kmsf.domainql.statistics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.type.Operator;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Statistics of the tables behind the domains, by domain name, and the
+ * selectivity estimates derived from them. Predicates the statistics cannot
+ * describe get the usual default estimates: {@link #DEFAULT_EQUALITY} for an
+ * equality, {@link #DEFAULT_RANGE} for a range comparison.
+ */
+public class StatisticsCatalog {
+    public static final double DEFAULT_EQUALITY = 0.005;
+    public static final double DEFAULT_RANGE = 1.0 / 3;
+    public static final double DEFAULT_LIKE = 0.1;
+    public static final long DEFAULT_ROW_COUNT = 1000;
+
+    private final Map<String, TableStatistics> tables = new HashMap<>();
+
+    public void put(Domain domain, TableStatistics statistics) {
+        tables.put(domain.getName(), statistics);
+    }
+
+    /**
+     * Statistics of the domain's table, or null if none were collected.
+     */
+    public TableStatistics get(Domain domain) {
+        return tables.get(domain.getName());
+    }
+
+    public boolean isEmpty() {
+        return tables.isEmpty();
+    }
+
+    public long getRowCount(Domain domain) {
+        TableStatistics statistics = get(domain);
+        return statistics == null ? DEFAULT_ROW_COUNT : statistics.getRowCount();
+    }
+
+    /**
+     * Estimated number of rows of the domain satisfying the predicate (all
+     * rows when it is null).
+     */
+    public double estimateRows(Domain domain, Expression predicate) {
+        return getRowCount(domain) * (predicate == null ? 1.0 : selectivity(predicate));
+    }
+
+    /**
+     * Estimated fraction of the rows satisfying the predicate, between 0 and 1.
+     * Conjuncts and disjuncts are assumed independent.
+     */
+    public double selectivity(Expression predicate) {
+        if (predicate instanceof LogicalExpression) {
+            return combine(((LogicalExpression) predicate).getOperator(), ((LogicalExpression) predicate).getOperands());
+        } else if (predicate instanceof LiteralExpression && ((LiteralExpression) predicate).getValue() instanceof Boolean) {
+            return (Boolean) ((LiteralExpression) predicate).getValue() ? 1 : 0;
+        } else if (!(predicate instanceof BinaryExpression)) {
+            return DEFAULT_RANGE;
+        }
+        BinaryExpression binary = (BinaryExpression) predicate;
+        Operator operator = binary.getOperator();
+        if (operator == Operator.AND || operator == Operator.OR) {
+            return combine(operator, List.of(binary.getLeft(), binary.getRight()));
+        }
+        ColumnStatistics column = column(binary.getLeft());
+        Expression other = binary.getRight();
+        if (column == null && column(binary.getRight()) != null) {
+            column = column(binary.getRight());
+            other = binary.getLeft();
+            operator = mirror(operator);
+        }
+        return clamp(selectivity(column, operator, other));
+    }
+
+    private double combine(Operator operator, List<Expression> operands) {
+        double result = 1;
+        for (Expression operand : operands) {
+            result *= operator == Operator.AND ? selectivity(operand) : 1 - selectivity(operand);
+        }
+        return operator == Operator.AND ? result : 1 - result;
+    }
+
+    private double selectivity(ColumnStatistics column, Operator operator, Expression other) {
+        if (column == null) {
+            switch (operator) {
+                case EQUALS: return DEFAULT_EQUALITY;
+                case NOT_EQUALS: return 1 - DEFAULT_EQUALITY;
+                case LIKE: return DEFAULT_LIKE;
+                case IN: return DEFAULT_EQUALITY * Math.max(1, values(other).size());
+                default: return DEFAULT_RANGE;
+            }
+        }
+        double nonNull = 1 - column.getNullFraction();
+        switch (operator) {
+            case EQUALS:
+                if (other instanceof LiteralExpression) {
+                    return equality(column, ((LiteralExpression) other).getValue());
+                }
+                ColumnStatistics otherColumn = column(other);
+                long distinct = Math.max(column.getDistinctCount(),
+                    otherColumn == null ? 0 : otherColumn.getDistinctCount());
+                return nonNull / Math.max(1, distinct);
+            case NOT_EQUALS:
+                return nonNull - (other instanceof LiteralExpression
+                    ? equality(column, ((LiteralExpression) other).getValue())
+                    : nonNull / Math.max(1, column.getDistinctCount()));
+            case IN:
+                double sum = 0;
+                for (Object value : values(other)) {
+                    sum += equality(column, value);
+                }
+                return Math.min(nonNull, sum);
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUALS:
+                return nonNull * below(column, other, DEFAULT_RANGE);
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUALS:
+                return nonNull * (1 - below(column, other, 1 - DEFAULT_RANGE));
+            case LIKE:
+                return nonNull * DEFAULT_LIKE;
+            default:
+                return DEFAULT_RANGE;
+        }
+    }
+
+    private static double equality(ColumnStatistics column, Object value) {
+        Histogram histogram = column.getHistogram();
+        if (histogram != null && value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (number < histogram.getMin() || number > histogram.getMax()) {
+                return 0;
+            }
+        }
+        return (1 - column.getNullFraction()) / Math.max(1, column.getDistinctCount());
+    }
+
+    private static double below(ColumnStatistics column, Expression other, double fallback) {
+        if (column.getHistogram() != null && other instanceof LiteralExpression
+            && ((LiteralExpression) other).getValue() instanceof Number) {
+            return column.getHistogram().fractionBelow(((Number) ((LiteralExpression) other).getValue()).doubleValue());
+        }
+        return fallback;
+    }
+
+    private static List<?> values(Expression expr) {
+        if (expr instanceof LiteralExpression && ((LiteralExpression) expr).getValue() instanceof List) {
+            return (List<?>) ((LiteralExpression) expr).getValue();
+        }
+        return List.of();
+    }
+
+    /*
+     * Statistics of the column an expression reads, following paths to the
+     * attribute of the referenced domain.
+     */
+    private ColumnStatistics column(Expression expr) {
+        while (expr instanceof ComposeExpression) {
+            expr = ((ComposeExpression) expr).getComposition();
+        }
+        if (!(expr instanceof AttributeExpression)) {
+            return null;
+        }
+        Attribute attribute = ((AttributeExpression) expr).getAttribute();
+        TableStatistics table = get(attribute.getDomain());
+        return table == null ? null : table.getColumn(attribute.getName());
+    }
+
+    private static Operator mirror(Operator operator) {
+        switch (operator) {
+            case LESS_THAN: return Operator.GREATER_THAN;
+            case LESS_THAN_OR_EQUALS: return Operator.GREATER_THAN_OR_EQUALS;
+            case GREATER_THAN: return Operator.LESS_THAN;
+            case GREATER_THAN_OR_EQUALS: return Operator.LESS_THAN_OR_EQUALS;
+            default: return operator;
+        }
+    }
+
+    private static double clamp(double selectivity) {
+        return Math.max(0, Math.min(1, selectivity));
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        tables.forEach((name, table) -> json.add(name, table.toJson()));
+        return json;
+    }
+
+    public static StatisticsCatalog fromJson(JsonObject json) {
+        StatisticsCatalog catalog = new StatisticsCatalog();
+        json.entrySet().forEach(
+            table -> catalog.tables.put(table.getKey(), TableStatistics.fromJson(table.getValue().getAsJsonObject())));
+        return catalog;
+    }
+}
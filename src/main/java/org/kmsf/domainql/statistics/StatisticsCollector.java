@@ -0,0 +1,240 @@
+package org.kmsf.domainql.statistics;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.jdbc.QueryExecutionException;
+
+/**
+ * Computes the statistics of a domain from its rows, either given in memory
+ * or read from the table of the same name. Distinct counts come from a
+ * {@link HyperLogLog} sketch, and the histograms are built from a uniform
+ * sample (reservoir) of at most {@code sampleSize} values per column, so that
+ * collecting a large table takes a single scan in bounded memory.
+ *
+ * <p>A table is scanned through a sample of its rows, a fraction of them
+ * (see {@link #setScanFraction(double)}): the row count is scaled up from the
+ * rows read, and so are the distinct counts of the columns whose values
+ * mostly differ. The sample is taken by the database where it knows how
+ * (TABLESAMPLE, or a random filter), otherwise from the rows as they are
+ * read. Scanning every row, for exact counts, is asked for with a fraction of
+ * 1. In-memory rows are always counted exactly.
+ */
+public class StatisticsCollector {
+    public static final int DEFAULT_SAMPLE_SIZE = 10_000;
+    public static final int DEFAULT_BUCKETS = 32;
+    public static final double DEFAULT_SCAN_FRACTION = 0.1;
+
+    private final int sampleSize;
+    private final int buckets;
+    private final long seed;
+    private double scanFraction = DEFAULT_SCAN_FRACTION;
+
+    public StatisticsCollector() {
+        this(DEFAULT_SAMPLE_SIZE, DEFAULT_BUCKETS);
+    }
+
+    public StatisticsCollector(int sampleSize, int buckets) {
+        this(sampleSize, buckets, 0);
+    }
+
+    public StatisticsCollector(int sampleSize, int buckets, long seed) {
+        if (sampleSize < 2 || buckets < 1) {
+            throw new IllegalArgumentException("Sample size must be at least 2 and buckets at least 1, got "
+                + sampleSize + " and " + buckets);
+        }
+        this.sampleSize = sampleSize;
+        this.buckets = buckets;
+        this.seed = seed;
+    }
+
+    /**
+     * The fraction of the rows of a table read to collect its statistics, 1
+     * to read them all and count them exactly.
+     */
+    public StatisticsCollector setScanFraction(double scanFraction) {
+        if (!(scanFraction > 0 && scanFraction <= 1)) {
+            throw new IllegalArgumentException("Scan fraction must be in (0, 1], got " + scanFraction);
+        }
+        this.scanFraction = scanFraction;
+        return this;
+    }
+
+    /**
+     * Statistics of in-memory rows, each mapping column names to values.
+     */
+    public TableStatistics collect(Domain domain, Iterable<? extends Map<String, ?>> rows) {
+        Map<String, ColumnAccumulator> columns = accumulators(domain);
+        long rowCount = 0;
+        for (Map<String, ?> row : rows) {
+            rowCount++;
+            for (Map.Entry<String, ColumnAccumulator> column : columns.entrySet()) {
+                column.getValue().add(row.get(column.getKey()));
+            }
+        }
+        return build(rowCount, columns, 1);
+    }
+
+    /**
+     * Statistics of the domain's table, read in one forward-only scan of the
+     * sampled rows.
+     */
+    public TableStatistics collect(Domain domain, DataSource dataSource) {
+        Map<String, ColumnAccumulator> columns = accumulators(domain);
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Domain '" + domain.getName() + "' has no column to scan");
+        }
+        String sql = null;
+        long rowCount = 0;
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            String sampling = scanFraction < 1 ? samplingClause(connection.getMetaData().getDatabaseProductName()) : "";
+            sql = "SELECT " + String.join(", ", columns.keySet()) + " FROM " + domain.getName()
+                + (sampling == null ? "" : sampling);
+            // without a sampling clause, the rows are sampled as they are read
+            Random keep = sampling == null ? new Random(seed) : null;
+            statement.setFetchSize(1000);
+            try (ResultSet resultSet = statement.executeQuery(sql)) {
+                List<ColumnAccumulator> accumulators = new ArrayList<>(columns.values());
+                while (resultSet.next()) {
+                    if (keep != null && keep.nextDouble() >= scanFraction) {
+                        continue;
+                    }
+                    rowCount++;
+                    for (int i = 0; i < accumulators.size(); i++) {
+                        accumulators.get(i).add(resultSet.getObject(i + 1));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new QueryExecutionException("Failed to collect statistics with " + sql, e);
+        }
+        return build(rowCount, columns, scanFraction);
+    }
+
+    /*
+     * The clause sampling the rows of a table for the database, or null if it
+     * is not known to have one.
+     */
+    String samplingClause(String product) {
+        String percent = BigDecimal.valueOf(scanFraction).movePointRight(2).stripTrailingZeros().toPlainString();
+        switch (product) {
+            case "PostgreSQL":
+                return " TABLESAMPLE SYSTEM (" + percent + ")";
+            case "Microsoft SQL Server":
+                return " TABLESAMPLE (" + percent + " PERCENT)";
+            case "Oracle":
+                return " SAMPLE (" + percent + ")";
+            case "H2":
+            case "MySQL":
+            case "MariaDB":
+                return " WHERE RAND() < " + BigDecimal.valueOf(scanFraction).toPlainString();
+            default:
+                return product.startsWith("DB2") ? " TABLESAMPLE SYSTEM (" + percent + ")" : null;
+        }
+    }
+
+    /**
+     * Collects the statistics of every table-backed domain of the registry
+     * into its catalog.
+     */
+    public void collect(DomainRegistry registry, DataSource dataSource) {
+        for (Domain domain : registry.getAllDomains()) {
+            if (!(domain instanceof Query)) {
+                registry.getStatistics().put(domain, collect(domain, dataSource));
+            }
+        }
+    }
+
+    private Map<String, ColumnAccumulator> accumulators(Domain domain) {
+        if (domain instanceof Query) {
+            throw new IllegalArgumentException("Query '" + domain.getName() + "' is not backed by a table");
+        }
+        Map<String, ColumnAccumulator> columns = new LinkedHashMap<>();
+        Random random = new Random(seed);
+        for (Attribute attribute : domain.getAttributes()) {
+            if (!(attribute instanceof ReferenceAttribute)) {
+                columns.put(attribute.getName(), new ColumnAccumulator(random));
+            }
+        }
+        return columns;
+    }
+
+    private TableStatistics build(long rowCount, Map<String, ColumnAccumulator> columns, double fraction) {
+        Map<String, ColumnStatistics> statistics = new LinkedHashMap<>();
+        columns.forEach((name, column) -> statistics.put(name, column.build(rowCount, fraction)));
+        return new TableStatistics(Math.round(rowCount / fraction), statistics);
+    }
+
+    private class ColumnAccumulator {
+        private final Random random;
+        private final HyperLogLog distinct = new HyperLogLog();
+        private final double[] sample = new double[sampleSize];
+        private long nulls;
+        private long numbers;
+        private boolean numeric = true;
+
+        ColumnAccumulator(Random random) {
+            this.random = random;
+        }
+
+        void add(Object value) {
+            if (value == null) {
+                nulls++;
+                return;
+            }
+            distinct.add(value);
+            if (!(value instanceof Number)) {
+                numeric = false;
+            } else if (numeric) {
+                numbers++;
+                if (numbers <= sampleSize) {
+                    sample[(int) numbers - 1] = ((Number) value).doubleValue();
+                } else {
+                    long slot = (long) (random.nextDouble() * numbers);
+                    if (slot < sampleSize) {
+                        sample[(int) slot] = ((Number) value).doubleValue();
+                    }
+                }
+            }
+        }
+
+        /*
+         * From a sample, the distinct count is scaled up as much as the
+         * values seen mostly differ: a column seen with few repeated values
+         * has as many more in the rows not read, while one with few values
+         * repeated many times has likely shown them all.
+         */
+        ColumnStatistics build(long rowCount, double fraction) {
+            Histogram histogram = null;
+            if (numeric && numbers > 0) {
+                double[] sorted = Arrays.copyOf(sample, (int) Math.min(numbers, sampleSize));
+                Arrays.sort(sorted);
+                histogram = Histogram.of(sorted, buckets);
+            }
+            long values = rowCount - nulls;
+            long distinctCount = Math.min(distinct.estimate(), values);
+            if (fraction < 1 && values > 0) {
+                double unique = (double) distinctCount / values;
+                distinctCount = Math.round(distinctCount * (1 + unique * (1 / fraction - 1)));
+            }
+            return new ColumnStatistics(distinctCount, rowCount == 0 ? 0 : (double) nulls / rowCount, histogram);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.kmsf.domainql.statistics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+
+public class TableStatistics {
+    private final long rowCount;
+    private final Map<String, ColumnStatistics> columns;
+
+    public TableStatistics(long rowCount, Map<String, ColumnStatistics> columns) {
+        this.rowCount = rowCount;
+        this.columns = new LinkedHashMap<>(columns);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Statistics of the column, or null if it was not collected.
+     */
+    public ColumnStatistics getColumn(String name) {
+        return columns.get(name);
+    }
+
+    public Map<String, ColumnStatistics> getColumns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("rowCount", rowCount);
+        JsonObject columnsJson = new JsonObject();
+        columns.forEach((name, column) -> columnsJson.add(name, column.toJson()));
+        json.add("columns", columnsJson);
+        return json;
+    }
+
+    public static TableStatistics fromJson(JsonObject json) {
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        json.getAsJsonObject("columns").entrySet().forEach(
+            column -> columns.put(column.getKey(), ColumnStatistics.fromJson(column.getValue().getAsJsonObject())));
+        return new TableStatistics(json.get("rowCount").getAsLong(), columns);
+    }
+}
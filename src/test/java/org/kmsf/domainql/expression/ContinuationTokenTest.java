@@ -0,0 +1,37 @@
+package org.kmsf.domainql.expression;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContinuationTokenTest {
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        ContinuationToken token = ContinuationToken.of(
+            "Smith", 42, 7L, 1.5, new BigDecimal("12.50"), true, LocalDate.of(2024, 3, 1), null
+        );
+
+        ContinuationToken decoded = ContinuationToken.decode(token.encode());
+
+        assertEquals(token, decoded);
+        assertEquals(Arrays.asList("Smith", 42, 7L, 1.5, new BigDecimal("12.50"), true, LocalDate.of(2024, 3, 1), null),
+            decoded.getValues());
+    }
+
+    @Test
+    void testEncodedTokenIsOpaque() {
+        String encoded = ContinuationToken.of("Smith", 42).encode();
+        assertFalse(encoded.contains("Smith"));
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    void testDecodeInvalidToken() {
+        assertThrows(IllegalArgumentException.class, () -> ContinuationToken.decode("not a token"));
+    }
+}
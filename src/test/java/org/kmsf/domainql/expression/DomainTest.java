@@ -126,4 +126,25 @@ class DomainTest {
         );
         assertTrue(exception.getMessage().contains("missing_attr"));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testReferenceToDeclaredKeyIsToOne() {
+        Domain employee = new Domain("employee")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("manager_id", ScalarType.INTEGER)
+            .withAttribute("dept_id", ScalarType.INTEGER);
+        Domain department = new Domain("department")
+            .withAttribute("id", ScalarType.INTEGER);
+        ReferenceAttribute toDepartment = employee.addReference("department", "dept_id", department, "id");
+        ReferenceAttribute toManager = employee.addReference("manager", "manager_id", employee, "id");
+        ReferenceAttribute toEmployees = department.addReference("employees", "id", employee, "dept_id");
+
+        assertFalse(toDepartment.isToOne());
+        department.addKey("id");
+        employee.addKey("id");
+        assertTrue(toDepartment.isToOne());
+        assertTrue(toManager.isToOne());
+        assertFalse(toEmployees.isToOne());
+        assertThrows(IllegalArgumentException.class, () -> department.addKey("missing"));
+    }
+}
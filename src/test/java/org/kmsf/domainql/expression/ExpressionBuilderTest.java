@@ -133,11 +133,23 @@ class ExpressionBuilderTest {
             )
         ).build(employeeDomain);
         
-        assertTrue(expr instanceof BinaryExpression);
-        BinaryExpression binExpr = (BinaryExpression) expr;
-        assertEquals(Operator.AND, binExpr.getOperator());
-        assertTrue(binExpr.getLeft() instanceof BinaryExpression);
-        assertTrue(binExpr.getRight() instanceof BinaryExpression);
+        // the nested ANDs are a single flat node
+        assertTrue(expr instanceof LogicalExpression);
+        LogicalExpression andExpr = (LogicalExpression) expr;
+        assertEquals(Operator.AND, andExpr.getOperator());
+        assertEquals(3, andExpr.getOperands().size());
+        assertTrue(andExpr.getOperands().stream().allMatch(operand -> operand instanceof BinaryExpression));
+    }
+
+    @Test
+    void testLongLogicalChainBuildsWithoutDeepRecursion() {
+        ExpressionBuilder chain = GREATER_THAN(attr("salary"), literal(0));
+        for (int i = 1; i < 100_000; i++) {
+            chain = OR(chain, GREATER_THAN(attr("salary"), literal(i)));
+        }
+        Expression expr = chain.build(employeeDomain);
+
+        assertEquals(100_000, ((LogicalExpression) expr).getOperands().size());
     }
 
     @Test
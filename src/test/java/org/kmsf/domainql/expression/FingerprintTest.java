@@ -0,0 +1,140 @@
+package org.kmsf.domainql.expression;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FingerprintTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("age", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+    }
+
+    private Query payroll(String company, int minimumAge, List<Integer> ids, int limit) {
+        return QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(eq("works_for.name", company))
+            .where(GREATER_THAN(attr("age"), literal(minimumAge)))
+            .where(IN(attr("id"), literal(ids)))
+            .orderBy("works_for.name", true)
+            .limit(limit)
+            .build();
+    }
+
+    @Test
+    void testLiteralsAreParameters() {
+        Fingerprint acme = payroll("ACME", 30, List.of(1, 2), 10).fingerprint();
+        Fingerprint globex = payroll("Globex", 40, List.of(3, 4, 5), 20).fingerprint();
+
+        assertEquals(acme, globex);
+        assertEquals(acme.toHex(), globex.toHex());
+        assertEquals(List.of("ACME", 30, List.of(1, 2), 10), acme.getParameters());
+        assertEquals(List.of("Globex", 40, List.of(3, 4, 5), 20), globex.getParameters());
+    }
+
+    @Test
+    void testShapeChangesTheFingerprint() {
+        Fingerprint reference = payroll("ACME", 30, List.of(1), 10).fingerprint();
+        Query otherComparison = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(eq("works_for.name", "ACME"))
+            .where(LESS_THAN(attr("age"), literal(30)))
+            .where(IN(attr("id"), literal(List.of(1))))
+            .orderBy("works_for.name", true)
+            .limit(10)
+            .build();
+        Query otherAggregate = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", AVG(attr("salary")))
+            .where(eq("works_for.name", "ACME"))
+            .where(GREATER_THAN(attr("age"), literal(30)))
+            .where(IN(attr("id"), literal(List.of(1))))
+            .orderBy("works_for.name", true)
+            .limit(10)
+            .build();
+        Query otherLiteralType = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(eq("works_for.name", "ACME"))
+            .where(GREATER_THAN(attr("age"), literal(30L)))
+            .where(IN(attr("id"), literal(List.of(1))))
+            .orderBy("works_for.name", true)
+            .limit(10)
+            .build();
+
+        assertNotEquals(reference, otherComparison.fingerprint());
+        assertNotEquals(reference, otherAggregate.fingerprint());
+        assertNotEquals(reference, otherLiteralType.fingerprint());
+        assertNotEquals(reference.getHigh(), otherComparison.fingerprint().getHigh());
+        assertNotEquals(reference.getLow(), otherComparison.fingerprint().getLow());
+    }
+
+    @Test
+    void testExpressionFingerprint() {
+        Expression adults = GREATER_THAN(attr("age"), literal(18)).build(personDomain);
+        Expression seniors = GREATER_THAN(attr("age"), literal(65)).build(personDomain);
+        Expression young = LESS_THAN(attr("age"), literal(18)).build(personDomain);
+
+        assertEquals(adults.fingerprint(), seniors.fingerprint());
+        assertEquals(List.of(65), seniors.fingerprint().getParameters());
+        assertNotEquals(adults.fingerprint(), young.fingerprint());
+        // the hash only depends on the shape, not on the JVM computing it
+        assertEquals("7227896fc52e2f4501363ad1fdb4768b", adults.fingerprint().toHex());
+    }
+
+    @Test
+    void testSourceQueriesAndPagesAreIncluded() {
+        Query acme = QueryBuilder.from("top", payroll("ACME", 30, List.of(1), 10))
+            .select("company")
+            .orderBy("total", false)
+            .build();
+        acme.setPage(5, ContinuationToken.of(1000));
+        Query globex = QueryBuilder.from("top", payroll("Globex", 30, List.of(1), 10))
+            .select("company")
+            .orderBy("total", false)
+            .build();
+        globex.setPage(5, ContinuationToken.of(2000));
+
+        assertEquals(acme.fingerprint(), globex.fingerprint());
+        assertEquals(List.of("Globex", 30, List.of(1), 10, 5, 2000), globex.fingerprint().getParameters());
+        assertNotEquals(acme.fingerprint(), payroll("ACME", 30, List.of(1), 10).fingerprint());
+    }
+
+    @Test
+    void testCatalogFingerprint() {
+        DomainRegistry registry = new DomainRegistry();
+        registry.register(personDomain);
+        registry.register(((ReferenceAttribute) personDomain.getAttribute("works_for")).getReferenceDomain());
+        Fingerprint catalog = registry.fingerprint();
+
+        DomainRegistry reversed = new DomainRegistry();
+        reversed.register(registry.getDomain("company"));
+        reversed.register(personDomain);
+        assertEquals(catalog, reversed.fingerprint());
+
+        personDomain.addKey("id");
+        assertNotEquals(catalog, registry.fingerprint());
+        Fingerprint keyed = registry.fingerprint();
+        registry.getDomain("company").addAttribute("founded", ScalarType.DATE);
+        assertNotEquals(keyed, registry.fingerprint());
+    }
+}
@@ -148,8 +148,9 @@ public class QueryBuilderTest {
         assertNotNull(query);
         assertEquals(5, query.getProjections().size());
         assertNotNull(query.getFilter());
-        assertTrue(query.getFilter() instanceof BinaryExpression);
-        assertTrue(((BinaryExpression)query.getFilter()).getOperator() == Operator.AND);
+        assertTrue(query.getFilter() instanceof LogicalExpression);
+        assertTrue(((LogicalExpression)query.getFilter()).getOperator() == Operator.AND);
+        assertEquals(2, ((LogicalExpression)query.getFilter()).getOperands().size());
     }
 
     @Test
@@ -0,0 +1,154 @@
+package org.kmsf.domainql.jdbc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+
+public class ConcurrentQueryExecutorTest {
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+    private Domain numberDomain;
+    private Domain slowDomain;
+
+    public static int slow(int value) throws InterruptedException {
+        Thread.sleep(20);
+        return value;
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:concurrent_test;DB_CLOSE_DELAY=-1");
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE number (n INT)");
+            statement.execute("INSERT INTO number SELECT X FROM SYSTEM_RANGE(1, 500)");
+            statement.execute("CREATE ALIAS SLOW FOR 'org.kmsf.domainql.jdbc.ConcurrentQueryExecutorTest.slow'");
+            statement.execute("CREATE VIEW slow_number AS SELECT SLOW(n) AS n FROM number");
+        }
+        numberDomain = new Domain("number").withAttribute("n", ScalarType.INTEGER);
+        slowDomain = new Domain("slow_number").withAttribute("n", ScalarType.INTEGER);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    void testFanOutReturnsEveryResult() throws Exception {
+        List<Query> queries = new ArrayList<>();
+        for (int i = 1; i <= 60; i++) {
+            queries.add(QueryBuilder.from("upto_" + i, numberDomain)
+                .select("total", COUNT(attr("n")))
+                .where(LESS_THAN_OR_EQUALS(attr("n"), literal(i)))
+                .build());
+        }
+
+        try (ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(new QueryExecutor(dataSource), 4)) {
+            List<CompletableFuture<Integer>> futures = executor.submitAll(queries, Duration.ofSeconds(30), cursor -> {
+                cursor.next();
+                return cursor.getInt("total");
+            });
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i + 1, futures.get(i).get(30, TimeUnit.SECONDS));
+            }
+            assertEquals(4, executor.availableConnections());
+        }
+    }
+
+    @Test
+    void testQueriesAreCompiledByTheExecutorGenerators() throws Exception {
+        AtomicInteger generated = new AtomicInteger();
+        QueryExecutor configured = new QueryExecutor(dataSource).withGenerators(query -> {
+            generated.incrementAndGet();
+            return new SQLGenerator(query).setCanonical(true);
+        });
+        Query query = QueryBuilder.from("upto_10", numberDomain)
+            .select("total", COUNT(attr("n")))
+            .where(LESS_THAN_OR_EQUALS(attr("n"), literal(10)))
+            .build();
+
+        try (ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(configured, 2)) {
+            CompletableFuture<Integer> future = executor.submit(query, Duration.ofSeconds(30), cursor -> {
+                cursor.next();
+                return cursor.getInt("total");
+            });
+            assertEquals(10, future.get(30, TimeUnit.SECONDS));
+        }
+        assertEquals(1, generated.get());
+    }
+
+    @Test
+    void testDeadlineCancelsRunningStatement() throws Exception {
+        Query query = QueryBuilder.from("slow", slowDomain).select("n").build();
+
+        try (ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(new QueryExecutor(dataSource), 1)) {
+            CompletableFuture<Integer> future = executor.submit(query, Duration.ofMillis(200), ResultCursorTestSupport::count);
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+            awaitConnections(executor, 1);
+        }
+    }
+
+    @Test
+    void testCancellationReleasesConnection() throws Exception {
+        Query slowQuery = QueryBuilder.from("slow", slowDomain).select("n").build();
+        Query fastQuery = QueryBuilder.from("fast", numberDomain).select("n").build();
+
+        try (ConcurrentQueryExecutor executor = new ConcurrentQueryExecutor(new QueryExecutor(dataSource), 1)) {
+            CompletableFuture<Integer> slow = executor.submit(slowQuery, null, ResultCursorTestSupport::count);
+            Thread.sleep(100);
+            slow.cancel(true);
+
+            assertThrows(CancellationException.class, slow::join);
+            CompletableFuture<Integer> fast = executor.submit(fastQuery, Duration.ofSeconds(10), ResultCursorTestSupport::count);
+            assertEquals(500, fast.get(10, TimeUnit.SECONDS));
+            awaitConnections(executor, 1);
+        }
+    }
+
+    private static void awaitConnections(ConcurrentQueryExecutor executor, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.availableConnections() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, executor.availableConnections());
+    }
+
+    static class ResultCursorTestSupport {
+        static int count(ResultCursor cursor) {
+            int rows = 0;
+            while (cursor.next()) {
+                rows++;
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package org.kmsf.domainql.jdbc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.ContinuationToken;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.FusedQuery;
+import org.kmsf.domainql.sql.QueryFusion;
+import org.kmsf.domainql.sql.QueryTemplate;
+import org.kmsf.domainql.sql.SQLFragmentCache;
+import org.kmsf.domainql.sql.SQLGenerator;
+
+class QueryExecutorTest {
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:executor_test;DB_CLOSE_DELAY=-1");
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE company (id INT PRIMARY KEY, name VARCHAR(50))");
+            statement.execute("CREATE TABLE person (id INT PRIMARY KEY, first_name VARCHAR(50), salary DECIMAL(10, 2), company_id INT)");
+            statement.execute("INSERT INTO company VALUES (1, 'KMSF'), (2, 'ACME')");
+        }
+        try (PreparedStatement insert = keepAlive.prepareStatement("INSERT INTO person VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= 25; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "person" + i);
+                insert.setBigDecimal(3, new BigDecimal(1000 * i));
+                insert.setInt(4, i % 2 + 1);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+
+        Domain companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING);
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("first_name", ScalarType.STRING)
+            .withAttribute("salary", ScalarType.DECIMAL)
+            .withAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    void testTypedAccessors() {
+        Query query = QueryBuilder.from("employees", personDomain)
+            .select("id")
+            .select("first_name")
+            .select("salary")
+            .select("company", "works_for.name")
+            .where(EQUALS(attr("id"), literal(3)))
+            .build();
+
+        try (ResultCursor cursor = new QueryExecutor(dataSource).execute(query)) {
+            assertTrue(cursor.next());
+            assertEquals(3, cursor.getInt("id"));
+            assertEquals("person3", cursor.getString("first_name"));
+            assertEquals(0, new BigDecimal(3000).compareTo(cursor.getDecimal("salary")));
+            assertEquals(3000.0, cursor.getDouble(3));
+            assertEquals("ACME", cursor.getObject("company"));
+            assertEquals(ScalarType.STRING, cursor.getType("company"));
+            assertFalse(cursor.next());
+            assertTrue(cursor.isClosed());
+        }
+    }
+
+    @Test
+    void testTemplateRunsWithEachBinding() {
+        QueryTemplate template = QueryTemplate.compile(QueryBuilder.from("headcount", personDomain)
+            .select("employees", COUNT(attr("id")))
+            .where(EQUALS(attr("works_for.name"), param("company", ScalarType.STRING)))
+            .where(GREATER_THAN(attr("salary"), param("minimum", ScalarType.DECIMAL)))
+            .build());
+        QueryExecutor executor = new QueryExecutor(dataSource);
+
+        try (ResultCursor cursor = executor.execute(template.bind(Map.of("company", "ACME", "minimum", 10000)))) {
+            assertTrue(cursor.next());
+            assertEquals(8, cursor.getInt("employees"));
+        }
+        try (ResultCursor cursor = executor.execute(template.bind(Map.of("company", "KMSF", "minimum", 0)))) {
+            assertTrue(cursor.next());
+            assertEquals(12, cursor.getInt("employees"));
+        }
+    }
+
+    @Test
+    void testQueriesAreCompiledByTheConfiguredGenerators() {
+        SQLFragmentCache cache = new SQLFragmentCache();
+        QueryExecutor executor = new QueryExecutor(dataSource)
+            .withGenerators(query -> new SQLGenerator(query).setCanonical(true).setFragmentCache(cache))
+            .withFetchSize(10);
+        Query query = QueryBuilder.from("headcount", personDomain)
+            .select("company", "works_for.name")
+            .select("employees", COUNT(attr("id")))
+            .where(EQUALS(attr("works_for.name"), literal("ACME")))
+            .build();
+
+        try (ResultCursor cursor = executor.execute(query)) {
+            assertTrue(cursor.next());
+            assertEquals(13, cursor.getInt("employees"));
+        }
+        assertTrue(cache.size() > 0);
+        assertThrows(IllegalArgumentException.class, () -> executor.withGenerators(null));
+    }
+
+    @Test
+    void testIntegersBeyondIntRangeAreReadAsLongs() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE transfer (id INT PRIMARY KEY, amount BIGINT)");
+            statement.execute("INSERT INTO transfer VALUES (1, 3000000000), (2, 5)");
+        }
+        Domain transferDomain = new Domain("transfer")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("amount", ScalarType.INTEGER);
+        Query query = QueryBuilder.from("transfers", transferDomain)
+            .select("largest", MAX(attr("amount")))
+            .select("smallest", MIN(attr("amount")))
+            .build();
+
+        try (ResultCursor cursor = new QueryExecutor(dataSource).execute(query)) {
+            assertTrue(cursor.next());
+            assertEquals(3000000000L, cursor.getObject("largest"));
+            assertEquals(5, cursor.getObject("smallest"));
+        }
+    }
+
+    @Test
+    void testAggregateColumnsAreMappedByResultType() {
+        Query query = QueryBuilder.from("headcount", personDomain)
+            .select("company", "works_for.name")
+            .select("employees", COUNT(attr("id")))
+            .orderBy("works_for.name")
+            .build();
+
+        try (ResultCursor cursor = new QueryExecutor(dataSource).execute(query)) {
+            List<String> rows = cursor.stream(c -> c.getString("company") + "=" + c.getObject("employees"))
+                .collect(Collectors.toList());
+            assertEquals(List.of("ACME=13", "KMSF=12"), rows);
+        }
+    }
+
+    @Test
+    void testKeysetPaginationWithSmallFetchSize() {
+        QueryExecutor executor = new QueryExecutor(dataSource).withFetchSize(4);
+        List<Integer> ids = new ArrayList<>();
+        ContinuationToken token = null;
+        int pages = 0;
+        do {
+            Query query = QueryBuilder.from("employees", personDomain)
+                .select("id")
+                .orderBy("id")
+                .page(10, token)
+                .build();
+            token = null;
+            try (ResultCursor cursor = executor.execute(query)) {
+                while (cursor.next()) {
+                    ids.add(cursor.getInt(1));
+                    token = cursor.continuationToken();
+                }
+            }
+            pages++;
+        } while (token != null && pages < 10);
+
+        assertEquals(4, pages);
+        assertEquals(25, ids.size());
+        assertEquals(1, ids.get(0));
+        assertEquals(25, ids.get(24));
+    }
+
+    @Test
+    void testFusedQueryReturnsTheSameRows() {
+        Query names = QueryBuilder.from("names", personDomain)
+            .select("id")
+            .select("first_name")
+            .where(LESS_THAN(attr("id"), literal(5)))
+            .build();
+        Query salaries = QueryBuilder.from("salaries", personDomain)
+            .select("id")
+            .select("salary")
+            .where(LESS_THAN(attr("id"), literal(5)))
+            .build();
+        QueryExecutor executor = new QueryExecutor(dataSource);
+        FusedQuery fused = QueryFusion.compile(List.of(names, salaries)).get(0);
+
+        List<Map<String, Object>> fusedRows;
+        try (ResultCursor cursor = executor.execute(fused.getQuery(), fused.getSql(), fused.getParameters())) {
+            fusedRows = cursor.stream(ResultCursor::getRow).collect(Collectors.toList());
+        }
+        for (Query member : List.of(names, salaries)) {
+            try (ResultCursor cursor = executor.execute(member)) {
+                List<Map<String, Object>> expected = cursor.stream(ResultCursor::getRow).collect(Collectors.toList());
+                List<Map<String, Object>> actual = fusedRows.stream()
+                    .map(row -> fused.split(member, row))
+                    .collect(Collectors.toList());
+                assertEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    void testExecutionErrorIsWrapped() {
+        Domain missing = new Domain("missing_table").withAttribute("id", ScalarType.INTEGER);
+        Query query = QueryBuilder.from("missing", missing).select("id").build();
+
+        assertThrows(QueryExecutionException.class, () -> new QueryExecutor(dataSource).execute(query));
+    }
+
+    @Test
+    void testContradictoryQueryDoesNotReachTheDatabase() {
+        JdbcDataSource unreachable = new JdbcDataSource();
+        unreachable.setURL("jdbc:h2:tcp://unreachable.invalid/nothing");
+        Query query = QueryBuilder.from("nobody", personDomain)
+            .select("id")
+            .where(EQUALS(attr("id"), literal(3)))
+            .where(GREATER_THAN(attr("id"), PLUS(literal(2), literal(3))))
+            .build();
+
+        try (ResultCursor cursor = new QueryExecutor(unreachable).execute(query)) {
+            assertFalse(cursor.next());
+            assertTrue(cursor.isClosed());
+        }
+    }
+
+    @Test
+    void testContradictoryGlobalAggregateStillReturnsItsRow() {
+        Query query = QueryBuilder.from("headcount", personDomain)
+            .select("employees", COUNT(attr("id")))
+            .where(AND(EQUALS(attr("id"), literal(3)), EQUALS(attr("id"), literal(4))))
+            .build();
+
+        try (ResultCursor cursor = new QueryExecutor(dataSource).execute(query)) {
+            assertTrue(cursor.next());
+            assertEquals(0, cursor.getInt("employees"));
+        }
+    }
+
+    @Test
+    void testSimplifiedFilterReturnsTheSameRows() {
+        Query query = QueryBuilder.from("some", personDomain)
+            .select("id")
+            .where(OR(OR(EQUALS(attr("id"), literal(3)), EQUALS(attr("id"), literal(5))), EQUALS(literal(7), attr("id"))))
+            .where(EQUALS(literal(1), literal(1)))
+            .orderBy("id")
+            .build();
+
+        try (ResultCursor cursor = new QueryExecutor(dataSource).execute(query)) {
+            assertEquals(List.of(3, 5, 7), cursor.stream(c -> c.getInt("id")).collect(Collectors.toList()));
+        }
+    }
+}
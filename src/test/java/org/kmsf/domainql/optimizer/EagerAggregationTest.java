@@ -0,0 +1,207 @@
+package org.kmsf.domainql.optimizer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.jdbc.QueryExecutor;
+import org.kmsf.domainql.jdbc.ResultCursor;
+import org.kmsf.domainql.sql.SQLGenerator;
+
+public class EagerAggregationTest {
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+    private Domain companyDomain;
+    private Domain departmentDomain;
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:eager_aggregation_test;DB_CLOSE_DELAY=-1");
+        keepAlive = dataSource.getConnection();
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("CREATE TABLE company (id INT PRIMARY KEY, name VARCHAR(50))");
+            statement.execute("CREATE TABLE department (id INT PRIMARY KEY, company_id INT)");
+            statement.execute("CREATE TABLE person (id INT PRIMARY KEY, salary DECIMAL(10, 2), age INT, department_id INT)");
+            statement.execute("INSERT INTO company VALUES (1, 'KMSF'), (2, 'ACME')");
+            statement.execute("INSERT INTO department VALUES (1, 1), (2, 1), (3, 2), (4, 2)");
+        }
+        try (PreparedStatement insert = keepAlive.prepareStatement("INSERT INTO person VALUES (?, ?, ?, ?)")) {
+            for (int i = 1; i <= 40; i++) {
+                insert.setInt(1, i);
+                insert.setBigDecimal(2, new BigDecimal(100 * i));
+                if (i % 7 == 0) {
+                    insert.setNull(3, java.sql.Types.INTEGER);
+                } else {
+                    insert.setInt(3, 20 + i % 9);
+                }
+                insert.setInt(4, i % 5);  // department 0 does not exist
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+
+        companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING)
+            .withKey("id");
+        departmentDomain = new Domain("department")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("company_id", ScalarType.INTEGER)
+            .withKey("id");
+        departmentDomain.addReference("company", "company_id", companyDomain, "id");
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("salary", ScalarType.DECIMAL)
+            .withAttribute("age", ScalarType.INTEGER)
+            .withAttribute("department_id", ScalarType.INTEGER);
+        personDomain.addReference("department", "department_id", departmentDomain, "id");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement statement = keepAlive.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        keepAlive.close();
+    }
+
+    private Query payrollByCompany() {
+        return QueryBuilder.from("payroll", personDomain)
+            .select("company", "department.company.name")
+            .select("total", SUM(attr("salary")))
+            .select("average_age", AVG(attr("age")))
+            .select("employees", COUNT(attr("id")))
+            .select("top", MAX(attr("salary")))
+            .where(gt("salary", 500))
+            .orderBy("department.company.name")
+            .build();
+    }
+
+    @Test
+    void testFactRowsAreAggregatedBeforeJoining() {
+        Query rewritten = EagerAggregation.rewrite(payrollByCompany());
+
+        assertEquals(
+            "WITH payroll_pre AS (SELECT person.department_id AS department_id, SUM(person.salary) AS sum_1, " +
+            "SUM(person.age) AS sum_2, COUNT(person.age) AS count_3, COUNT(person.id) AS count_4, " +
+            "MAX(person.salary) AS max_5 FROM person WHERE (person.salary > 500) GROUP BY person.department_id) " +
+            "SELECT company.name AS company, SUM(payroll_pre.sum_1) AS total, " +
+            "((1.0 * SUM(payroll_pre.sum_2)) / SUM(payroll_pre.count_3)) AS average_age, " +
+            "SUM(payroll_pre.count_4) AS employees, MAX(payroll_pre.max_5) AS top " +
+            "FROM payroll_pre JOIN department ON (payroll_pre.department_id = department.id) " +
+            "JOIN company ON (department.company_id = company.id) " +
+            "GROUP BY company.name ORDER BY company.name",
+            SQLGenerator.generateSQL(rewritten)
+        );
+    }
+
+    @Test
+    void testResultsAreUnchanged() {
+        QueryExecutor executor = new QueryExecutor(dataSource);
+        List<Map<String, Object>> expected;
+        try (ResultCursor cursor = executor.execute(payrollByCompany())) {
+            expected = cursor.stream(ResultCursor::getRow).collect(Collectors.toList());
+        }
+        List<Map<String, Object>> actual;
+        try (ResultCursor cursor = executor.execute(EagerAggregation.rewrite(payrollByCompany()))) {
+            actual = cursor.stream(ResultCursor::getRow).collect(Collectors.toList());
+        }
+
+        assertEquals(2, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            for (String column : List.of("company", "total", "employees", "top")) {
+                assertEquals(0, compare(expected.get(i).get(column), actual.get(i).get(column)), column);
+            }
+            BigDecimal expectedAverage = new BigDecimal(expected.get(i).get("average_age").toString());
+            BigDecimal actualAverage = new BigDecimal(actual.get(i).get("average_age").toString());
+            assertEquals(expectedAverage.doubleValue(), actualAverage.doubleValue(), 1);
+        }
+    }
+
+    @Test
+    void testGlobalCountOfNoRowIsZero() {
+        Query query = QueryBuilder.from("headcount", personDomain)
+            .select("employees", COUNT(attr("id")))
+            .where(eq("department.company.name", "none"))
+            .build();
+        Query rewritten = EagerAggregation.rewrite(query);
+        assertNotSame(query, rewritten);
+
+        QueryExecutor executor = new QueryExecutor(dataSource);
+        for (Query executed : List.of(query, rewritten)) {
+            try (ResultCursor cursor = executor.execute(executed)) {
+                assertTrue(cursor.next());
+                assertEquals(0, ((Number) cursor.getObject("employees")).intValue());
+            }
+        }
+    }
+
+    @Test
+    void testPartialAliasesDoNotHideFactColumns() {
+        Domain ledger = new Domain("ledger")
+            .withAttribute("sum_1", ScalarType.INTEGER)
+            .withAttribute("amount", ScalarType.DECIMAL)
+            .withAttribute("department_id", ScalarType.INTEGER);
+        ledger.addReference("department", "department_id", departmentDomain, "id");
+        Query query = QueryBuilder.from("ledger_totals", ledger)
+            .select("company", "department.company.name")
+            .select("bucket", "sum_1")
+            .select("total", SUM(attr("amount")))
+            .build();
+
+        assertEquals(
+            "WITH ledger_totals_pre AS (SELECT ledger.department_id AS department_id, ledger.sum_1 AS sum_1, " +
+            "SUM(ledger.amount) AS sum_1_2 FROM ledger GROUP BY ledger.department_id, ledger.sum_1) " +
+            "SELECT company.name AS company, ledger_totals_pre.sum_1 AS bucket, " +
+            "SUM(ledger_totals_pre.sum_1_2) AS total " +
+            "FROM ledger_totals_pre JOIN department ON (ledger_totals_pre.department_id = department.id) " +
+            "JOIN company ON (department.company_id = company.id) " +
+            "GROUP BY company.name, ledger_totals_pre.sum_1",
+            SQLGenerator.generateSQL(EagerAggregation.rewrite(query))
+        );
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object expected, Object actual) {
+        if (expected instanceof Number && actual instanceof Number) {
+            return new BigDecimal(expected.toString()).compareTo(new BigDecimal(actual.toString()));
+        }
+        return ((Comparable) expected).compareTo(actual);
+    }
+
+    @Test
+    void testToManyReferenceIsNotRewritten() {
+        Domain looseDepartment = new Domain("department")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("company_id", ScalarType.INTEGER);
+        Domain person = new Domain("person")
+            .withAttribute("salary", ScalarType.DECIMAL)
+            .withAttribute("department_id", ScalarType.INTEGER);
+        person.addReference("department", "department_id", looseDepartment, "id");
+        Query query = QueryBuilder.from("payroll", person)
+            .select("company_id", "department.company_id")
+            .select("total", SUM(attr("salary")))
+            .build();
+
+        assertSame(query, EagerAggregation.rewrite(query));
+    }
+}
@@ -0,0 +1,133 @@
+package org.kmsf.domainql.optimizer;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.ExpressionBuilder;
+import org.kmsf.domainql.expression.Expressions;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpressionSimplifierTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING)
+            .withAttribute("salary", ScalarType.DECIMAL);
+    }
+
+    private Expression simplify(ExpressionBuilder builder) {
+        return ExpressionSimplifier.simplify(builder.build(personDomain));
+    }
+
+    @Test
+    void testLiteralOperationsAreFolded() {
+        assertEquals(new LiteralExpression(14), simplify(PLUS(literal(2), MULTIPLY(literal(3), literal(4)))));
+        assertEquals(new LiteralExpression(new BigDecimal("3.5")), simplify(PLUS(literal(1), literal(new BigDecimal("2.5")))));
+        assertEquals(new LiteralExpression(true), simplify(GREATER_THAN(literal(3), literal(new BigDecimal("2.9")))));
+        assertEquals(
+            GREATER_THAN(attr("salary"), literal(6)).build(personDomain),
+            simplify(GREATER_THAN(attr("salary"), MULTIPLY(literal(2), literal(3))))
+        );
+        // left to the database
+        assertEquals(DIVIDE(literal(1), literal(0)).build(personDomain), simplify(DIVIDE(literal(1), literal(0))));
+        assertEquals(
+            DIVIDE(literal(1.0), literal(3)).build(personDomain), simplify(DIVIDE(literal(1.0), literal(3)))
+        );
+    }
+
+    @Test
+    void testTautologiesAndDuplicatesAreRemoved() {
+        Expression simplified = simplify(AND(
+            AND(gt("salary", 10), EQUALS(literal(1), literal(1))),
+            AND(literal(true), gt("salary", 10))
+        ));
+        assertEquals(gt("salary", 10).build(personDomain), simplified);
+        assertEquals(new LiteralExpression(true), simplify(OR(eq("name", "x"), literal(true))));
+        assertEquals(eq("name", "x").build(personDomain), simplify(OR(eq("name", "x"), literal(false))));
+    }
+
+    @Test
+    void testOrOfEqualitiesBecomesIn() {
+        Expression simplified = simplify(OR(OR(OR(eq("id", 1), eq("name", "x")), EQUALS(literal(2), attr("id"))), eq("id", 3)));
+        assertEquals(
+            LogicalExpression.or(
+                new BinaryExpression(attr("id").build(personDomain), Operator.IN, new LiteralExpression(List.of(1, 2, 3))),
+                eq("name", "x").build(personDomain)
+            ),
+            simplified
+        );
+    }
+
+    @Test
+    void testContradictionsBecomeFalse() {
+        assertEquals(new LiteralExpression(false), simplify(AND(eq("id", 1), eq("id", 2))));
+        assertEquals(new LiteralExpression(false), simplify(AND(eq("id", 1), gt("id", 1))));
+        assertEquals(new LiteralExpression(false),
+            simplify(AND(gt("salary", 10), LESS_THAN(attr("salary"), literal(new BigDecimal("9.5"))))));
+        assertEquals(new LiteralExpression(false), simplify(AND(
+            AND(GREATER_THAN_OR_EQUALS(attr("id"), literal(4)), LESS_THAN_OR_EQUALS(attr("id"), literal(4))),
+            NOT_EQUALS(attr("id"), literal(4))
+        )));
+        // satisfiable, or not comparable
+        assertNotEquals(new LiteralExpression(false),
+            simplify(AND(GREATER_THAN_OR_EQUALS(attr("id"), literal(4)), LESS_THAN_OR_EQUALS(attr("id"), literal(4)))));
+        assertNotEquals(new LiteralExpression(false), simplify(AND(eq("id", 1), eq("id", "1"))));
+    }
+
+    @Test
+    void testStringComparisonsAreLeftToTheDatabase() {
+        // equal under a case-insensitive collation
+        assertEquals(2, Expressions.conjuncts(simplify(AND(eq("name", "abc"), eq("name", "ABC")))).size());
+        assertEquals(2, Expressions.conjuncts(
+            simplify(AND(GREATER_THAN(attr("name"), literal("b")), LESS_THAN(attr("name"), literal("B"))))).size());
+        Expression literals = EQUALS(literal("a "), literal("a")).build(personDomain);
+        assertEquals(literals, ExpressionSimplifier.simplify(literals));
+    }
+
+    @Test
+    void testQueryEmptiness() {
+        Query listing = QueryBuilder.from("listing", personDomain)
+            .select("id")
+            .where(AND(eq("id", 1), eq("id", 2)))
+            .build();
+        Query total = QueryBuilder.from("total", personDomain)
+            .select("total", SUM(attr("salary")))
+            .where(AND(eq("id", 1), eq("id", 2)))
+            .build();
+
+        assertTrue(ExpressionSimplifier.isEmpty(ExpressionSimplifier.simplify(listing)));
+        assertFalse(ExpressionSimplifier.isEmpty(ExpressionSimplifier.simplify(total)));
+        assertEquals("SELECT SUM(person.salary) AS total FROM person WHERE false",
+            SQLGenerator.generateSQL(ExpressionSimplifier.simplify(total)));
+    }
+
+    @Test
+    void testInListIsGenerated() {
+        Query query = QueryBuilder.from("some", personDomain)
+            .select("id")
+            .where(OR(eq("name", "a"), eq("name", "b")))
+            .where(literal(true))
+            .build();
+
+        assertEquals("SELECT person.id AS id FROM person WHERE (person.name IN ('a', 'b'))",
+            SQLGenerator.generateSQL(ExpressionSimplifier.simplify(query)));
+    }
+}
@@ -0,0 +1,98 @@
+package org.kmsf.domainql.optimizer;
+
+import java.util.List;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PredicateInferenceTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING);
+        Domain departmentDomain = new Domain("department")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("company_id", ScalarType.INTEGER);
+        departmentDomain.addReference("company", "company_id", companyDomain, "id");
+
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("manager_id", ScalarType.INTEGER)
+            .withAttribute("company_id", ScalarType.INTEGER)
+            .withAttribute("department_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+        personDomain.addReference("department", "department_id", departmentDomain, "id");
+        personDomain.addReference("manager", "manager_id", personDomain, "id");
+    }
+
+    @Test
+    void testConstantIsPropagatedToTheJoinedSide() {
+        Query query = QueryBuilder.from("acme_staff", personDomain)
+            .select("id")
+            .select("company", "works_for.name")
+            .where(eq("company_id", 42))
+            .build();
+
+        assertEquals(
+            "SELECT person.id AS id, works_for.name AS company FROM person " +
+            "JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "WHERE ((person.company_id = 42) AND (works_for.id = 42))",
+            SQLGenerator.generateSQL(PredicateInference.rewrite(query))
+        );
+    }
+
+    @Test
+    void testRangesFollowChainsOfJoins() {
+        Query query = QueryBuilder.from("staff", personDomain)
+            .select("id")
+            .select("company", "department.company.name")
+            .where(GREATER_THAN(literal(10), attr("department.company_id")))
+            .build();
+
+        assertEquals(
+            "SELECT person.id AS id, company.name AS company FROM person " +
+            "JOIN department ON (person.department_id = department.id) " +
+            "JOIN company ON (department.company_id = company.id) " +
+            "WHERE ((10 > department.company_id) AND (10 > company.id))",
+            SQLGenerator.generateSQL(PredicateInference.rewrite(query))
+        );
+    }
+
+    @Test
+    void testSelfJoinSidesAreResolved() {
+        Query query = QueryBuilder.from("team", personDomain)
+            .select("id")
+            .select("boss_company", "manager.company_id")
+            .where(IN(attr("manager_id"), literal(List.of(1, 2))))
+            .build();
+
+        assertEquals(
+            "SELECT person.id AS id, manager.company_id AS boss_company FROM person " +
+            "JOIN person AS manager ON (person.manager_id = manager.id) " +
+            "WHERE ((person.manager_id IN (1, 2)) AND (manager.id IN (1, 2)))",
+            SQLGenerator.generateSQL(PredicateInference.rewrite(query))
+        );
+    }
+
+    @Test
+    void testNoJoinIsAdded() {
+        Query query = QueryBuilder.from("acme_staff", personDomain)
+            .select("id")
+            .where(eq("company_id", 42))
+            .build();
+
+        assertSame(query, PredicateInference.rewrite(query));
+    }
+}
@@ -0,0 +1,109 @@
+package org.kmsf.domainql.optimizer;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PredicatePushdownTest {
+
+    private Domain personDomain;
+    private Query headcount;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addAttribute("department_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+
+        headcount = QueryBuilder.from("headcount", personDomain)
+            .select("department_id")
+            .select("company", "works_for.name")
+            .select("employees", COUNT(attr("id")))
+            .build();
+    }
+
+    @Test
+    void testRowLevelPredicateIsPushedIntoInnerFilter() {
+        Query query = QueryBuilder.from("acme", headcount)
+            .select("department_id")
+            .select("employees")
+            .where(eq("company", "ACME"))
+            .build();
+
+        assertEquals(
+            "WITH headcount AS (SELECT person.department_id AS department_id, works_for.name AS company, " +
+            "COUNT(person.id) AS employees " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "WHERE (works_for.name = 'ACME') GROUP BY person.department_id, works_for.name) " +
+            "SELECT headcount.department_id AS department_id, headcount.employees AS employees FROM headcount",
+            SQLGenerator.generateSQL(PredicatePushdown.rewrite(query))
+        );
+    }
+
+    @Test
+    void testAggregatePredicateIsPushedIntoInnerHaving() {
+        Query query = QueryBuilder.from("large", headcount)
+            .select("department_id")
+            .where(AND(gt("employees", 10), LESS_THAN(attr("department_id"), literal(100))))
+            .build();
+
+        assertEquals(
+            "WITH headcount AS (SELECT person.department_id AS department_id, works_for.name AS company, " +
+            "COUNT(person.id) AS employees " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "WHERE (person.department_id < 100) GROUP BY person.department_id, works_for.name " +
+            "HAVING (COUNT(person.id) > 10)) " +
+            "SELECT headcount.department_id AS department_id FROM headcount",
+            SQLGenerator.generateSQL(PredicatePushdown.rewrite(query))
+        );
+    }
+
+    @Test
+    void testPredicatesFollowTheChainOfSourceQueries() {
+        Query departments = QueryBuilder.from("departments", headcount)
+            .select("department_id")
+            .select("employees")
+            .build();
+        Query query = QueryBuilder.from("small", departments)
+            .select("department_id")
+            .where(LESS_THAN(attr("employees"), literal(3)))
+            .build();
+
+        Query rewritten = PredicatePushdown.rewrite(query);
+        Query inner = (Query) ((Query) rewritten.getSourceDomain()).getSourceDomain();
+        assertNull(rewritten.getFilter());
+        assertNull(((Query) rewritten.getSourceDomain()).getFilter());
+        assertNotNull(inner.getHaving());
+        assertNull(headcount.getHaving(), "the original query must be left untouched");
+    }
+
+    @Test
+    void testLimitedSourceIsNotFiltered() {
+        Query top = QueryBuilder.from("top", headcount)
+            .select("department_id")
+            .select("employees")
+            .orderBy("employees", false)
+            .limit(5)
+            .build();
+        Query query = QueryBuilder.from("top_large", top)
+            .select("department_id")
+            .where(gt("employees", 10))
+            .build();
+
+        assertSame(query, PredicatePushdown.rewrite(query));
+    }
+}
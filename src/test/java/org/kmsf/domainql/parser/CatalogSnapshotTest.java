@@ -0,0 +1,201 @@
+package org.kmsf.domainql.parser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Fingerprint;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private DomainRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING)
+            .withKey("id");
+
+        Domain personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("first_name", ScalarType.STRING)
+            .withAttribute("salary", ScalarType.DECIMAL)
+            .withAttribute("hired", ScalarType.DATE)
+            .withAttribute("company_id", ScalarType.INTEGER)
+            .withAttribute("manager_id", ScalarType.INTEGER)
+            .withKey("id");
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+        personDomain.addReference("manager", "manager_id", personDomain, "id");
+        // a join condition written by hand rather than by addReference
+        personDomain.addAttribute("active_employer", new ReferenceAttribute("active_employer", personDomain, companyDomain,
+            new BinaryExpression(new AttributeExpression(companyDomain.getAttribute("id")), Operator.EQUALS,
+                new AttributeExpression(personDomain.getAttribute("company_id")))));
+
+        registry = new DomainRegistry();
+        registry.register(companyDomain);
+        registry.register(personDomain);
+    }
+
+    private DomainRegistry reopen() {
+        Path file = directory.resolve("catalog.dqs");
+        CatalogSnapshot.write(registry, file);
+        return CatalogSnapshot.open(file);
+    }
+
+    private static Query report(DomainRegistry registry) {
+        return QueryBuilder.from("report", registry.getDomain("person"))
+            .select("first_name")
+            .select("company", "works_for.name")
+            .select("manager", "manager.first_name")
+            .select("active", "active_employer.name")
+            .select("total", SUM(attr("salary")))
+            .where(gt("salary", 1000))
+            .build();
+    }
+
+    @Test
+    void testSnapshotGivesTheSameCatalog() {
+        DomainRegistry snapshot = reopen();
+
+        assertEquals(SQLGenerator.generateSQL(report(registry)), SQLGenerator.generateSQL(report(snapshot)));
+        assertEquals(registry.fingerprint(), snapshot.fingerprint());
+        assertEquals(registry.fingerprint(), Fingerprint.of(snapshot));
+        assertEquals(registry.toJson(), snapshot.toJson());
+
+        Domain person = snapshot.getDomain("person");
+        ReferenceAttribute manager = (ReferenceAttribute) person.getAttribute("manager");
+        assertSame(person, manager.getReferenceDomain());
+        assertTrue(manager.isToOne());
+        assertSame(snapshot.getDomain("company"), ((ReferenceAttribute) person.getAttribute("works_for")).getReferenceDomain());
+        assertEquals(1, person.getKeys().size());
+        assertTrue(snapshot.hasDomain("company"));
+        assertFalse(snapshot.hasDomain("department"));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.getDomain("department"));
+    }
+
+    @Test
+    void testDomainsAreReadOnFirstUse() {
+        DomainRegistry snapshot = reopen();
+        Domain person = snapshot.getDomain("person");
+        Domain company = snapshot.getDomain("company");
+        assertEquals(0, company.getVersion());
+        assertEquals(0, person.getVersion());
+
+        // the plain attributes are read alone
+        assertEquals(ScalarType.INTEGER, person.getAttribute("id").getType());
+        assertFalse(person.getAttributes().isEmpty());
+        assertEquals(3, person.getAttributes().stream().filter(a -> a instanceof ReferenceAttribute).count());
+        // the references only read the columns of the company they compare
+        assertTrue(company.hasAttribute("name"));
+        assertEquals(2, company.getAttributes().size());
+    }
+
+    @Test
+    void testChangesAreFingerprinted() {
+        DomainRegistry snapshot = reopen();
+        Fingerprint recorded = snapshot.fingerprint();
+
+        snapshot.getDomain("company").addAttribute("founded", ScalarType.DATE);
+        assertNotEquals(recorded, snapshot.fingerprint());
+
+        DomainRegistry other = reopen();
+        other.register(new Domain("department").withAttribute("id", ScalarType.INTEGER));
+        assertNotEquals(recorded, other.fingerprint());
+        assertEquals(1, other.getDomain("department").getAttributes().size());
+    }
+
+    @Test
+    void testInvalidFilesAreRejected() throws Exception {
+        Path file = directory.resolve("catalog.dqs");
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IllegalArgumentException.class, () -> CatalogSnapshot.open(file));
+
+        CatalogSnapshot.write(registry, file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[7] = 99;
+        Files.write(file, bytes);
+        assertThrows(IllegalArgumentException.class, () -> CatalogSnapshot.open(file));
+
+        DomainRegistry adhoc = new DomainRegistry();
+        adhoc.register(registry.getDomain("person"));
+        assertThrows(IllegalArgumentException.class, () -> CatalogSnapshot.write(adhoc, file));
+    }
+
+    @Test
+    void testOpeningDoesNotDependOnTheCatalogSize() {
+        DomainRegistry large = new DomainRegistry();
+        Domain previous = null;
+        for (int i = 0; i < 5000; i++) {
+            Domain domain = new Domain("domain" + i)
+                .withAttribute("id", ScalarType.INTEGER)
+                .withAttribute("next_id", ScalarType.INTEGER)
+                .withAttribute("label", ScalarType.STRING);
+            if (previous != null) {
+                previous.addReference("next", "next_id", domain, "id");
+            }
+            large.register(domain);
+            previous = domain;
+        }
+        Path file = directory.resolve("large.dqs");
+        CatalogSnapshot.write(large, file);
+
+        DomainRegistry snapshot = CatalogSnapshot.open(file);
+        Domain first = snapshot.getDomain("domain0");
+        assertEquals("domain1", ((ReferenceAttribute) first.getAttribute("next")).getReferenceDomain().getName());
+        assertEquals(large.fingerprint(), snapshot.fingerprint());
+        // the chain of references is read one link at a time
+        assertEquals(0, snapshot.getDomain("domain2").getVersion());
+        assertEquals(large.fingerprint(), Fingerprint.of(snapshot));
+    }
+
+    @Test
+    void testDomainsAreReadConcurrently() throws Exception {
+        Path file = directory.resolve("catalog.dqs");
+        CatalogSnapshot.write(registry, file);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 50; round++) {
+                Domain person = CatalogSnapshot.open(file).getDomain("person");
+                List<Future<?>> reads = new ArrayList<>();
+                for (String name : List.of("first_name", "works_for", "manager", "active_employer")) {
+                    reads.add(executor.submit(() -> {
+                        assertTrue(person.hasAttribute(name));
+                        assertEquals(name, person.getAttribute(name).getName());
+                        return null;
+                    }));
+                }
+                for (Future<?> read : reads) {
+                    read.get();
+                }
+                assertEquals(9, person.getAttributes().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
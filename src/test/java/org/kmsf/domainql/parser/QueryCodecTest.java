@@ -0,0 +1,123 @@
+package org.kmsf.domainql.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.ComposeExpression;
+import org.kmsf.domainql.expression.ContinuationToken;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryCodecTest {
+
+    private DomainRegistry registry;
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("age", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("hired", ScalarType.DATE);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+
+        registry = new DomainRegistry();
+        registry.register(companyDomain);
+        registry.register(personDomain);
+    }
+
+    @Test
+    void testRoundTripGivesTheSameStatement() {
+        Query payroll = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .select("employees", COUNT(attr("id")))
+            .where(OR(IN(attr("id"), literal(List.of(1, 2, 3))), LIKE(attr("works_for.name"), literal("A%"))))
+            .where(GREATER_THAN(attr("hired"), literal(LocalDate.of(2020, 1, 1))))
+            .where(LESS_THAN(attr("age"), param("age", ScalarType.INTEGER)))
+            .orderBy("works_for.name", false)
+            .build();
+        Query top = QueryBuilder.from("top", payroll)
+            .select("company")
+            .select("total")
+            .orderBy("total", false)
+            .build();
+        top.setPage(10, ContinuationToken.of(new BigDecimal("1000.50")));
+
+        Query decoded = QueryCodec.decode(QueryCodec.encode(top, registry), registry);
+
+        assertEquals(SQLGenerator.generateSQL(top), SQLGenerator.generateSQL(decoded));
+        assertEquals(top.fingerprint(), decoded.fingerprint());
+        assertEquals(top.fingerprint().getParameters(), decoded.fingerprint().getParameters());
+        assertSame(personDomain, ((Query) decoded.getSourceDomain()).getSourceDomain());
+    }
+
+    @Test
+    void testReferencedQueriesAreTheCatalogOnes() {
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("company_id")
+            .select("employees", COUNT(attr("id")))
+            .build();
+        Query large = QueryBuilder.from("large", headcount)
+            .select("company_id")
+            .where(GREATER_THAN(attr("employees"), literal(10)))
+            .build();
+        Domain companyDomain = registry.getDomain("company");
+        companyDomain.addReference("stats", "id", headcount, "company_id");
+        companyDomain.addReference("large", "id", large, "company_id");
+        Query report = QueryBuilder.from("report", companyDomain)
+            .select("name")
+            .select("employees", "stats.employees")
+            .select("large_id", "large.company_id")
+            .build();
+
+        byte[] encoded = QueryCodec.encode(report, registry);
+        Query decoded = QueryCodec.decode(encoded, registry);
+
+        assertEquals(SQLGenerator.generateSQL(report), SQLGenerator.generateSQL(decoded));
+        ComposeExpression employees = (ComposeExpression) decoded.getProjections().get("employees");
+        assertSame(headcount, ((AttributeExpression) employees.getComposition()).getAttribute().getDomain());
+    }
+
+    @Test
+    void testValues() throws Exception {
+        List<Object> values = Arrays.asList(null, "é", 1, 2L, 0.5, new BigDecimal("1.10"), true,
+            LocalDate.of(2024, 2, 29), LocalDateTime.of(2024, 2, 29, 12, 30), List.of(1, 2), "x".repeat(70_000));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        QueryCodec.writeValues(values, new DataOutputStream(bytes));
+        assertEquals(values, QueryCodec.readValues(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    void testUnregisteredDomainsAreRejected() {
+        Domain adhoc = new Domain("adhoc");
+        adhoc.addAttribute("id", ScalarType.INTEGER);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> QueryCodec.encode(QueryBuilder.from("ids", adhoc).select("id").build(), registry));
+        assertThrows(IllegalArgumentException.class, () -> QueryCodec.decode(new byte[] {'X'}, registry));
+    }
+}
@@ -5,7 +5,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Test;
 import org.kmsf.domainql.expression.Domain;
 import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.LogicalExpression;
 import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.type.Operator;
 import org.kmsf.domainql.expression.type.ScalarType;
 
 public class QueryParserTest {
@@ -142,4 +144,42 @@ public class QueryParserTest {
 
     }
 
-} 
\ No newline at end of file
+    @Test
+    public void testLogicalOperatorsAreFlat() {
+        QueryParser parser = new QueryParser(registry);
+
+        String json = """
+            {
+            "name": "filtered",
+            "from": "employee",
+            "select": [
+                { "alias": "name", "expression": { "type": "attribute", "path": "name" } }
+            ],
+            "where": {
+                "type": "binary",
+                "operator": "AND",
+                "left": {
+                    "type": "binary",
+                    "operator": "AND",
+                    "operands": [
+                        { "type": "binary", "operator": "GREATER_THAN",
+                          "left": { "type": "attribute", "path": "salary" }, "right": { "type": "literal", "value": 1 } },
+                        { "type": "binary", "operator": "GREATER_THAN",
+                          "left": { "type": "attribute", "path": "salary" }, "right": { "type": "literal", "value": 2 } },
+                        { "type": "binary", "operator": "GREATER_THAN",
+                          "left": { "type": "attribute", "path": "salary" }, "right": { "type": "literal", "value": 3 } }
+                    ]
+                },
+                "right": { "type": "binary", "operator": "EQUALS",
+                           "left": { "type": "attribute", "path": "name" }, "right": { "type": "literal", "value": "x" } }
+            }
+            }
+            """;
+
+        Query query = parser.parseQuery(json);
+
+        LogicalExpression filter = (LogicalExpression) query.getFilter();
+        assertEquals(Operator.AND, filter.getOperator());
+        assertEquals(4, filter.getOperands().size());
+    }
+}
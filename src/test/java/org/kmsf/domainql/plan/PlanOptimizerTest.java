@@ -0,0 +1,127 @@
+package org.kmsf.domainql.plan;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.sql.SQLGenerator;
+import org.kmsf.domainql.statistics.ColumnStatistics;
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+import org.kmsf.domainql.statistics.TableStatistics;
+
+public class PlanOptimizerTest {
+
+    private Domain personDomain;
+    private StatisticsCatalog statistics;
+    private Query query;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING)
+            .withKey("id");
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("age", ScalarType.INTEGER)
+            .withAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+
+        statistics = new StatisticsCatalog();
+        statistics.put(personDomain, new TableStatistics(10_000, Map.of("age", new ColumnStatistics(50, 0, null))));
+        statistics.put(companyDomain, new TableStatistics(100, Map.of("name", new ColumnStatistics(100, 0, null))));
+
+        query = QueryBuilder.from("acme_adults", personDomain)
+            .select("company", "works_for.name")
+            .select("people", COUNT(attr("id")))
+            .where(eq("works_for.name", "ACME"))
+            .where(gt("age", 17))
+            .orderBy("works_for.name", true)
+            .limit(10)
+            .build();
+    }
+
+    @Test
+    void testLowering() {
+        assertEquals(
+            "Limit 10\n" +
+            "  Sort 1 key(s)\n" +
+            "    Aggregate company, people\n" +
+            "      Filter 2 conjunct(s)\n" +
+            "        Join works_for\n" +
+            "          Scan person\n" +
+            "          Scan company",
+            LogicalPlanner.lower(query).toString()
+        );
+    }
+
+    @Test
+    void testFiltersArePushedBelowTheJoin() {
+        PlanOptimizer optimizer = new PlanOptimizer(statistics);
+        PlanNode plan = optimizer.optimize(LogicalPlanner.lower(query));
+
+        assertEquals(
+            "Limit 10 (rows=10)\n" +
+            "  Sort 1 key(s) (rows=33)\n" +
+            "    Aggregate company, people (rows=33)\n" +
+            "      Join works_for (rows=33)\n" +
+            "        Filter 1 conjunct(s) (rows=3333)\n" +
+            "          Scan person (rows=10000)\n" +
+            "        Filter 1 conjunct(s) (rows=1)\n" +
+            "          Scan company (rows=100)",
+            optimizer.getCostModel().explain(plan)
+        );
+        PlanOptimizer.RuleStatistics pushdown = optimizer.getRuleStatistics().get("PushFilterThroughJoin");
+        assertEquals(1, pushdown.getApplications());
+        assertTrue(pushdown.getSaving() > 0);
+        assertEquals(0, optimizer.getRuleStatistics().get("MergeFilters").getApplications());
+    }
+
+    @Test
+    void testSqlIsEmittedFromTheOptimizedPlan() {
+        assertEquals(
+            "SELECT works_for.name AS company, COUNT(person.id) AS people " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "AND (works_for.name = 'ACME') " +
+            "WHERE (person.age > 17) GROUP BY works_for.name ORDER BY works_for.name LIMIT 10",
+            new SQLGenerator(query).setPlanOptimizer(new PlanOptimizer(statistics)).generateSQL()
+        );
+    }
+
+    @Test
+    void testParametersOfJoinConditionsAreBoundInStatementOrder() {
+        Query parameterized = QueryBuilder.from("adults_of", personDomain)
+            .select("company", "works_for.name")
+            .select("people", COUNT(attr("id")))
+            .where(EQUALS(attr("works_for.name"), param("company", ScalarType.STRING)))
+            .where(GREATER_THAN(attr("age"), param("minAge", ScalarType.INTEGER)))
+            .build();
+        SQLGenerator generator = new SQLGenerator(parameterized).setPlanOptimizer(new PlanOptimizer(statistics));
+
+        assertEquals(
+            "SELECT works_for.name AS company, COUNT(person.id) AS people " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "AND (works_for.name = ?) " +
+            "WHERE (person.age > ?) GROUP BY works_for.name",
+            generator.generateSQL()
+        );
+        assertEquals("[:company, :minAge]", generator.getParameters().toString());
+    }
+
+    @Test
+    void testAlwaysTrueFilterIsRemoved() {
+        Query trivial = QueryBuilder.from("everyone", personDomain)
+            .select("id")
+            .where(EQUALS(literal(1), literal(1)))
+            .build();
+        PlanNode plan = new PlanOptimizer(statistics).optimize(LogicalPlanner.lower(trivial));
+        assertEquals("Project id\n  Scan person", plan.toString());
+    }
+}
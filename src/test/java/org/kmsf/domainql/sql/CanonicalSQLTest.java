@@ -0,0 +1,145 @@
+package org.kmsf.domainql.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.ExpressionBuilder;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CanonicalSQLTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        Domain departmentDomain = new Domain("department");
+        departmentDomain.addAttribute("id", ScalarType.INTEGER);
+        departmentDomain.addAttribute("name", ScalarType.STRING);
+        departmentDomain.addAttribute("company_id", ScalarType.INTEGER);
+        departmentDomain.addReference("employer", "company_id", companyDomain, "id");
+
+        personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("age", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addAttribute("department_id", ScalarType.INTEGER);
+        personDomain.addReference("employer", "company_id", companyDomain, "id");
+        personDomain.addReference("department", "department_id", departmentDomain, "id");
+    }
+
+    private static String canonical(Query query) {
+        return new SQLGenerator(query).setCanonical(true).generateSQL();
+    }
+
+    @Test
+    void testJoinsAndAliasesDoNotDependOnTheOrderTheyAreRead() {
+        Query byEmployerFirst = QueryBuilder.from("staff", personDomain)
+            .select("id")
+            .where(eq("employer.name", "ACME"))
+            .where(eq("department.employer.name", "ACME"))
+            .build();
+        Query byDepartmentFirst = QueryBuilder.from("staff", personDomain)
+            .select("id")
+            .where(eq("department.employer.name", "ACME"))
+            .where(eq("employer.name", "ACME"))
+            .build();
+
+        assertNotEquals(SQLGenerator.generateSQL(byEmployerFirst), SQLGenerator.generateSQL(byDepartmentFirst));
+        assertEquals(
+            "SELECT person.id AS id FROM person " +
+            "JOIN department ON (person.department_id = department.id) " +
+            "JOIN company AS employer ON (department.company_id = employer.id) " +
+            "JOIN company AS employer_1 ON (person.company_id = employer_1.id) " +
+            "WHERE ((employer.name = 'ACME') AND (employer_1.name = 'ACME'))",
+            canonical(byEmployerFirst)
+        );
+        assertEquals(canonical(byEmployerFirst), canonical(byDepartmentFirst));
+    }
+
+    @Test
+    void testOperandsAreOrdered() {
+        Query literalFirst = QueryBuilder.from("seniors", personDomain)
+            .select("id")
+            .where(LESS_THAN(literal(60), attr("age")))
+            .where(EQUALS(MULTIPLY(attr("salary"), attr("age")), PLUS(attr("age"), attr("salary"))))
+            .where(IN(attr("department_id"), literal(List.of(3, 1, 2))))
+            .build();
+        Query literalLast = QueryBuilder.from("seniors", personDomain)
+            .select("id")
+            .where(IN(attr("department_id"), literal(List.of(2, 3, 1))))
+            .where(EQUALS(PLUS(attr("salary"), attr("age")), MULTIPLY(attr("age"), attr("salary"))))
+            .where(GREATER_THAN(attr("age"), literal(60)))
+            .build();
+
+        assertEquals(
+            "SELECT person.id AS id FROM person WHERE (((person.age * person.salary) = (person.age + person.salary)) " +
+            "AND (person.age > 60) AND (person.department_id IN (1, 2, 3)))",
+            canonical(literalFirst)
+        );
+        assertEquals(canonical(literalFirst), canonical(literalLast));
+    }
+
+    @Test
+    void testGroupKeysAreSorted() {
+        Query employerFirst = QueryBuilder.from("headcount", personDomain)
+            .select("employer", "employer.name")
+            .select("department", "department.name")
+            .select("employees", COUNT(attr("id")))
+            .build();
+        Query departmentFirst = QueryBuilder.from("headcount", personDomain)
+            .select("department", "department.name")
+            .select("employer", "employer.name")
+            .select("employees", COUNT(attr("id")))
+            .build();
+
+        String sql = canonical(employerFirst);
+        assertTrue(sql.startsWith("SELECT employer.name AS employer, department.name AS department"), sql);
+        assertTrue(sql.endsWith(" FROM person JOIN department ON (person.department_id = department.id) " +
+            "JOIN company AS employer ON (person.company_id = employer.id) " +
+            "GROUP BY department.name, employer.name"), sql);
+        String other = canonical(departmentFirst);
+        assertEquals(sql.substring(sql.indexOf(" FROM ")), other.substring(other.indexOf(" FROM ")));
+    }
+
+    @Test
+    void testShuffledBuildersGiveTheSameStatement() {
+        List<ExpressionBuilder> conditions = List.of(
+            eq("employer.name", "ACME"),
+            OR(eq("department.name", "Sales"), eq("department.name", "R&D")),
+            GREATER_THAN_OR_EQUALS(attr("salary"), literal(1000)),
+            NOT_EQUALS(literal(30), attr("age")),
+            LIKE(attr("department.employer.name"), literal("A%"))
+        );
+        Set<String> statements = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            List<ExpressionBuilder> shuffled = new ArrayList<>(conditions);
+            Collections.shuffle(shuffled, random);
+            QueryBuilder builder = QueryBuilder.from("payroll", personDomain)
+                .select("employer", "employer.name")
+                .select("total", SUM(attr("salary")));
+            for (ExpressionBuilder condition : shuffled) {
+                builder.where(condition);
+            }
+            statements.add(canonical(builder.build()));
+        }
+        assertEquals(1, statements.size(), statements.toString());
+    }
+}
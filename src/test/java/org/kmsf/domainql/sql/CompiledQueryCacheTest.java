@@ -0,0 +1,182 @@
+package org.kmsf.domainql.sql;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.ContinuationToken;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledQueryCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private DomainRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = catalog();
+    }
+
+    /*
+     * A new instance each time, as a restarted service would build it.
+     */
+    private static DomainRegistry catalog() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        Domain personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("age", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+
+        DomainRegistry registry = new DomainRegistry();
+        registry.register(companyDomain);
+        registry.register(personDomain);
+        return registry;
+    }
+
+    private static Query payroll(DomainRegistry registry) {
+        return QueryBuilder.from("payroll", registry.getDomain("person"))
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(EQUALS(attr("works_for.name"), param("company", ScalarType.STRING)))
+            .where(GREATER_THAN(attr("age"), literal(18)))
+            .build();
+    }
+
+    private static Query employees(DomainRegistry registry, int after) {
+        Query query = QueryBuilder.from("employees", payroll(registry))
+            .select("company")
+            .where(GREATER_THAN(attr("total"), literal(1000)))
+            .orderBy("company", true)
+            .build();
+        query.setPage(20, ContinuationToken.of("company" + after));
+        return query;
+    }
+
+    @Test
+    void testCompiledQueriesSurviveARestart() {
+        CompiledQueryCache cache = CompiledQueryCache.open(directory, registry);
+        QueryTemplate payroll = cache.compile(payroll(registry));
+        QueryTemplate employees = cache.compile(employees(registry, 1));
+        assertSame(payroll, cache.compile(payroll(registry)));
+        cache.save();
+        assertTrue(Files.isRegularFile(cache.getFile()));
+
+        DomainRegistry restarted = catalog();
+        CompiledQueryCache reopened = CompiledQueryCache.open(directory, restarted);
+        assertEquals(2, reopened.size());
+        Query query = payroll(restarted);
+        QueryTemplate cached = reopened.get(query);
+        assertNotNull(cached);
+        assertSame(query, cached.getQuery());
+        assertEquals(payroll.getSql(), cached.getSql());
+        assertEquals(List.of("ACME"), cached.bind(Map.of("company", "ACME")).getParameters());
+
+        QueryTemplate cachedEmployees = reopened.get(employees(restarted, 1));
+        assertEquals(employees.getSql(), cachedEmployees.getSql());
+        assertEquals(List.of("ACME", "company1"), cachedEmployees.bind(Map.of("company", "ACME")).getParameters());
+    }
+
+    @Test
+    void testLiteralsArePartOfTheEntry() {
+        CompiledQueryCache cache = CompiledQueryCache.open(directory, registry);
+        cache.compile(employees(registry, 1));
+
+        assertNotNull(cache.get(employees(registry, 1)));
+        // the position of the page is a value of the compiled query too
+        assertNull(cache.get(employees(registry, 2)));
+
+        Query adults = payroll(registry);
+        Query seniors = QueryBuilder.from("payroll", registry.getDomain("person"))
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(EQUALS(attr("works_for.name"), param("company", ScalarType.STRING)))
+            .where(GREATER_THAN(attr("age"), literal(65)))
+            .build();
+        cache.compile(adults);
+        assertNull(cache.get(seniors));
+        assertTrue(cache.compile(seniors).getSql().contains("(person.age > 65)"));
+        assertNull(cache.get(adults));
+    }
+
+    @Test
+    void testQueriesAreStoredWithTheirStatements() {
+        CompiledQueryCache cache = CompiledQueryCache.open(directory, registry);
+        cache.compile(employees(registry, 1));
+        cache.save();
+
+        DomainRegistry restarted = catalog();
+        List<Query> queries = CompiledQueryCache.open(directory, restarted).getQueries();
+        assertEquals(1, queries.size());
+        Query query = queries.get(0);
+        assertEquals("employees", query.getName());
+        assertEquals(employees(restarted, 1).fingerprint(), query.fingerprint());
+        assertEquals(employees(restarted, 1).fingerprint().getParameters(), query.fingerprint().getParameters());
+        assertSame(restarted.getDomain("person"), ((Query) query.getSourceDomain()).getSourceDomain());
+    }
+
+    @Test
+    void testChangedCatalogStartsEmpty() {
+        CompiledQueryCache cache = CompiledQueryCache.open(directory, registry);
+        cache.compile(payroll(registry));
+        cache.save();
+
+        DomainRegistry changed = catalog();
+        changed.getDomain("person").addAttribute("first_name", ScalarType.STRING);
+        CompiledQueryCache reopened = CompiledQueryCache.open(directory, changed);
+        assertNotEquals(cache.getFile(), reopened.getFile());
+        assertEquals(0, reopened.size());
+        assertNull(reopened.get(payroll(changed)));
+    }
+
+    @Test
+    void testUnregisteredDomainsAreNotCached() {
+        Domain adhoc = new Domain("person");
+        adhoc.addAttribute("id", ScalarType.INTEGER);
+        Query query = QueryBuilder.from("ids", adhoc).select("id").build();
+
+        CompiledQueryCache cache = CompiledQueryCache.open(directory, registry);
+        assertEquals("SELECT person.id AS id FROM person", cache.compile(query).getSql());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testCorruptFileIsIgnored() throws Exception {
+        CompiledQueryCache cache = CompiledQueryCache.open(directory, registry);
+        cache.compile(payroll(registry));
+        cache.save();
+        byte[] bytes = Files.readAllBytes(cache.getFile());
+        // keeps the header and index, garbles the entry
+        for (int i = 48; i < bytes.length; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+        Files.write(cache.getFile(), bytes);
+
+        CompiledQueryCache reopened = CompiledQueryCache.open(directory, catalog());
+        assertEquals(1, reopened.size());
+        Query query = payroll(registry);
+        assertNull(reopened.get(query));
+        assertEquals(0, reopened.size());
+        assertNotNull(reopened.compile(query));
+
+        Files.write(cache.getFile(), new byte[] {1, 2, 3});
+        assertEquals(0, CompiledQueryCache.open(directory, catalog()).size());
+    }
+}
@@ -0,0 +1,130 @@
+package org.kmsf.domainql.sql;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+class GroupingSetsCompilerTest {
+
+    private Domain saleDomain;
+
+    @BeforeEach
+    void setUp() {
+        saleDomain = new Domain("sale")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("region", ScalarType.STRING)
+            .withAttribute("product", ScalarType.STRING)
+            .withAttribute("amount", ScalarType.DECIMAL);
+    }
+
+    @Test
+    void testGranularitiesAreConsolidated() {
+        Query byRegion = QueryBuilder.from("by_region", saleDomain)
+            .select("region")
+            .select("total", SUM(attr("amount")))
+            .where(GREATER_THAN(attr("amount"), literal(0)))
+            .build();
+        Query byRegionAndProduct = QueryBuilder.from("by_region_product", saleDomain)
+            .select("region")
+            .select("product")
+            .select("total", SUM(attr("amount")))
+            .select("sales", COUNT(attr("id")))
+            .where(GREATER_THAN(attr("amount"), literal(0)))
+            .build();
+        Query grandTotal = QueryBuilder.from("grand_total", saleDomain)
+            .select("amount", SUM(attr("amount")))
+            .where(GREATER_THAN(attr("amount"), literal(0)))
+            .build();
+
+        List<GroupingSetsQuery> compiled = GroupingSetsCompiler.compile(List.of(byRegion, byRegionAndProduct, grandTotal));
+
+        assertEquals(1, compiled.size());
+        GroupingSetsQuery query = compiled.get(0);
+        assertEquals(
+            "SELECT sale.region AS region, sale.product AS product, SUM(sale.amount) AS total, " +
+            "COUNT(sale.id) AS sales, GROUPING(sale.region, sale.product) AS grouping_id " +
+            "FROM sale WHERE (sale.amount > 0) " +
+            "GROUP BY GROUPING SETS ((sale.region), (sale.region, sale.product), ())",
+            query.getSql()
+        );
+        assertEquals(1, query.getGroupingId(byRegion));
+        assertEquals(0, query.getGroupingId(byRegionAndProduct));
+        assertEquals(3, query.getGroupingId(grandTotal));
+        assertEquals(Map.of("amount", "total"), query.getColumnMapping(grandTotal));
+
+        Map<String, Object> regionRow = new HashMap<>();
+        regionRow.put("region", "EU");
+        regionRow.put("product", null);
+        regionRow.put("total", 42);
+        regionRow.put("sales", 3);
+        regionRow.put("grouping_id", 1);
+        assertTrue(query.belongsTo(byRegion, regionRow));
+        assertFalse(query.belongsTo(byRegionAndProduct, regionRow));
+        assertFalse(query.belongsTo(grandTotal, regionRow));
+        assertEquals(Map.of("region", "EU", "total", 42), query.split(byRegion, regionRow));
+    }
+
+    @Test
+    void testDifferentFiltersAreCompiledSeparately() {
+        Query eu = QueryBuilder.from("eu", saleDomain)
+            .select("product")
+            .select("total", SUM(attr("amount")))
+            .where(EQUALS(attr("region"), literal("EU")))
+            .build();
+        Query us = QueryBuilder.from("us", saleDomain)
+            .select("total", SUM(attr("amount")))
+            .where(EQUALS(attr("region"), literal("US")))
+            .build();
+        Query details = QueryBuilder.from("details", saleDomain)
+            .select("id")
+            .where(EQUALS(attr("region"), literal("US")))
+            .build();
+
+        List<GroupingSetsQuery> compiled = GroupingSetsCompiler.compile(List.of(eu, us, details));
+
+        assertEquals(3, compiled.size());
+        assertNull(compiled.get(0).getGroupingIdColumn());
+        assertEquals(
+            "SELECT sale.product AS product, SUM(sale.amount) AS total FROM sale " +
+            "WHERE (sale.region = 'EU') GROUP BY sale.product",
+            compiled.get(0).getSql()
+        );
+        assertTrue(compiled.get(1).belongsTo(us, Map.of("total", 1)));
+    }
+
+    @Test
+    void testQueriesWithHavingAreCompiledOnTheirOwn() {
+        Query bigRegions = QueryBuilder.from("big_regions", saleDomain)
+            .select("region")
+            .select("total", SUM(attr("amount")))
+            .build();
+        bigRegions.setHaving(GREATER_THAN(SUM(attr("amount")), literal(1000)).build(saleDomain));
+        Query byProduct = QueryBuilder.from("by_product", saleDomain)
+            .select("product")
+            .select("total", SUM(attr("amount")))
+            .build();
+
+        List<GroupingSetsQuery> compiled = GroupingSetsCompiler.compile(List.of(bigRegions, byProduct));
+
+        assertEquals(2, compiled.size());
+        assertEquals(
+            "SELECT sale.region AS region, SUM(sale.amount) AS total FROM sale " +
+            "GROUP BY sale.region HAVING (SUM(sale.amount) > 1000)",
+            compiled.get(0).getSql()
+        );
+        assertEquals(
+            "SELECT sale.product AS product, SUM(sale.amount) AS total FROM sale GROUP BY sale.product",
+            compiled.get(1).getSql()
+        );
+    }
+}
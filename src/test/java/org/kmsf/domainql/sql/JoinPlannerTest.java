@@ -0,0 +1,92 @@
+package org.kmsf.domainql.sql;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.statistics.ColumnStatistics;
+import org.kmsf.domainql.statistics.StatisticsCatalog;
+import org.kmsf.domainql.statistics.TableStatistics;
+
+public class JoinPlannerTest {
+
+    private Domain personDomain;
+    private Domain companyDomain;
+    private Domain departmentDomain;
+    private StatisticsCatalog statistics;
+
+    @BeforeEach
+    void setUp() {
+        companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING)
+            .withKey("id");
+        departmentDomain = new Domain("department")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING)
+            .withKey("id");
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("first_name", ScalarType.STRING)
+            .withAttribute("company_id", ScalarType.INTEGER)
+            .withAttribute("department_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+        personDomain.addReference("department", "department_id", departmentDomain, "id");
+        departmentDomain.addReference("employee", "id", personDomain, "department_id");
+
+        statistics = new StatisticsCatalog();
+        statistics.put(personDomain, new TableStatistics(100_000, Map.of(
+            "department_id", new ColumnStatistics(200, 0, null))));
+        statistics.put(companyDomain, new TableStatistics(50, Map.of()));
+        statistics.put(departmentDomain, new TableStatistics(200, Map.of(
+            "id", new ColumnStatistics(200, 0, null),
+            "name", new ColumnStatistics(200, 0, null))));
+    }
+
+    @Test
+    void testSelectiveDimensionIsJoinedFirst() {
+        Query query = QueryBuilder.from("rd_people", personDomain)
+            .select("first_name")
+            .select("company", "works_for.name")
+            .select("department", "department.name")
+            .where(eq("department.name", "R&D"))
+            .build();
+
+        assertEquals(
+            "SELECT person.first_name AS first_name, works_for.name AS company, department.name AS department " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "JOIN department ON (person.department_id = department.id) " +
+            "WHERE (department.name = 'R&D')",
+            SQLGenerator.generateSQL(query)
+        );
+        assertEquals(
+            "SELECT person.first_name AS first_name, works_for.name AS company, department.name AS department " +
+            "FROM person JOIN department ON (person.department_id = department.id) " +
+            "JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "WHERE (department.name = 'R&D')",
+            new SQLGenerator(query).setStatistics(statistics).generateSQL()
+        );
+    }
+
+    @Test
+    void testFanningOutJoinComesLast() {
+        Query query = QueryBuilder.from("colleagues", departmentDomain)
+            .select("colleague", "employee.first_name")
+            .select("company", "employee.works_for.name")
+            .build();
+
+        String explain = new SQLGenerator(query).setStatistics(statistics).explain();
+        String[] lines = explain.split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("FROM department rows=200", lines[1]);
+        assertEquals("JOIN employee rows=100000 -> 100000 build=department", lines[2]);
+        assertEquals("JOIN works_for rows=50 -> 100000 build=works_for", lines[3]);
+    }
+}
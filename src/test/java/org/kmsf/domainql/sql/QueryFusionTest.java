@@ -0,0 +1,154 @@
+package org.kmsf.domainql.sql;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Expression;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+class QueryFusionTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("name", ScalarType.STRING);
+        personDomain = new Domain("person")
+            .withAttribute("id", ScalarType.INTEGER)
+            .withAttribute("first_name", ScalarType.STRING)
+            .withAttribute("salary", ScalarType.DECIMAL)
+            .withAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+    }
+
+    @Test
+    void testQueriesDifferingOnlyByProjectionsAreFused() {
+        Query names = QueryBuilder.from("names", personDomain)
+            .select("id")
+            .select("name", "first_name")
+            .where(GREATER_THAN(attr("salary"), literal(1000)))
+            .build();
+        Query salaries = QueryBuilder.from("salaries", personDomain)
+            .select("id")
+            .select("name", "salary")
+            .where(GREATER_THAN(attr("salary"), literal(1000)))
+            .build();
+
+        List<FusedQuery> fused = QueryFusion.compile(List.of(names, salaries));
+
+        assertEquals(1, fused.size());
+        assertEquals(
+            "SELECT person.id AS id, person.first_name AS name, person.salary AS name_2 " +
+            "FROM person WHERE (person.salary > 1000)",
+            fused.get(0).getSql()
+        );
+        assertEquals(Map.of("id", "id", "name", "name"), fused.get(0).getColumnMapping(names));
+        assertEquals(Map.of("id", "id", "name", "name_2"), fused.get(0).getColumnMapping(salaries));
+        assertEquals(Map.of("id", 1, "name", 2500),
+            fused.get(0).split(salaries, Map.of("id", 1, "name", "Ann", "name_2", 2500)));
+    }
+
+    @Test
+    void testDifferentFiltersOrJoinsAreNotFused() {
+        Query all = QueryBuilder.from("all", personDomain).select("id").build();
+        Query filtered = QueryBuilder.from("filtered", personDomain)
+            .select("id")
+            .where(EQUALS(attr("first_name"), literal("Ann")))
+            .build();
+        // the inner join to company could drop rows of the other queries
+        Query joined = QueryBuilder.from("joined", personDomain).select("works_for.name").build();
+        Query sameAsAll = QueryBuilder.from("same_as_all", personDomain).select("first_name").build();
+
+        List<FusedQuery> fused = QueryFusion.compile(List.of(all, filtered, joined, sameAsAll));
+
+        assertEquals(3, fused.size());
+        assertEquals(List.of(all, sameAsAll), fused.get(0).getMembers());
+        assertEquals(List.of(filtered), fused.get(1).getMembers());
+        assertEquals(List.of(joined), fused.get(2).getMembers());
+    }
+
+    @Test
+    void testAggregatesAreFusedOnlyWithTheSameGroupByKeys() {
+        Query total = QueryBuilder.from("total", personDomain)
+            .select("company_id")
+            .select("total", SUM(attr("salary")))
+            .build();
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("company", "company_id")
+            .select("headcount", COUNT(attr("id")))
+            .build();
+        Query grandTotal = QueryBuilder.from("grand_total", personDomain)
+            .select("total", SUM(attr("salary")))
+            .build();
+
+        List<FusedQuery> fused = QueryFusion.compile(List.of(total, headcount, grandTotal));
+
+        assertEquals(2, fused.size());
+        assertEquals(
+            "SELECT person.company_id AS company_id, SUM(person.salary) AS total, COUNT(person.id) AS headcount " +
+            "FROM person GROUP BY person.company_id",
+            fused.get(0).getSql()
+        );
+        assertEquals(Map.of("company", "company_id", "headcount", "headcount"), fused.get(0).getColumnMapping(headcount));
+        assertEquals(List.of(grandTotal), fused.get(1).getMembers());
+    }
+
+    @Test
+    void testHavingClausesMustMatchAndAreKept() {
+        Query bigPayrolls = QueryBuilder.from("big_payrolls", personDomain)
+            .select("company_id")
+            .select("total", SUM(attr("salary")))
+            .build();
+        bigPayrolls.setHaving(GREATER_THAN(SUM(attr("salary")), literal(1000)).build(personDomain));
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("company_id")
+            .select("headcount", COUNT(attr("id")))
+            .build();
+        Query bigHeadcount = QueryBuilder.from("big_headcount", personDomain)
+            .select("company_id")
+            .select("headcount", COUNT(attr("id")))
+            .build();
+        bigHeadcount.setHaving(GREATER_THAN(SUM(attr("salary")), literal(1000)).build(personDomain));
+
+        List<FusedQuery> fused = QueryFusion.compile(List.of(bigPayrolls, headcount, bigHeadcount));
+
+        assertEquals(2, fused.size());
+        assertEquals(List.of(bigPayrolls, bigHeadcount), fused.get(0).getMembers());
+        assertEquals(
+            "SELECT person.company_id AS company_id, SUM(person.salary) AS total, COUNT(person.id) AS headcount " +
+            "FROM person GROUP BY person.company_id HAVING (SUM(person.salary) > 1000)",
+            fused.get(0).getSql()
+        );
+        assertEquals(List.of(headcount), fused.get(1).getMembers());
+    }
+
+    @Test
+    void testGroupingSetsMustMatchAndAreKept() {
+        Query rollup = QueryBuilder.from("rollup", personDomain)
+            .select("company_id")
+            .select("total", SUM(attr("salary")))
+            .build();
+        Expression companyId = rollup.getProjections().get("company_id");
+        rollup.setGroupingSets(List.of(List.of(companyId), List.of()));
+        Query perCompany = QueryBuilder.from("per_company", personDomain)
+            .select("company_id")
+            .select("headcount", COUNT(attr("id")))
+            .build();
+
+        List<FusedQuery> fused = QueryFusion.compile(List.of(rollup, perCompany));
+
+        assertEquals(2, fused.size());
+        assertEquals(SQLGenerator.generateSQL(rollup), fused.get(0).getSql());
+        assertEquals(List.of(List.of(companyId), List.of()), fused.get(0).getQuery().getGroupingSets());
+    }
+}
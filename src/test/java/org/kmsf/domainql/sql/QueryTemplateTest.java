@@ -0,0 +1,131 @@
+package org.kmsf.domainql.sql;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.kmsf.domainql.expression.ContinuationToken;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.kmsf.domainql.parser.QueryParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryTemplateTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("age", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+    }
+
+    private Query payroll() {
+        return QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(EQUALS(attr("works_for.name"), param("company", ScalarType.STRING)))
+            .where(GREATER_THAN(attr("age"), param("age", ScalarType.INTEGER)))
+            .where(LESS_THAN(attr("age"), PLUS(param("age", ScalarType.INTEGER), literal(10))))
+            .build();
+    }
+
+    @Test
+    void testParametersArePlaceholders() {
+        QueryTemplate template = QueryTemplate.compile(payroll());
+
+        assertEquals(
+            "SELECT works_for.name AS company, SUM(person.salary) AS total FROM person " +
+            "JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "WHERE ((works_for.name = ?) AND (person.age > ?) AND (person.age < (? + 10))) GROUP BY works_for.name",
+            template.getSql()
+        );
+        assertEquals(List.of("company", "age"), template.getParameterNames());
+        assertEquals(ScalarType.INTEGER, template.getParameterType("age"));
+    }
+
+    @Test
+    void testBindingFillsEveryPlaceholder() {
+        QueryTemplate template = QueryTemplate.compile(payroll());
+
+        QueryTemplate.Binding acme = template.bind(Map.of("company", "ACME", "age", 30));
+        QueryTemplate.Binding globex = template.binder().set("age", 40).set("company", "Globex").bind();
+
+        assertSame(template.getSql(), acme.getSql());
+        assertEquals(List.of("ACME", 30, 30), acme.getParameters());
+        assertEquals(List.of("Globex", 40, 40), globex.getParameters());
+        assertEquals(Arrays.asList("ACME", null, null),
+            template.binder().set(0, "ACME").set(template.indexOf("age"), null).bind().getParameters());
+    }
+
+    @Test
+    void testValuesGivenAtCompileTimeAreKept() {
+        Query query = QueryBuilder.from("employees", personDomain)
+            .select("id")
+            .where(GREATER_THAN(attr("salary"), param("minimum", ScalarType.DECIMAL)))
+            .orderBy("id")
+            .build();
+        query.setPage(10, ContinuationToken.of(42));
+        QueryTemplate template = QueryTemplate.compile(query);
+
+        assertEquals(List.of(new BigDecimal("1000"), 42),
+            template.bind(Map.of("minimum", new BigDecimal("1000"))).getParameters());
+        assertEquals(List.of(2000.0, 42), template.bind(Map.of("minimum", 2000.0)).getParameters());
+    }
+
+    @Test
+    void testBindingIsChecked() {
+        QueryTemplate template = QueryTemplate.compile(payroll());
+
+        assertThrows(IllegalArgumentException.class, () -> template.binder().set("age", "thirty"));
+        assertThrows(IllegalArgumentException.class, () -> template.binder().set("name", "ACME"));
+        assertThrows(IllegalStateException.class, () -> template.binder().set("company", "ACME").bind());
+        assertThrows(IllegalArgumentException.class,
+            () -> template.bind(Map.of("company", "ACME", "age", 30, "name", "ACME")));
+        assertThrows(IllegalArgumentException.class, () -> QueryTemplate.compile(
+            QueryBuilder.from("conflict", personDomain)
+                .select("id")
+                .where(GREATER_THAN(attr("age"), param("value", ScalarType.INTEGER)))
+                .where(GREATER_THAN(attr("salary"), param("value", ScalarType.DECIMAL)))
+                .build()));
+    }
+
+    @Test
+    void testParsedParameters() {
+        DomainRegistry registry = new DomainRegistry();
+        registry.register(personDomain);
+        Query query = new QueryParser(registry).parseQuery("""
+            {
+                "name": "adults",
+                "from": "person",
+                "select": [{"alias": "id", "expression": {"type": "attribute", "path": "id"}}],
+                "where": {
+                    "type": "binary",
+                    "operator": "GREATER_THAN",
+                    "left": {"type": "attribute", "path": "age"},
+                    "right": {"type": "parameter", "name": "age", "valueType": "INTEGER"}
+                }
+            }
+            """);
+        QueryTemplate template = QueryTemplate.compile(query);
+
+        assertEquals("SELECT person.id AS id FROM person WHERE (person.age > ?)", template.getSql());
+        assertEquals(List.of(18), template.bind(Map.of("age", 18)).getParameters());
+    }
+}
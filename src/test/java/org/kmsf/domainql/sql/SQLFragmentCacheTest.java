@@ -0,0 +1,155 @@
+package org.kmsf.domainql.sql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import org.kmsf.domainql.expression.ReferenceAttribute;
+import org.kmsf.domainql.expression.type.ScalarType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SQLFragmentCacheTest {
+
+    private Domain personDomain;
+    private ReferenceAttribute worksFor;
+    private Query payroll;
+    private Query departments;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+
+        Domain departmentDomain = new Domain("department");
+        departmentDomain.addAttribute("id", ScalarType.INTEGER);
+        departmentDomain.addAttribute("name", ScalarType.STRING);
+        departmentDomain.addAttribute("company_id", ScalarType.INTEGER);
+        departmentDomain.addReference("company", "company_id", companyDomain, "id");
+
+        personDomain = new Domain("person");
+        personDomain.addAttribute("id", ScalarType.INTEGER);
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.INTEGER);
+        personDomain.addAttribute("department_id", ScalarType.INTEGER);
+        worksFor = personDomain.addReference("works_for", "company_id", companyDomain, "id");
+        personDomain.addReference("department", "department_id", departmentDomain, "id");
+
+        payroll = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("department_company", "department.company.name")
+            .select("total", SUM(attr("salary")))
+            .where(gt("salary", 1000))
+            .orderBy("works_for.name", true)
+            .build();
+        departments = QueryBuilder.from("departments", payroll)
+            .select("company")
+            .where(eq("department_company", "ACME"))
+            .build();
+    }
+
+    @Test
+    void testStitchedStatementsAreTheGeneratedOnes() {
+        SQLFragmentCache cache = new SQLFragmentCache();
+        for (Query query : new Query[] {payroll, departments}) {
+            String expected = SQLGenerator.generateSQL(query);
+            assertEquals(expected, new SQLGenerator(query).setFragmentCache(cache).generateSQL());
+            assertEquals(expected, new SQLGenerator(query).setFragmentCache(cache).generateSQL());
+
+            SQLGenerator reused = new SQLGenerator(query);
+            reused.generateSQL();
+            assertEquals(expected, reused.generateSQL());
+        }
+        assertTrue(cache.size() > 0);
+    }
+
+    @Test
+    void testJoinConditionFragmentIsSharedByQueries() {
+        SQLFragmentCache cache = new SQLFragmentCache();
+        new SQLGenerator(payroll).setFragmentCache(cache).generateSQL();
+        SQLFragment fragment = cache.get(worksFor, personDomain);
+
+        assertEquals(2, fragment.getSlotCount());
+        assertEquals("(", fragment.getText(0));
+        assertEquals(0, fragment.getBase(0));
+        assertEquals("company_id", fragment.getAttribute(0));
+        assertEquals(" = ", fragment.getText(1));
+        assertEquals(1, fragment.getBase(1));
+        assertEquals("id", fragment.getAttribute(1));
+        assertEquals(")", fragment.getText(2));
+
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("company", "works_for.name")
+            .select("employees", COUNT(attr("id")))
+            .build();
+        assertEquals(
+            "SELECT works_for.name AS company, COUNT(person.id) AS employees " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id) GROUP BY works_for.name",
+            new SQLGenerator(headcount).setFragmentCache(cache).generateSQL()
+        );
+        assertSame(fragment, cache.get(worksFor, personDomain));
+    }
+
+    @Test
+    void testNavigationsAreRecordedRelativelyToTheRoot() {
+        SQLFragmentCache cache = new SQLFragmentCache();
+        new SQLGenerator(payroll).setFragmentCache(cache).generateSQL();
+        SQLFragment fragment = cache.get(payroll.getProjections().get("department_company"), payroll);
+
+        // the joins of department and of its company, then the column read
+        assertEquals(3, fragment.getSlotCount());
+        assertNull(fragment.getAttribute(0));
+        assertEquals("department", fragment.getReferences(0)[0].getName());
+        assertNull(fragment.getAttribute(1));
+        assertEquals(2, fragment.getReferences(1).length);
+        assertEquals("name", fragment.getAttribute(2));
+        assertEquals(2, fragment.getReferences(2).length);
+    }
+
+    @Test
+    void testChangedDomainDropsItsFragments() {
+        SQLFragmentCache cache = new SQLFragmentCache();
+        new SQLGenerator(payroll).setFragmentCache(cache).generateSQL();
+        assertNotNull(cache.get(worksFor, personDomain));
+
+        personDomain.addAttribute("age", ScalarType.INTEGER);
+        assertNull(cache.get(worksFor, personDomain));
+
+        new SQLGenerator(payroll).setFragmentCache(cache).generateSQL();
+        assertNotNull(cache.get(worksFor, personDomain));
+    }
+
+    @Test
+    void testSharedCacheGeneratesFromSeveralThreads() throws Exception {
+        SQLFragmentCache cache = new SQLFragmentCache();
+        String expectedPayroll = SQLGenerator.generateSQL(payroll);
+        String expectedDepartments = SQLGenerator.generateSQL(departments);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                runs.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        assertEquals(expectedPayroll, new SQLGenerator(payroll).setFragmentCache(cache).generateSQL());
+                        assertEquals(expectedDepartments, new SQLGenerator(departments).setFragmentCache(cache).generateSQL());
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.kmsf.domainql.sql;
+
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.Query;
+import org.kmsf.domainql.expression.QueryBuilder;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.type.ScalarType;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+/**
+ * Measures of allocations, compile and fingerprint times, which depend on
+ * the JIT and the machine: excluded from the default build, run with
+ * {@code -Pbenchmark}.
+ */
+@Tag("benchmark")
+public class SQLGeneratorBenchmarkTest {
+
+    private Domain personDomain;
+
+    @BeforeEach
+    void setUp() {
+        Domain companyDomain = new Domain("company");
+        companyDomain.addAttribute("id", ScalarType.INTEGER);
+        companyDomain.addAttribute("name", ScalarType.STRING);
+        Domain departmentDomain = new Domain("department");
+        departmentDomain.addAttribute("id", ScalarType.INTEGER);
+        departmentDomain.addAttribute("name", ScalarType.STRING);
+        personDomain = new Domain("person");
+        personDomain.addAttribute("salary", ScalarType.DECIMAL);
+        personDomain.addAttribute("company_id", ScalarType.DECIMAL);
+        personDomain.addAttribute("department_id", ScalarType.INTEGER);
+        personDomain.addReference("works_for", "company_id", companyDomain, "id");
+        personDomain.addReference("department", "department_id", departmentDomain, "id");
+    }
+
+    @Test
+    void testRegenerationIntoReusedBufferAllocatesAlmostNothing() {
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("department", "department.name")
+            .select("total", SUM(attr("salary")))
+            .where(gt("salary", 1000))
+            .where(IN(attr("department.name"), literal(List.of("R&D", "Sales"))))
+            .orderBy("works_for.name", true)
+            .limit(20)
+            .build();
+        String expected = SQLGenerator.generateSQL(query);
+
+        SQLGenerator generator = new SQLGenerator(query);
+        StringBuilder buffer = new StringBuilder();
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int compiles = 20_000;
+        for (int i = 0; i < compiles; i++) {
+            buffer.setLength(0);
+            generator.generateSQL(buffer);
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < compiles; i++) {
+            buffer.setLength(0);
+            generator.generateSQL(buffer);
+        }
+        long reused = (threads.getThreadAllocatedBytes(threadId) - before) / compiles;
+        before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < compiles; i++) {
+            SQLGenerator.generateSQL(query);
+        }
+        long fresh = (threads.getThreadAllocatedBytes(threadId) - before) / compiles;
+
+        assertEquals(expected, buffer.toString());
+        // what remains are a few iterators the JIT may not eliminate
+        assertTrue(reused < 512, "allocated " + reused + " bytes per compile");
+        assertTrue(reused * 10 < fresh, "allocated " + reused + " bytes per compile, " + fresh + " without reuse");
+    }
+
+    @Test
+    void testCompileTimeIsLinearInTheNumberOfJoins() {
+        long small = bestCompileTime(wideQuery(500));
+        long large = bestCompileTime(wideQuery(8000));
+
+        // sixteen times the joins: linear work takes about sixteen times longer, quadratic work 256 times
+        assertTrue(large < small * 64, "500 references: " + small / 1000 + "us, 8000: " + large / 1000 + "us");
+    }
+
+    @Test
+    void testFingerprintCostsLessThanGeneration() {
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("total", SUM(attr("salary")))
+            .where(eq("works_for.name", "ACME"))
+            .where(GREATER_THAN(attr("salary"), literal(1000)))
+            .where(IN(attr("department_id"), literal(List.of(1, 2, 3))))
+            .orderBy("works_for.name", true)
+            .limit(10)
+            .build();
+        int iterations = 20_000;
+        long fingerprint = Long.MAX_VALUE;
+        long generation = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                query.fingerprint();
+            }
+            fingerprint = Math.min(fingerprint, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                SQLGenerator.generateSQL(query);
+            }
+            generation = Math.min(generation, System.nanoTime() - start);
+        }
+        assertTrue(fingerprint * 3 < generation,
+            "fingerprint: " + fingerprint / iterations + "ns, generation: " + generation / iterations + "ns");
+    }
+
+    /*
+     * A query reading the owner of each of n dimensions: 2n joins, n of them
+     * through a reference of the same name.
+     */
+    private Query wideQuery(int n) {
+        Domain owner = new Domain("owner");
+        owner.addAttribute("id", ScalarType.INTEGER);
+        owner.addAttribute("name", ScalarType.STRING);
+        Domain fact = new Domain("fact");
+        fact.addAttribute("id", ScalarType.INTEGER);
+        QueryBuilder builder = QueryBuilder.from("wide", fact);
+        for (int i = 0; i < n; i++) {
+            Domain dimension = new Domain("dimension_" + i);
+            dimension.addAttribute("id", ScalarType.INTEGER);
+            dimension.addAttribute("owner_id", ScalarType.INTEGER);
+            dimension.addReference("owner", "owner_id", owner, "id");
+            fact.addAttribute("dimension_" + i + "_id", ScalarType.INTEGER);
+            fact.addReference("dimension_" + i, "dimension_" + i + "_id", dimension, "id");
+            builder.select("owner_" + i, "dimension_" + i + ".owner.name");
+        }
+        return builder.build();
+    }
+
+    private long bestCompileTime(Query query) {
+        for (int warmup = 0; warmup < 3; warmup++) {
+            SQLGenerator.generateSQL(query);
+        }
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            SQLGenerator.generateSQL(query);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -1,7 +1,9 @@
 package org.kmsf.domainql.sql;
 
 import org.kmsf.domainql.expression.Attribute;
+import org.kmsf.domainql.expression.ContinuationToken;
 import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
 import org.kmsf.domainql.expression.Domain;
 import org.kmsf.domainql.expression.ComposeExpression;
 import org.kmsf.domainql.expression.Query;
@@ -9,9 +11,12 @@ import org.kmsf.domainql.expression.QueryBuilder;
 import static org.kmsf.domainql.expression.ExpressionBuilder.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.type.Operator;
 import org.kmsf.domainql.expression.type.ScalarType;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.List;
+
 public class SQLGeneratorTest {
 
     private Domain personDomain;
@@ -257,6 +262,433 @@ public class SQLGeneratorTest {
             "JOIN person AS employee ON (department.id = employee.department_id) " +
             "GROUP BY department.name", sql.trim()
         );
-    }   
+    }
+
+    @Test
+    void testAggregatePredicatesGoToHavingAndRowPredicatesToWhere() {
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("department_id")
+            .select("total", SUM(attr("salary")))
+            .where(AND(GREATER_THAN(SUM(attr("salary")), literal(1000)), gt("salary", 10)))
+            .where(LESS_THAN(attr("department_id"), literal(100)))
+            .build();
+
+        assertEquals(
+            "SELECT person.department_id AS department_id, SUM(person.salary) AS total FROM person " +
+            "WHERE ((person.salary > 10) AND (person.department_id < 100)) " +
+            "GROUP BY person.department_id HAVING (SUM(person.salary) > 1000)",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testRowLevelHavingConjunctsAreAppliedBeforeGrouping() {
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("department_id")
+            .select("total", SUM(attr("salary")))
+            .build();
+        query.setHaving(new BinaryExpression(
+            gt("department_id", 3).build(personDomain),
+            Operator.AND,
+            GREATER_THAN(SUM(attr("salary")), literal(1000)).build(personDomain)
+        ));
+
+        assertEquals(
+            "SELECT person.department_id AS department_id, SUM(person.salary) AS total FROM person " +
+            "WHERE (person.department_id > 3) " +
+            "GROUP BY person.department_id HAVING (SUM(person.salary) > 1000)",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testHavingOfGlobalAggregateStaysAfterAggregation() {
+        Query query = QueryBuilder.from("headcount", personDomain)
+            .select("employees", COUNT(attr("id")))
+            .build();
+        query.setHaving(EQUALS(literal(1), literal(0)).build(personDomain));
+
+        // a WHERE would still give one row, counting 0 employees
+        assertEquals(
+            "SELECT COUNT(person.id) AS employees FROM person HAVING (1 = 0)",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testSuccessiveWhereClausesAreGeneratedFlat() {
+        Query query = QueryBuilder.from("some", personDomain)
+            .select("id")
+            .where(gt("salary", 10))
+            .where(OR(eq("first_name", "a"), eq("first_name", "b")))
+            .where(LESS_THAN(attr("id"), literal(100)))
+            .build();
+
+        assertEquals(
+            "SELECT person.id AS id FROM person WHERE ((person.salary > 10) AND " +
+            "((person.first_name = 'a') OR (person.first_name = 'b')) AND (person.id < 100))",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testVeryLongFilterIsGenerated() {
+        QueryBuilder builder = QueryBuilder.from("some", personDomain).select("id");
+        for (int i = 0; i < 50_000; i++) {
+            builder.where(NOT_EQUALS(attr("id"), literal(i)));
+        }
+
+        String sql = SQLGenerator.generateSQL(builder.build());
+        assertTrue(sql.startsWith("SELECT person.id AS id FROM person WHERE ((person.id <> 0) AND (person.id <> 1) AND "));
+        assertTrue(sql.endsWith(" AND (person.id <> 49999))"));
+    }
+
+    @Test
+    void testKeysetFirstPage() {
+        Query query = QueryBuilder.from("employees", personDomain)
+            .select("id")
+            .select("first_name")
+            .orderBy("id")
+            .page(100, null)
+            .build();
+
+        SQLGenerator generator = new SQLGenerator(query);
+        assertEquals(
+            "SELECT person.id AS id, person.first_name AS first_name " +
+            "FROM person " +
+            "ORDER BY person.id LIMIT 100",
+            generator.generateSQL().trim()
+        );
+        assertTrue(generator.getParameters().isEmpty());
+    }
+
+    @Test
+    void testKeysetSeekPredicate() {
+        Query query = QueryBuilder.from("employees", personDomain)
+            .select("company", "works_for.name")
+            .select("id")
+            .where(GREATER_THAN(attr("salary"), literal(1000)))
+            .orderBy("works_for.name")
+            .orderBy("id")
+            .page(50, ContinuationToken.decode(ContinuationToken.of("KMSF", 42).encode()))
+            .build();
+
+        SQLGenerator generator = new SQLGenerator(query);
+        assertEquals(
+            "SELECT works_for.name AS company, person.id AS id " +
+            "FROM person " +
+            "JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "WHERE (person.salary > 1000) AND (works_for.name, person.id) > (?, ?) " +
+            "ORDER BY works_for.name, person.id LIMIT 50",
+            generator.generateSQL().trim()
+        );
+        assertEquals(List.of("KMSF", 42), generator.getParameters());
+    }
+
+    @Test
+    void testKeysetSeekPredicateWithMixedDirections() {
+        Query query = QueryBuilder.from("employees", personDomain)
+            .select("salary")
+            .select("id")
+            .orderBy("salary", false)
+            .orderBy("id", true)
+            .page(10, ContinuationToken.of(5000.0, 7))
+            .build();
+
+        SQLGenerator generator = new SQLGenerator(query);
+        assertEquals(
+            "SELECT person.salary AS salary, person.id AS id " +
+            "FROM person " +
+            "WHERE ((person.salary < ?) OR (person.salary = ? AND person.id > ?)) " +
+            "ORDER BY person.salary DESC, person.id LIMIT 10",
+            generator.generateSQL().trim()
+        );
+        assertEquals(List.of(5000.0, 5000.0, 7), generator.getParameters());
+    }
+
+    @Test
+    void testPageRequiresMatchingToken() {
+        QueryBuilder builder = QueryBuilder.from("employees", personDomain)
+            .select("id")
+            .orderBy("id");
+        assertThrows(IllegalArgumentException.class, () -> builder.page(10, ContinuationToken.of(1, 2)));
+    }
+
+    @Test
+    void testPageRejectsNullSortKeys() {
+        QueryBuilder builder = QueryBuilder.from("employees", personDomain)
+            .select("salary")
+            .select("id")
+            .orderBy("salary")
+            .orderBy("id");
+        assertThrows(IllegalArgumentException.class, () -> builder.page(10, ContinuationToken.of(1000.0, null)));
+    }
+
+    @Test
+    void testRegeneratedSeekPredicateBindsItsValuesOnce() {
+        Query query = QueryBuilder.from("employees", personDomain)
+            .select("id")
+            .orderBy("id")
+            .page(10, ContinuationToken.of(42))
+            .build();
+
+        SQLGenerator generator = new SQLGenerator(query);
+        String sql = generator.generateSQL();
+        assertEquals(sql, generator.generateSQL());
+        assertEquals(List.of(42), generator.getParameters());
+    }
+
+    @Test
+    void testQueryAsDomainIsHoistedIntoWithClause() {
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("department_id")
+            .select("employees", COUNT(attr("id")))
+            .build();
+        Query query = QueryBuilder.from("large_departments", headcount)
+            .select("department_id")
+            .where(GREATER_THAN(attr("employees"), literal(10)))
+            .build();
+
+        assertEquals(
+            "WITH headcount AS (SELECT person.department_id AS department_id, COUNT(person.id) AS employees " +
+            "FROM person GROUP BY person.department_id) " +
+            "SELECT headcount.department_id AS department_id FROM headcount WHERE (headcount.employees > 10)",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testRepeatedSubqueryIsComputedOnce() {
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("department_id")
+            .select("employees", COUNT(attr("id")))
+            .build();
+        Query largeDepartments = QueryBuilder.from("large_departments", headcount)
+            .select("department_id")
+            .where(GREATER_THAN(attr("employees"), literal(10)))
+            .build();
+        departmentDomain.addReference("stats", "id", headcount, "department_id");
+        departmentDomain.addReference("large", "id", largeDepartments, "department_id");
 
-} 
\ No newline at end of file
+        Query query = QueryBuilder.from("department_report", departmentDomain)
+            .select("name")
+            .select("employees", "stats.employees")
+            .select("large_id", "large.department_id")
+            .build();
+
+        String expectedBody =
+            "SELECT department.name AS name, stats.employees AS employees, large.department_id AS large_id " +
+            "FROM department " +
+            "JOIN headcount AS stats ON (department.id = stats.department_id) " +
+            "JOIN large_departments AS large ON (department.id = large.department_id)";
+        String headcountBody = "(SELECT person.department_id AS department_id, COUNT(person.id) AS employees " +
+            "FROM person GROUP BY person.department_id)";
+        String largeBody = "(SELECT headcount.department_id AS department_id FROM headcount " +
+            "WHERE (headcount.employees > 10))";
+
+        assertEquals(
+            "WITH headcount AS " + headcountBody + ", large_departments AS " + largeBody + " " + expectedBody,
+            SQLGenerator.generateSQL(query)
+        );
+        assertEquals(
+            "WITH headcount AS MATERIALIZED " + headcountBody + ", large_departments AS " + largeBody + " " + expectedBody,
+            new SQLGenerator(query).setMaterializeRepeatedSubqueries(true).generateSQL()
+        );
+    }
+
+    @Test
+    void testUnreadSubqueryColumnsArePrunedButNotTheirJoins() {
+        Query employees = QueryBuilder.from("employees", personDomain)
+            .select("id")
+            .select("first_name")
+            .select("company", "works_for.name")
+            .build();
+        Query query = QueryBuilder.from("names", employees)
+            .select("first_name")
+            .build();
+
+        // the join drops employees without a company, so one of its columns keeps it
+        assertEquals(
+            "WITH employees AS (SELECT person.first_name AS first_name, works_for.name AS company " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id)) " +
+            "SELECT employees.first_name AS first_name FROM employees",
+            SQLGenerator.generateSQL(query)
+        );
+        assertEquals(
+            "WITH employees AS (SELECT person.id AS id, person.first_name AS first_name, works_for.name AS company " +
+            "FROM person JOIN company AS works_for ON (person.company_id = works_for.id)) " +
+            "SELECT employees.first_name AS first_name FROM employees",
+            new SQLGenerator(query).setPruneSubqueryColumns(false).generateSQL()
+        );
+    }
+
+    @Test
+    void testPruningKeepsGroupByKeysAndMultiplicity() {
+        departmentDomain.addReference("employee", "id", personDomain, "department_id");
+        Query budgets = QueryBuilder.from("budgets", departmentDomain)
+            .select("name")
+            .select("company", "company.name")
+            .select("headcount", COUNT(attr("employee.id")))
+            .select("payroll", SUM(attr("employee.salary")))
+            .select("max_id", MAX(attr("id")))
+            .build();
+        Query query = QueryBuilder.from("payrolls", budgets)
+            .select("payroll")
+            .build();
+
+        // headcount and max_id are dropped, the group by keys are kept
+        assertEquals(
+            "WITH budgets AS (SELECT department.name AS name, company.name AS company, " +
+            "SUM(employee.salary) AS payroll " +
+            "FROM department JOIN company ON (department.company_id = company.id) " +
+            "JOIN person AS employee ON (department.id = employee.department_id) " +
+            "GROUP BY department.name, company.name) " +
+            "SELECT budgets.payroll AS payroll FROM budgets",
+            SQLGenerator.generateSQL(query)
+        );
+
+        // reading max_id alone keeps the employee join, which multiplies the rows it aggregates
+        Query maxIds = QueryBuilder.from("max_ids", budgets)
+            .select("max_id")
+            .build();
+        assertEquals(
+            "WITH budgets AS (SELECT department.name AS name, company.name AS company, " +
+            "COUNT(employee.id) AS headcount, MAX(department.id) AS max_id " +
+            "FROM department JOIN company ON (department.company_id = company.id) " +
+            "JOIN person AS employee ON (department.id = employee.department_id) " +
+            "GROUP BY department.name, company.name) " +
+            "SELECT budgets.max_id AS max_id FROM budgets",
+            SQLGenerator.generateSQL(maxIds)
+        );
+    }
+
+    @Test
+    void testPruningKeepsAnAggregateWhenOnlyGroupKeysAreRead() {
+        Query headcount = QueryBuilder.from("headcount", personDomain)
+            .select("department_id")
+            .select("employees", COUNT(attr("id")))
+            .select("payroll", SUM(attr("salary")))
+            .build();
+        Query query = QueryBuilder.from("departments", headcount)
+            .select("department_id")
+            .build();
+
+        // without any aggregate, the GROUP BY would disappear and departments repeat
+        assertEquals(
+            "WITH headcount AS (SELECT person.department_id AS department_id, COUNT(person.id) AS employees " +
+            "FROM person GROUP BY person.department_id) " +
+            "SELECT headcount.department_id AS department_id FROM headcount",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testGroupByIsReducedToDeclaredKeys() {
+        personDomain.addKey("id");
+        departmentDomain.addKey("id");
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("id")
+            .select("first_name")
+            .select("department_name", "department.name")
+            .select("total", SUM(attr("salary")))
+            .build();
+
+        assertEquals(
+            "SELECT person.id AS id, MIN(person.first_name) AS first_name, " +
+            "MIN(department.name) AS department_name, SUM(person.salary) AS total " +
+            "FROM person JOIN department ON (person.department_id = department.id) " +
+            "GROUP BY person.id",
+            new SQLGenerator(query).setGroupByReduction(SQLGenerator.GroupByReduction.MIN).generateSQL()
+        );
+
+        // without the option, every key is grouped
+        assertEquals(
+            "SELECT person.id AS id, person.first_name AS first_name, " +
+            "department.name AS department_name, SUM(person.salary) AS total " +
+            "FROM person JOIN department ON (person.department_id = department.id) " +
+            "GROUP BY person.id, person.first_name, department.name",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+
+    @Test
+    void testForeignKeyDeterminesReferencedColumns() {
+        departmentDomain.addKey("id");
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("department_id")
+            .select("department_name", "department.name")
+            .select("total", SUM(attr("salary")))
+            .orderBy("department.name", true)
+            .build();
+
+        assertEquals(
+            "SELECT person.department_id AS department_id, ANY_VALUE(department.name) AS department_name, " +
+            "SUM(person.salary) AS total " +
+            "FROM person JOIN department ON (person.department_id = department.id) " +
+            "GROUP BY person.department_id ORDER BY ANY_VALUE(department.name)",
+            new SQLGenerator(query).setGroupByReduction(SQLGenerator.GroupByReduction.ANY_VALUE).generateSQL()
+        );
+    }
+
+    @Test
+    void testLongLiteral() {
+        Query query = QueryBuilder.from("rich", personDomain)
+            .select("id")
+            .where(GREATER_THAN(attr("salary"), literal(3_000_000_000L)))
+            .build();
+
+        assertEquals("SELECT person.id AS id FROM person WHERE (person.salary > 3000000000)",
+            SQLGenerator.generateSQL(query));
+    }
+
+    @Test
+    void testRegenerationIntoReusedBuffer() {
+        Query query = QueryBuilder.from("payroll", personDomain)
+            .select("company", "works_for.name")
+            .select("department", "department.name")
+            .select("total", SUM(attr("salary")))
+            .where(gt("salary", 1000))
+            .where(IN(attr("department.name"), literal(List.of("R&D", "Sales"))))
+            .orderBy("works_for.name", true)
+            .limit(20)
+            .build();
+        String expected = SQLGenerator.generateSQL(query);
+
+        // generated again, the statement is stitched from fragments into the same buffer
+        SQLGenerator generator = new SQLGenerator(query);
+        StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            buffer.setLength(0);
+            generator.generateSQL(buffer);
+            assertEquals(expected, buffer.toString());
+        }
+    }
+
+    @Test
+    void testSuffixedAliasesDoNotCollide() {
+        Domain regionDomain = new Domain("region");
+        regionDomain.addAttribute("id", ScalarType.INTEGER);
+        regionDomain.addAttribute("company_id", ScalarType.INTEGER);
+        regionDomain.addAttribute("parent_company_id", ScalarType.INTEGER);
+        regionDomain.addReference("works_for", "company_id", companyDomain, "id");
+        regionDomain.addReference("works_for_1", "parent_company_id", companyDomain, "id");
+        personDomain.addAttribute("region_id", ScalarType.INTEGER);
+        personDomain.addReference("region", "region_id", regionDomain, "id");
+
+        Query query = QueryBuilder.from("companies", personDomain)
+            .select("parent_company", "region.works_for_1.name")
+            .select("company", "works_for.name")
+            .select("region_company", "region.works_for.name")
+            .build();
+
+        assertEquals(
+            "SELECT works_for_1.name AS parent_company, works_for.name AS company, " +
+            "works_for_2.name AS region_company FROM person " +
+            "JOIN region ON (person.region_id = region.id) " +
+            "JOIN company AS works_for_1 ON (region.parent_company_id = works_for_1.id) " +
+            "JOIN company AS works_for ON (person.company_id = works_for.id) " +
+            "JOIN company AS works_for_2 ON (region.company_id = works_for_2.id)",
+            SQLGenerator.generateSQL(query)
+        );
+    }
+}
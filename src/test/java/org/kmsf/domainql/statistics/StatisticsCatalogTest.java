@@ -0,0 +1,77 @@
+package org.kmsf.domainql.statistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.kmsf.domainql.expression.ExpressionBuilder.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.AttributeExpression;
+import org.kmsf.domainql.expression.BinaryExpression;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.LiteralExpression;
+import org.kmsf.domainql.expression.LogicalExpression;
+import org.kmsf.domainql.expression.type.Operator;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+public class StatisticsCatalogTest {
+
+    private Domain personDomain;
+    private StatisticsCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        personDomain = new Domain("person")
+            .withAttribute("age", ScalarType.INTEGER)
+            .withAttribute("city", ScalarType.STRING)
+            .withAttribute("salary", ScalarType.DECIMAL);
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        columns.put("age", new ColumnStatistics(50, 0.2, new Histogram(new double[] {20, 30, 40, 50, 70})));
+        columns.put("city", new ColumnStatistics(100, 0, null));
+        catalog = new StatisticsCatalog();
+        catalog.put(personDomain, new TableStatistics(10_000, columns));
+    }
+
+    private BinaryExpression compare(String attribute, Operator operator, Object value) {
+        return new BinaryExpression(new AttributeExpression(personDomain.getAttribute(attribute)), operator,
+            new LiteralExpression(value));
+    }
+
+    @Test
+    void testEqualityUsesDistinctCountAndNullFraction() {
+        assertEquals(0.01, catalog.selectivity(compare("city", Operator.EQUALS, "Paris")), 1e-9);
+        assertEquals(0.8 / 50, catalog.selectivity(compare("age", Operator.EQUALS, 33)), 1e-9);
+        assertEquals(0, catalog.selectivity(compare("age", Operator.EQUALS, 99)));
+        assertEquals(0.03, catalog.selectivity(compare("city", Operator.IN, List.of("a", "b", "c"))), 1e-9);
+        assertEquals(0.99, catalog.selectivity(compare("city", Operator.NOT_EQUALS, "Paris")), 1e-9);
+    }
+
+    @Test
+    void testRangeUsesHistogram() {
+        // half of the third bucket, on top of two full buckets of four
+        assertEquals(0.8 * 2.5 / 4, catalog.selectivity(compare("age", Operator.LESS_THAN, 45)), 1e-9);
+        assertEquals(0.8 * 0.25, catalog.selectivity(compare("age", Operator.GREATER_THAN_OR_EQUALS, 50)), 1e-9);
+        assertEquals(0.8, catalog.selectivity(
+            new BinaryExpression(new LiteralExpression(100), Operator.GREATER_THAN,
+                new AttributeExpression(personDomain.getAttribute("age")))), 1e-9);
+    }
+
+    @Test
+    void testConjunctionsAndDefaults() {
+        LogicalExpression and = LogicalExpression.and(
+            compare("city", Operator.EQUALS, "Paris"), compare("age", Operator.LESS_THAN, 30));
+        assertEquals(0.01 * 0.8 * 0.25, catalog.selectivity(and), 1e-9);
+        assertEquals(1 - 0.99 * (1 - 0.8 * 0.75), catalog.selectivity(LogicalExpression.or(
+            compare("city", Operator.EQUALS, "Paris"), compare("age", Operator.GREATER_THAN_OR_EQUALS, 30))), 1e-9);
+
+        assertEquals(StatisticsCatalog.DEFAULT_EQUALITY,
+            catalog.selectivity(compare("salary", Operator.EQUALS, 1000)));
+        assertEquals(StatisticsCatalog.DEFAULT_RANGE,
+            catalog.selectivity(compare("salary", Operator.GREATER_THAN, 1000)));
+        assertEquals(100, catalog.estimateRows(personDomain, compare("city", Operator.EQUALS, "Paris")), 1e-6);
+        assertEquals(StatisticsCatalog.DEFAULT_ROW_COUNT, catalog.getRowCount(new Domain("company")));
+    }
+}
@@ -0,0 +1,131 @@
+package org.kmsf.domainql.statistics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.kmsf.domainql.expression.Domain;
+import org.kmsf.domainql.expression.DomainRegistry;
+import org.kmsf.domainql.expression.type.ScalarType;
+
+public class StatisticsCollectorTest {
+
+    private final Domain personDomain = new Domain("person")
+        .withAttribute("id", ScalarType.INTEGER)
+        .withAttribute("age", ScalarType.INTEGER)
+        .withAttribute("city", ScalarType.STRING);
+
+    @Test
+    void testInMemoryCollection() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", i);
+            row.put("age", i % 10 == 0 ? null : i % 80);
+            row.put("city", "city-" + (i % 250));
+            rows.add(row);
+        }
+
+        TableStatistics statistics = new StatisticsCollector().collect(personDomain, rows);
+
+        assertEquals(100_000, statistics.getRowCount());
+        assertEquals(100_000, statistics.getColumn("id").getDistinctCount(), 100_000 * 0.05);
+        assertEquals(250, statistics.getColumn("city").getDistinctCount(), 250 * 0.05);
+        assertNull(statistics.getColumn("city").getHistogram());
+        assertEquals(0.1, statistics.getColumn("age").getNullFraction(), 1e-9);
+        Histogram ids = statistics.getColumn("id").getHistogram();
+        assertEquals(0.25, ids.fractionBelow(25_000), 0.03);
+        assertEquals(0.9, ids.fractionBelow(90_000), 0.03);
+    }
+
+    @Test
+    void testJdbcCollectionAndPersistence() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statistics_collector_test;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE person (id INT PRIMARY KEY, age INT, city VARCHAR(20))");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO person VALUES (?, ?, ?)")) {
+                for (int i = 0; i < 5000; i++) {
+                    insert.setInt(1, i);
+                    insert.setInt(2, 20 + i % 40);
+                    insert.setString(3, i % 2 == 0 ? "Paris" : null);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            DomainRegistry registry = new DomainRegistry();
+            registry.register(personDomain);
+            new StatisticsCollector(1000, 10).setScanFraction(1).collect(registry, dataSource);
+
+            TableStatistics statistics = registry.getStatistics().get(personDomain);
+            assertEquals(5000, statistics.getRowCount());
+            assertEquals(40, statistics.getColumn("age").getDistinctCount(), 2);
+            assertEquals(1, statistics.getColumn("city").getDistinctCount());
+            assertEquals(0.5, statistics.getColumn("city").getNullFraction(), 1e-9);
+            assertEquals(20, statistics.getColumn("age").getHistogram().getMin());
+            assertEquals(59, statistics.getColumn("age").getHistogram().getMax());
+
+            StatisticsCatalog restored = StatisticsCatalog.fromJson(registry.getStatistics().toJson());
+            assertEquals(registry.getStatistics().toJson(), restored.toJson());
+            assertEquals(5000, restored.getRowCount(personDomain));
+        } finally {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+            }
+        }
+    }
+
+    @Test
+    void testSampledJdbcCollection() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statistics_sampling_test;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE person (id INT PRIMARY KEY, age INT, city VARCHAR(20))");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO person VALUES (?, ?, ?)")) {
+                for (int i = 0; i < 50_000; i++) {
+                    insert.setInt(1, i);
+                    insert.setInt(2, 20 + i % 40);
+                    insert.setString(3, i % 4 == 0 ? null : "city-" + i % 10);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            // about 5,000 rows read: counts are scaled up from them
+            TableStatistics statistics = new StatisticsCollector().collect(personDomain, dataSource);
+            assertEquals(50_000, statistics.getRowCount(), 50_000 * 0.1);
+            assertEquals(50_000, statistics.getColumn("id").getDistinctCount(), 50_000 * 0.15);
+            assertEquals(40, statistics.getColumn("age").getDistinctCount(), 4);
+            assertEquals(0.25, statistics.getColumn("city").getNullFraction(), 0.05);
+        } finally {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP ALL OBJECTS");
+            }
+        }
+    }
+
+    @Test
+    void testSamplingClauses() {
+        StatisticsCollector collector = new StatisticsCollector().setScanFraction(0.05);
+        assertEquals(" TABLESAMPLE SYSTEM (5)", collector.samplingClause("PostgreSQL"));
+        assertEquals(" TABLESAMPLE (5 PERCENT)", collector.samplingClause("Microsoft SQL Server"));
+        assertEquals(" SAMPLE (5)", collector.samplingClause("Oracle"));
+        assertEquals(" WHERE RAND() < 0.05", collector.samplingClause("H2"));
+        // sampled as the rows are read
+        assertNull(collector.samplingClause("SQLite"));
+        assertThrows(IllegalArgumentException.class, () -> collector.setScanFraction(0));
+    }
+}